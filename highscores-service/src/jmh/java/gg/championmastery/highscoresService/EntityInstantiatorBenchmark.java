@@ -0,0 +1,124 @@
+package gg.championmastery.highscoresService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many IDs can be claimed and released per second as the number of threads rises, comparing
+ * {@link EntityInstantiator}'s claims with the synchronized set they replaced (without the database lookup that both
+ * make after claiming an ID, which would dominate both). With a single key every thread contends for the same claim; with many keys
+ * threads rarely touch the same claim, so throughput should scale with the number of threads.
+ * <p>
+ * Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EntityInstantiatorBenchmark {
+
+	public enum Implementation {
+		CONCURRENT_CLAIMS,
+		SYNCHRONIZED_SET,
+	}
+
+	@Param({"CONCURRENT_CLAIMS", "SYNCHRONIZED_SET"})
+	private Implementation implementation;
+	/** The number of distinct IDs that are acquired. */
+	@Param({"1", "1000000"})
+	private int keys;
+
+	private TestInstantiator instantiator;
+	private final Set<Long> pendingIds = Collections.synchronizedSet(new HashSet<>());
+
+	@Setup
+	public void setUp() {
+		instantiator = new TestInstantiator();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public boolean threads1() {
+		return acquireAndRelease();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public boolean threads4() {
+		return acquireAndRelease();
+	}
+
+	@Benchmark
+	@Threads(16)
+	public boolean threads16() {
+		return acquireAndRelease();
+	}
+
+	@Benchmark
+	@Threads(64)
+	public boolean threads64() {
+		return acquireAndRelease();
+	}
+
+	private boolean acquireAndRelease() {
+		long id = ThreadLocalRandom.current().nextInt(keys);
+		switch (implementation) {
+			case CONCURRENT_CLAIMS: {
+				boolean claimed = instantiator.claim(id);
+				instantiator.persistEntity(id);
+				return claimed;
+			}
+			case SYNCHRONIZED_SET: {
+				if (!pendingIds.add(id)) {
+					return false;
+				}
+				pendingIds.remove(id);
+				return true;
+			}
+			default:
+				throw new IllegalStateException("Unknown implementation " + implementation);
+		}
+	}
+
+	public static final class TestEntity implements HibernateEntity<Long> {
+		private final long id;
+
+		private TestEntity(long id) {
+			this.id = id;
+		}
+
+		@Override
+		public Long getIdentifier() {
+			return id;
+		}
+	}
+
+	private static final class TestInstantiator extends EntityInstantiator<TestEntity, Long> {
+		private TestInstantiator() {
+			super(TestEntity.class);
+		}
+
+		@Override
+		protected TestEntity instantiateEntity(Long id) {
+			return new TestEntity(id);
+		}
+	}
+}
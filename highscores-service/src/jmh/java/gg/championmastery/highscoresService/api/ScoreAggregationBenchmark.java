@@ -0,0 +1,65 @@
+package gg.championmastery.highscoresService.api;
+
+import com.merakianalytics.orianna.types.dto.championmastery.ChampionMastery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long it takes to pick out the scores that are high enough to be saved from a summoner's champion
+ * masteries, which is done for every lookup and refresh.
+ * <p>
+ * Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScoreAggregationBenchmark {
+
+	/** The number of champions the summoner has mastery on. */
+	@Param({"20", "170"})
+	private int champions;
+	/**
+	 * The highest number of points the summoner can have on a champion. Most players have no scores that are high enough
+	 * to be saved, while dedicated players have many.
+	 */
+	@Param({"50000", "1000000"})
+	private int maxPoints;
+
+	private List<ChampionMastery> masteries;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(0);
+		masteries = new ArrayList<>(champions);
+		for (int i = 0; i < champions; i++) {
+			ChampionMastery mastery = new ChampionMastery();
+			mastery.setChampionId(i + 1);
+			mastery.setChampionPoints(random.nextInt(maxPoints));
+			mastery.setChampionLevel(random.nextInt(50) + 1);
+			masteries.add(mastery);
+		}
+	}
+
+	@Benchmark
+	public Map<Short, Integer> getQualifyingScores() {
+		return HighscoresApi.getQualifyingScores(masteries);
+	}
+}
@@ -0,0 +1,143 @@
+package gg.championmastery.highscoresService.api.http;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares how long it takes to serve a burst of concurrent requests when handlers run on Jetty's default thread pool
+ * and when they run on virtual threads. Handlers sleep for {@code latency} milliseconds to simulate waiting on the Riot
+ * API, which is what {@code /summonerInfo} spends almost all of its time doing.
+ * <p>
+ * Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class HttpExecutorBenchmark {
+
+	@Param({"THREAD_POOL", "VIRTUAL_THREADS"})
+	private HttpApi.Executor executor;
+	/** How long (in milliseconds) each request waits, simulating calls to the Riot API. */
+	@Param({"50", "500"})
+	private int latency;
+	/** The number of requests sent at once. */
+	@Param({"100", "1000"})
+	private int concurrency;
+
+	private Server server;
+	private ExecutorService clientExecutor;
+	private HttpClient client;
+	private HttpRequest request;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		server = new Server(0);
+		SimulatedLatencyHandler handler = new SimulatedLatencyHandler(latency);
+		switch (executor) {
+			case THREAD_POOL:
+				server.setHandler(handler);
+				break;
+			case VIRTUAL_THREADS:
+				VirtualThreadHandler virtualThreadHandler = new VirtualThreadHandler();
+				virtualThreadHandler.setHandler(handler);
+				server.setHandler(virtualThreadHandler);
+				break;
+		}
+		server.start();
+
+		int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+		// The client uses virtual threads in both cases so that it is never the bottleneck.
+		clientExecutor = Executors.newVirtualThreadPerTaskExecutor();
+		client = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_1_1)
+				.executor(clientExecutor)
+				.build();
+		request = HttpRequest.newBuilder(URI.create(String.format("http://localhost:%d/summonerInfo", port))).build();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		server.stop();
+		clientExecutor.shutdown();
+	}
+
+	/**
+	 * Sends {@code concurrency} requests at once, and waits for all of them to be answered.
+	 */
+	@Benchmark
+	public int burst() {
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		CompletableFuture<HttpResponse<Void>>[] responses = new CompletableFuture[concurrency];
+		for (int i = 0; i < concurrency; i++) {
+			responses[i] = client.sendAsync(request, HttpResponse.BodyHandlers.discarding());
+		}
+
+		int succeeded = 0;
+		for (CompletableFuture<HttpResponse<Void>> response : responses) {
+			if (response.join().statusCode() == 200) {
+				succeeded++;
+			}
+		}
+		if (succeeded != concurrency) {
+			throw new IllegalStateException(String.format("Only %d of %d requests succeeded", succeeded, concurrency));
+		}
+		return succeeded;
+	}
+
+	/**
+	 * Blocks for a fixed amount of time before responding, like a handler waiting on the Riot API.
+	 */
+	private static class SimulatedLatencyHandler extends AbstractHandler {
+		private final int latency;
+
+		private SimulatedLatencyHandler(int latency) {
+			this.latency = latency;
+		}
+
+		@Override
+		public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException {
+			baseRequest.setHandled(true);
+			try {
+				Thread.sleep(latency);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				response.setStatus(503);
+				return;
+			}
+
+			response.setStatus(200);
+			response.setContentType("text/json");
+			response.getWriter().write("{}");
+		}
+	}
+}
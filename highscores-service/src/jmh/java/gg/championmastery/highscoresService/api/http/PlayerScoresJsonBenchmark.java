@@ -0,0 +1,99 @@
+package gg.championmastery.highscoresService.api.http;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.merakianalytics.orianna.types.common.Platform;
+import com.merakianalytics.orianna.types.dto.championmastery.ChampionMasteries;
+import com.merakianalytics.orianna.types.dto.championmastery.ChampionMastery;
+import com.merakianalytics.orianna.types.dto.summoner.Summoner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long {@link PlayerScoresHandler} takes to encode the response for a player who was found, which happens
+ * on every {@code /summonerInfo} request that isn't an error. {@code tree} is the previous implementation, which
+ * converted the Orianna objects into a JSON tree before writing it, and {@code streaming} is the current one.
+ * {@code streamingCbor} is the current implementation for clients that accept CBOR (see {@link WireFormat}).
+ * <p>
+ * Run with {@code ./gradlew jmh -PjmhIncludes=PlayerScoresJson -PjmhProfilers=gc} to compare the bytes allocated per
+ * request ({@code gc.alloc.rate.norm}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlayerScoresJsonBenchmark {
+
+	/** The number of champions the player has mastery on. */
+	@Param({"20", "170"})
+	private int champions;
+
+	private final PlayerScoresHandler handler = new PlayerScoresHandler();
+	private final ObjectMapper treeMapper = new ObjectMapper();
+	/** Both implementations write to the same reused buffer, so that only their own allocations are measured. */
+	private final ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+	private Summoner summoner;
+	private ChampionMasteries masteries;
+
+	@Setup
+	public void setUp() {
+		summoner = new Summoner();
+		summoner.setPlatform(Platform.NORTH_AMERICA.getTag());
+		summoner.setPuuid("benchmark-puuid-0000000000000000000000000000000000000000000000000000000000000");
+		summoner.setRevisionDate(1700000000000L);
+		summoner.setProfileIconId(4568);
+		summoner.setSummonerLevel(512);
+
+		Random random = new Random(0);
+		masteries = new ChampionMasteries();
+		for (int i = 0; i < champions; i++) {
+			ChampionMastery mastery = new ChampionMastery();
+			mastery.setChampionId(i + 1);
+			mastery.setChampionPoints(random.nextInt(1000000));
+			mastery.setChampionLevel(random.nextInt(50) + 1);
+			masteries.add(mastery);
+		}
+	}
+
+	@Benchmark
+	public int tree() throws IOException {
+		out.reset();
+		ObjectNode node = treeMapper.createObjectNode();
+		node.setAll(treeMapper.convertValue(summoner, ObjectNode.class));
+		node.set("scores", treeMapper.convertValue(masteries, JsonNode.class));
+		node.set("riotId", treeMapper.convertValue("Benchmark #NA1", JsonNode.class));
+		treeMapper.writeValue(out, node);
+		return out.size();
+	}
+
+	@Benchmark
+	public int streaming() throws IOException {
+		out.reset();
+		handler.writeResponse(WireFormat.JSON, out, summoner, masteries, "Benchmark #NA1");
+		return out.size();
+	}
+
+	@Benchmark
+	public int streamingCbor() throws IOException {
+		out.reset();
+		handler.writeResponse(WireFormat.CBOR, out, summoner, masteries, "Benchmark #NA1");
+		return out.size();
+	}
+}
@@ -0,0 +1,89 @@
+package gg.championmastery.highscoresService.api.http;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.merakianalytics.orianna.types.common.Platform;
+import gg.championmastery.highscoresService.leaderboard.LeaderboardEntry;
+import gg.championmastery.highscoresService.persistence.RankThresholdEntity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how fast the custom serializers encode the lists served by {@code /championHighscores} and
+ * {@code /rankThresholds}, using mappers configured the same way as their handlers. These are encoded whenever the
+ * underlying data changes, so they run far more often than their cached responses suggest. Each list is encoded in
+ * every {@link WireFormat}.
+ * <p>
+ * Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializerBenchmark {
+
+	/** The number of entries in each list. */
+	@Param({"50", "5000"})
+	private int entries;
+
+	@Param({"JSON", "CBOR"})
+	private WireFormat format;
+
+	private ObjectMapper leaderboardMapper;
+	private ObjectMapper rankThresholdMapper;
+	private List<LeaderboardEntry> leaderboard;
+	private List<RankThresholdEntity> rankThresholds;
+
+	@Setup
+	public void setUp() {
+		SimpleModule leaderboardModule = new SimpleModule();
+		leaderboardModule.addSerializer(new LeaderboardEntrySerializer());
+		leaderboardMapper = WireFormat.createMappers(leaderboardModule).get(format);
+
+		SimpleModule rankThresholdModule = new SimpleModule();
+		rankThresholdModule.addSerializer(new RankThresholdEntitySerializer());
+		rankThresholdMapper = WireFormat.createMappers(rankThresholdModule).get(format);
+
+		Random random = new Random(0);
+		Platform[] platforms = Platform.values();
+		leaderboard = new ArrayList<>(entries);
+		rankThresholds = new ArrayList<>(entries);
+		for (int i = 0; i < entries; i++) {
+			Platform platform = platforms[random.nextInt(platforms.length)];
+			leaderboard.add(new LeaderboardEntry(i, platform.getTag(), "Player" + i + "#" + platform.getTag(), 10000000 - i * 1000));
+
+			RankThresholdEntity threshold = new RankThresholdEntity();
+			threshold.setChampionId((short) (i % 170));
+			threshold.setRank(i / 170 + 1);
+			threshold.setMasteryPoints(random.nextInt(5000000));
+			rankThresholds.add(threshold);
+		}
+	}
+
+	@Benchmark
+	public byte[] leaderboardEntries() throws JsonProcessingException {
+		return leaderboardMapper.writeValueAsBytes(leaderboard);
+	}
+
+	@Benchmark
+	public byte[] rankThresholds() throws JsonProcessingException {
+		return rankThresholdMapper.writeValueAsBytes(rankThresholds);
+	}
+}
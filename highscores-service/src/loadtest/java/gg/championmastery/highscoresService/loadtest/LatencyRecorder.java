@@ -0,0 +1,63 @@
+package gg.championmastery.highscoresService.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Records every latency measured for an endpoint, so that exact percentiles can be reported. Load tests run for minutes
+ * rather than days, so keeping every sample is cheaper than it sounds (8 bytes per request).
+ */
+final class LatencyRecorder {
+
+	/** Guarded by {@code this}. */
+	private long[] latencies = new long[1024];
+	/** Guarded by {@code this}. */
+	private int count;
+	/** Guarded by {@code this}. */
+	private int errors;
+
+	/**
+	 * @param latencyNanos The time between when the request should have been sent and when its response was received.
+	 * @param error Whether the request failed or received an error response.
+	 */
+	synchronized void record(long latencyNanos, boolean error) {
+		if (count == latencies.length) {
+			latencies = Arrays.copyOf(latencies, count * 2);
+		}
+		latencies[count++] = latencyNanos;
+		if (error) {
+			errors++;
+		}
+	}
+
+	synchronized Snapshot snapshot() {
+		long[] sorted = Arrays.copyOf(latencies, count);
+		Arrays.sort(sorted);
+		return new Snapshot(sorted, errors);
+	}
+
+	static final class Snapshot {
+		private final long[] sorted;
+		final int errors;
+
+		private Snapshot(long[] sorted, int errors) {
+			this.sorted = sorted;
+			this.errors = errors;
+		}
+
+		int getCount() {
+			return sorted.length;
+		}
+
+		/**
+		 * @param quantile The quantile, between 0 and 1.
+		 * @return The latency (in milliseconds) at the quantile, or 0 if nothing was recorded.
+		 */
+		double getLatencyMillis(double quantile) {
+			if (sorted.length == 0) {
+				return 0;
+			}
+			int index = (int) Math.ceil(quantile * sorted.length) - 1;
+			return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+		}
+	}
+}
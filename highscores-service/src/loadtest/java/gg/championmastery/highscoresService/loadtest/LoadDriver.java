@@ -0,0 +1,281 @@
+package gg.championmastery.highscoresService.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a mix of player lookups, refreshes and leaderboard requests against a running highscores service, then
+ * reports the throughput and latency percentiles of each endpoint.
+ * <p>
+ * Requests are sent at a fixed rate regardless of how long earlier requests take (an open-loop test), and latency is
+ * measured from when each request was scheduled to be sent, so a slow service isn't hidden by the driver sending fewer
+ * requests. Players are looked up by their Riot ID (or refreshed by their PUUID) from {@link SyntheticPlayers}, with
+ * most requests going to a small set of popular players, as they do in production.
+ * <p>
+ * To run a load test:
+ * <ol>
+ *     <li>Start MySQL with the schema from {@code mysql/schema.sql} (e.g. {@code docker compose up mysql}).</li>
+ *     <li>Start the stub with {@code ./gradlew riotStub} (see {@link StubRiotApi} for its options).</li>
+ *     <li>Start the service with {@code MYSQL_CONNECTION_URL} pointing at MySQL, {@code RIOT_API_KEY} set to any value,
+ *     and {@code RIOT_API_STAND_IN_URL=http://localhost:8090}.</li>
+ *     <li>Run {@code ./gradlew loadTest -PloadTestArgs="--rate=200 --duration=120"}.</li>
+ * </ol>
+ * To compare score write modes, run the same test against the service started with each {@code SCORE_WRITE_MODE}, on a
+ * freshly loaded database, with {@code --mysql} set so that row lock waits are reported (see {@link LockWaitMonitor}),
+ * and compare the results (e.g. {@code --label=TRANSACTIONAL --output=transactional.json}, then
+ * {@code --label=OPTIMISTIC --output=optimistic.json}).
+ * Options:
+ * <ul>
+ *     <li>{@code --target}: The URL of the highscores service (default {@code http://localhost:8181}).</li>
+ *     <li>{@code --rate}: The number of requests sent per second (default 100).</li>
+ *     <li>{@code --duration}: How long (in seconds) requests are measured for (default 60).</li>
+ *     <li>{@code --warmup}: How long (in seconds) requests are sent before they are measured (default 10).</li>
+ *     <li>{@code --players}: The number of players that exist, which must match the stub (default 100000).</li>
+ *     <li>{@code --hot-players}: The number of popular players (default 1000).</li>
+ *     <li>{@code --hot-share}: The share (between 0 and 1) of requests for popular players (default 0.8).</li>
+ *     <li>{@code --mix}: The relative weight of each endpoint (default
+ *     {@code summonerInfo:60,refreshPlayer:10,championHighscores:20,highscoresSummary:5,rankThresholds:5}).</li>
+ *     <li>{@code --output}: A file to write the results to as JSON, for comparing runs.</li>
+ *     <li>{@code --label}: A name for the run (such as the service's write mode), which is included in the results.</li>
+ *     <li>{@code --mysql}: The JDBC URL (including credentials) of the service's database, to report InnoDB row lock
+ *     waits during the measured period.</li>
+ * </ul>
+ */
+public class LoadDriver {
+
+	private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+	private final String target;
+	private final int players;
+	private final int hotPlayers;
+	private final double hotShare;
+	private final Map<Endpoint, Integer> mix;
+	private final int totalWeight;
+	private final HttpClient client;
+	private final Map<Endpoint, LatencyRecorder> recorders = new EnumMap<>(Endpoint.class);
+
+	private LoadDriver(String target, int players, int hotPlayers, double hotShare, Map<Endpoint, Integer> mix, ExecutorService executor) {
+		this.target = target;
+		this.players = players;
+		this.hotPlayers = Math.min(hotPlayers, players);
+		this.hotShare = hotShare;
+		this.mix = mix;
+		this.totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+		this.client = HttpClient.newBuilder().executor(executor).connectTimeout(TIMEOUT).build();
+		for (Endpoint endpoint : Endpoint.values()) {
+			recorders.put(endpoint, new LatencyRecorder());
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options options = new Options(args);
+		double rate = options.getDouble("rate", 100);
+		long duration = TimeUnit.SECONDS.toNanos(options.getInt("duration", 60));
+		long warmup = TimeUnit.SECONDS.toNanos(options.getInt("warmup", 10));
+
+		ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+		LoadDriver driver = new LoadDriver(options.getString("target", "http://localhost:8181"), options.getInt("players", 100000),
+				options.getInt("hot-players", 1000), options.getDouble("hot-share", 0.8),
+				parseMix(options.getString("mix", "summonerInfo:60,refreshPlayer:10,championHighscores:20,highscoresSummary:5,rankThresholds:5")),
+				executor);
+
+		String mysql = options.getString("mysql", null);
+		LockWaitMonitor lockWaitMonitor = null;
+
+		System.out.printf("Sending %.1f requests per second to %s (%d s warmup, %d s measured)%n", rate, driver.target,
+				TimeUnit.NANOSECONDS.toSeconds(warmup), TimeUnit.NANOSECONDS.toSeconds(duration));
+		long intervalNanos = (long) (1e9 / rate);
+		long start = System.nanoTime();
+		long measureFrom = start + warmup;
+		long end = measureFrom + duration;
+		for (long scheduled = start; scheduled < end; scheduled += intervalNanos) {
+			long delay = scheduled - System.nanoTime();
+			if (delay > 0) {
+				LockSupport.parkNanos(delay);
+			}
+			if (mysql != null && lockWaitMonitor == null && scheduled >= measureFrom) {
+				lockWaitMonitor = LockWaitMonitor.start(mysql);
+			}
+			long scheduledTime = scheduled;
+			executor.execute(() -> driver.send(scheduledTime, scheduledTime >= measureFrom));
+		}
+		executor.shutdown();
+		executor.awaitTermination(TIMEOUT.toSeconds() + 5, TimeUnit.SECONDS);
+
+		ObjectNode results = driver.report(TimeUnit.NANOSECONDS.toSeconds(duration));
+		String label = options.getString("label", null);
+		if (label != null) {
+			results.put("label", label);
+		}
+		if (lockWaitMonitor != null) {
+			reportLockWaits(lockWaitMonitor.stop(), results);
+		}
+		String output = options.getString("output", null);
+		if (output != null) {
+			new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(new File(output), results);
+			System.out.printf("Results written to %s%n", output);
+		}
+	}
+
+	private void send(long scheduledTime, boolean measured) {
+		Endpoint endpoint = chooseEndpoint();
+		HttpRequest request = HttpRequest.newBuilder(URI.create(target + endpoint.createPathAndQuery(this))).timeout(TIMEOUT).GET().build();
+		boolean error;
+		try {
+			HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+			error = response.statusCode() < 200 || response.statusCode() >= 300;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return;
+		} catch (Exception ex) {
+			error = true;
+		}
+		if (measured) {
+			recorders.get(endpoint).record(System.nanoTime() - scheduledTime, error);
+		}
+	}
+
+	private Endpoint chooseEndpoint() {
+		int roll = ThreadLocalRandom.current().nextInt(totalWeight);
+		for (Map.Entry<Endpoint, Integer> weight : mix.entrySet()) {
+			roll -= weight.getValue();
+			if (roll < 0) {
+				return weight.getKey();
+			}
+		}
+		throw new IllegalStateException("Endpoint weights changed");
+	}
+
+	private int choosePlayer() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		return random.nextDouble() < hotShare ? random.nextInt(hotPlayers) : random.nextInt(players);
+	}
+
+	/**
+	 * Prints a table of results for each endpoint, and returns the same results as JSON.
+	 */
+	private ObjectNode report(long durationSeconds) {
+		ObjectNode results = new ObjectMapper().createObjectNode();
+		System.out.printf("%-20s %10s %8s %12s %10s %10s %10s %10s%n", "endpoint", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+		for (Endpoint endpoint : mix.keySet()) {
+			LatencyRecorder.Snapshot snapshot = recorders.get(endpoint).snapshot();
+			double throughput = snapshot.getCount() / (double) durationSeconds;
+			System.out.printf("%-20s %10d %8d %12.1f %10.1f %10.1f %10.1f %10.1f%n", endpoint.path, snapshot.getCount(), snapshot.errors, throughput,
+					snapshot.getLatencyMillis(0.5), snapshot.getLatencyMillis(0.99), snapshot.getLatencyMillis(0.999), snapshot.getLatencyMillis(1));
+			results.putObject(endpoint.path)
+					.put("requests", snapshot.getCount())
+					.put("errors", snapshot.errors)
+					.put("throughput", throughput)
+					.put("p50", snapshot.getLatencyMillis(0.5))
+					.put("p99", snapshot.getLatencyMillis(0.99))
+					.put("p999", snapshot.getLatencyMillis(0.999))
+					.put("max", snapshot.getLatencyMillis(1));
+		}
+		return results;
+	}
+
+	/**
+	 * Prints the row lock waits measured during the test, and adds them to the results.
+	 */
+	private static void reportLockWaits(LockWaitMonitor.Result lockWaits, ObjectNode results) {
+		System.out.printf("%nRow lock waits: %d, total %d ms, average %.1f ms, most waiting at once %s%n", lockWaits.waits, lockWaits.timeMillis,
+				lockWaits.getAverageMillis(), lockWaits.maxWaiting < 0 ? "unknown" : Integer.toString(lockWaits.maxWaiting));
+		results.putObject("rowLockWaits")
+				.put("waits", lockWaits.waits)
+				.put("timeMillis", lockWaits.timeMillis)
+				.put("averageMillis", lockWaits.getAverageMillis())
+				.put("maxWaiting", lockWaits.maxWaiting);
+	}
+
+	private static Map<Endpoint, Integer> parseMix(String value) {
+		Map<Endpoint, Integer> mix = new EnumMap<>(Endpoint.class);
+		for (String entry : value.split(",")) {
+			String[] parts = entry.split(":");
+			Endpoint endpoint = Endpoint.withPath(parts[0].trim());
+			if (endpoint == null || parts.length != 2) {
+				throw new IllegalArgumentException(String.format("Invalid mix entry '%s'", entry));
+			}
+			int weight = Integer.parseInt(parts[1].trim());
+			if (weight > 0) {
+				mix.put(endpoint, weight);
+			}
+		}
+		if (mix.isEmpty()) {
+			throw new IllegalArgumentException("The mix must include at least one endpoint");
+		}
+		return mix;
+	}
+
+	private static String encode(String value) {
+		return URLEncoder.encode(value, StandardCharsets.UTF_8);
+	}
+
+	private enum Endpoint {
+		SUMMONER_INFO("summonerInfo") {
+			@Override
+			String createQuery(LoadDriver driver) {
+				int player = driver.choosePlayer();
+				return "platform=" + SyntheticPlayers.getPlatform(player).getTag() +
+						"&riotId=" + encode(SyntheticPlayers.getGameName(player) + "#" + SyntheticPlayers.TAG_LINE);
+			}
+		},
+		REFRESH_PLAYER("refreshPlayer") {
+			@Override
+			String createQuery(LoadDriver driver) {
+				int player = driver.choosePlayer();
+				return "platform=" + SyntheticPlayers.getPlatform(player).getTag() + "&puuid=" + SyntheticPlayers.getPuuid(player);
+			}
+		},
+		CHAMPION_HIGHSCORES("championHighscores") {
+			@Override
+			String createQuery(LoadDriver driver) {
+				// Champion IDs start at 1, so 0 is used for total level (-2) alongside total points (-1).
+				int championId = ThreadLocalRandom.current().nextInt(SyntheticPlayers.CHAMPIONS + 2) - 1;
+				return "championId=" + (championId == 0 ? -2 : championId);
+			}
+		},
+		HIGHSCORES_SUMMARY("highscoresSummary"),
+		RANK_THRESHOLDS("rankThresholds");
+
+		private final String path;
+
+		Endpoint(String path) {
+			this.path = path;
+		}
+
+		String createQuery(LoadDriver driver) {
+			return null;
+		}
+
+		private String createPathAndQuery(LoadDriver driver) {
+			String query = createQuery(driver);
+			return "/" + path + (query == null ? "" : "?" + query);
+		}
+
+		private static Endpoint withPath(String path) {
+			for (Endpoint endpoint : values()) {
+				if (endpoint.path.toLowerCase(Locale.ROOT).equals(path.toLowerCase(Locale.ROOT))) {
+					return endpoint;
+				}
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package gg.championmastery.highscoresService.loadtest;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures InnoDB row lock waits while a load test runs, so that score write modes can be compared by running the same
+ * test against the service with each {@code SCORE_WRITE_MODE}.
+ * <p>
+ * The {@code Innodb_row_lock_waits} and {@code Innodb_row_lock_time} status counters are read when the measurement
+ * starts and stops, and {@code performance_schema.data_lock_waits} is sampled every second for the number of lock
+ * requests waiting at once. The counters are global, so nothing else should be using the database during the test.
+ */
+final class LockWaitMonitor {
+
+	private static final long SAMPLE_INTERVAL_MILLIS = 1000;
+
+	private final Connection connection;
+	private final Map<String, Long> startCounters;
+	private final Thread sampler;
+	/** Written by {@link #sampler}, and read once it has stopped. */
+	private int maxWaiting = -1;
+
+	private LockWaitMonitor(Connection connection) throws SQLException {
+		this.connection = connection;
+		this.startCounters = readCounters();
+		this.sampler = Thread.ofVirtual().name("lock-wait-sampler").start(this::sample);
+	}
+
+	/**
+	 * Starts measuring lock waits.
+	 *
+	 * @param url The JDBC URL of the database the service uses, including credentials.
+	 * @return The monitor.
+	 * @throws SQLException Thrown if the status counters can't be read.
+	 */
+	static LockWaitMonitor start(String url) throws SQLException {
+		return new LockWaitMonitor(DriverManager.getConnection(url));
+	}
+
+	/**
+	 * Stops measuring lock waits.
+	 *
+	 * @return The lock waits since the monitor was started.
+	 * @throws SQLException Thrown if the status counters can't be read.
+	 * @throws InterruptedException Thrown if interrupted while waiting for the sampler to stop.
+	 */
+	Result stop() throws SQLException, InterruptedException {
+		sampler.interrupt();
+		sampler.join();
+		try {
+			Map<String, Long> endCounters = readCounters();
+			long waits = endCounters.get("Innodb_row_lock_waits") - startCounters.get("Innodb_row_lock_waits");
+			long timeMillis = endCounters.get("Innodb_row_lock_time") - startCounters.get("Innodb_row_lock_time");
+			return new Result(waits, timeMillis, maxWaiting);
+		} finally {
+			connection.close();
+		}
+	}
+
+	private Map<String, Long> readCounters() throws SQLException {
+		Map<String, Long> counters = new HashMap<>();
+		try (PreparedStatement statement = connection.prepareStatement("SHOW GLOBAL STATUS WHERE Variable_name IN ('Innodb_row_lock_waits', 'Innodb_row_lock_time')");
+				ResultSet results = statement.executeQuery()) {
+			while (results.next()) {
+				counters.put(results.getString(1), results.getLong(2));
+			}
+		}
+		if (counters.size() != 2) {
+			throw new SQLException("InnoDB row lock counters are not available");
+		}
+		return counters;
+	}
+
+	private void sample() {
+		try (PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM performance_schema.data_lock_waits")) {
+			while (!Thread.currentThread().isInterrupted()) {
+				try (ResultSet results = statement.executeQuery()) {
+					results.next();
+					maxWaiting = Math.max(maxWaiting, results.getInt(1));
+				}
+				TimeUnit.MILLISECONDS.sleep(SAMPLE_INTERVAL_MILLIS);
+			}
+		} catch (InterruptedException ignored) {
+			// The monitor was stopped.
+		} catch (SQLException ex) {
+			System.err.printf("Stopped sampling performance_schema.data_lock_waits: %s%n", ex.getMessage());
+		}
+	}
+
+	static final class Result {
+		final long waits;
+		final long timeMillis;
+		/** The most lock requests that were waiting at once, or -1 if they couldn't be sampled. */
+		final int maxWaiting;
+
+		private Result(long waits, long timeMillis, int maxWaiting) {
+			this.waits = waits;
+			this.timeMillis = timeMillis;
+			this.maxWaiting = maxWaiting;
+		}
+
+		double getAverageMillis() {
+			return waits == 0 ? 0 : timeMillis / (double) waits;
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package gg.championmastery.highscoresService.loadtest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Command line options in the form {@code --name=value}.
+ */
+final class Options {
+
+	private final Map<String, String> values = new HashMap<>();
+
+	Options(String[] args) {
+		for (String arg : args) {
+			int separator = arg.indexOf('=');
+			if (!arg.startsWith("--") || separator < 0) {
+				throw new IllegalArgumentException(String.format("Invalid option '%s' (expected --name=value)", arg));
+			}
+			values.put(arg.substring(2, separator), arg.substring(separator + 1));
+		}
+	}
+
+	String getString(String name, String defaultValue) {
+		return values.getOrDefault(name, defaultValue);
+	}
+
+	int getInt(String name, int defaultValue) {
+		String value = values.get(name);
+		return value == null ? defaultValue : Integer.parseInt(value);
+	}
+
+	double getDouble(String name, double defaultValue) {
+		String value = values.get(name);
+		return value == null ? defaultValue : Double.parseDouble(value);
+	}
+}
@@ -0,0 +1,213 @@
+package gg.championmastery.highscoresService.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.util.concurrent.RateLimiter;
+import com.merakianalytics.orianna.types.common.Platform;
+import gg.championmastery.highscoresService.api.http.VirtualThreadHandler;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A local stand-in for the parts of the Riot Games API used by the highscores service (Account, Summoner and Champion
+ * Mastery), serving the players described by {@link SyntheticPlayers}. Point the service at it by setting
+ * {@code RIOT_API_STAND_IN_URL} (e.g. to {@code http://localhost:8090}).
+ * <p>
+ * Options:
+ * <ul>
+ *     <li>{@code --port}: The port to listen on (default 8090).</li>
+ *     <li>{@code --players}: The number of players that exist (default 100000).</li>
+ *     <li>{@code --latency}: The minimum time (in milliseconds) taken to respond to each request (default 50).</li>
+ *     <li>{@code --jitter}: The maximum random time (in milliseconds) added to the latency (default 100).</li>
+ *     <li>{@code --rate-limit}: The number of requests per second allowed on each platform before 429s are returned,
+ *     or 0 for no limit (default 0).</li>
+ *     <li>{@code --error-429}: The share (between 0 and 1) of requests that randomly receive a 429 (default 0).</li>
+ *     <li>{@code --error-5xx}: The share (between 0 and 1) of requests that randomly receive a 500 or 503 (default 0).</li>
+ * </ul>
+ * Run with {@code ./gradlew riotStub -PstubArgs="--latency=100 --error-429=0.01"}.
+ */
+public class StubRiotApi extends AbstractHandler {
+
+	private static final Logger logger = LoggerFactory.getLogger(StubRiotApi.class);
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final long startTime = System.currentTimeMillis();
+	private final int players;
+	private final int latency;
+	private final int jitter;
+	private final double error429;
+	private final double error5xx;
+	/** Rate limiters for each platform, or an empty map if requests aren't rate limited. */
+	private final Map<Platform, RateLimiter> rateLimiters = new EnumMap<>(Platform.class);
+	private final Map<Integer, LongAdder> responses = new ConcurrentHashMap<>();
+
+	public StubRiotApi(int players, int latency, int jitter, double rateLimit, double error429, double error5xx) {
+		this.players = players;
+		this.latency = latency;
+		this.jitter = jitter;
+		this.error429 = error429;
+		this.error5xx = error5xx;
+		if (rateLimit > 0) {
+			for (Platform platform : Platform.values()) {
+				rateLimiters.put(platform, RateLimiter.create(rateLimit));
+			}
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options options = new Options(args);
+		StubRiotApi stub = new StubRiotApi(options.getInt("players", 100000), options.getInt("latency", 50), options.getInt("jitter", 100),
+				options.getDouble("rate-limit", 0), options.getDouble("error-429", 0), options.getDouble("error-5xx", 0));
+
+		Server server = new Server(options.getInt("port", 8090));
+		// Responses are delayed by sleeping, so each request gets its own virtual thread.
+		VirtualThreadHandler virtualThreadHandler = new VirtualThreadHandler();
+		virtualThreadHandler.setHandler(stub);
+		server.setHandler(virtualThreadHandler);
+		server.start();
+		logger.info(String.format("Stub Riot API listening on port %d", options.getInt("port", 8090)));
+
+		Executors.newSingleThreadScheduledExecutor().scheduleAtFixedRate(stub::logResponses, 10, 10, TimeUnit.SECONDS);
+		server.join();
+	}
+
+	@Override
+	public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException {
+		baseRequest.setHandled(true);
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		try {
+			Thread.sleep(latency + (jitter > 0 ? random.nextInt(jitter + 1) : 0));
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+
+		// Paths are "/{platform}/{Riot API path}".
+		String[] path = baseRequest.getRequestURI().split("/");
+		Platform platform = path.length > 1 ? Platform.withTag(path[1]) : null;
+		if (platform == null) {
+			send(response, 400, null);
+			return;
+		}
+
+		RateLimiter rateLimiter = rateLimiters.get(platform);
+		double roll = random.nextDouble();
+		if ((rateLimiter != null && !rateLimiter.tryAcquire()) || roll < error429) {
+			response.setHeader("Retry-After", "1");
+			response.setHeader("X-Rate-Limit-Type", rateLimiter != null ? "method" : "service");
+			send(response, 429, null);
+			return;
+		}
+		if (roll < error429 + error5xx) {
+			send(response, random.nextBoolean() ? 500 : 503, null);
+			return;
+		}
+
+		String route = String.join("/", Arrays.copyOfRange(path, 2, path.length));
+		int player = -1;
+		ObjectNode body = null;
+		if (route.startsWith("riot/account/v1/accounts/by-riot-id/") && path.length == 9) {
+			player = SyntheticPlayers.parseRiotId(decode(path[7]), decode(path[8]));
+			if (isPlayer(player)) {
+				body = getAccount(player);
+			}
+		} else if (route.startsWith("riot/account/v1/accounts/by-puuid/") && path.length == 8) {
+			player = SyntheticPlayers.parsePuuid(decode(path[7]));
+			if (isPlayer(player)) {
+				body = getAccount(player);
+			}
+		} else if (route.startsWith("lol/summoner/v4/summoners/by-puuid/") && path.length == 8) {
+			player = SyntheticPlayers.parsePuuid(decode(path[7]));
+			if (isPlayer(player) && SyntheticPlayers.getPlatform(player) == platform) {
+				body = getSummoner(player);
+			}
+		} else if (route.startsWith("lol/champion-mastery/v4/champion-masteries/by-puuid/") && path.length == 8) {
+			player = SyntheticPlayers.parsePuuid(decode(path[7]));
+			if (isPlayer(player) && SyntheticPlayers.getPlatform(player) == platform) {
+				send(response, 200, getMasteries(player));
+				return;
+			}
+		} else {
+			send(response, 400, null);
+			return;
+		}
+		send(response, body == null ? 404 : 200, body);
+	}
+
+	private boolean isPlayer(int player) {
+		return player >= 0 && player < players;
+	}
+
+	private long getElapsedMinutes() {
+		return TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis() - startTime);
+	}
+
+	private ObjectNode getAccount(int player) {
+		return mapper.createObjectNode()
+				.put("puuid", SyntheticPlayers.getPuuid(player))
+				.put("gameName", SyntheticPlayers.getGameName(player))
+				.put("tagLine", SyntheticPlayers.TAG_LINE);
+	}
+
+	private ObjectNode getSummoner(int player) {
+		return mapper.createObjectNode()
+				.put("puuid", SyntheticPlayers.getPuuid(player))
+				.put("profileIconId", player % 5000)
+				// The revision date changes whenever the player's scores do.
+				.put("revisionDate", startTime + TimeUnit.MINUTES.toMillis(getElapsedMinutes()))
+				.put("summonerLevel", 30 + player % 1000);
+	}
+
+	private ArrayNode getMasteries(int player) {
+		ArrayNode masteries = mapper.createArrayNode();
+		String puuid = SyntheticPlayers.getPuuid(player);
+		for (SyntheticPlayers.Mastery mastery : SyntheticPlayers.getMasteries(player, getElapsedMinutes())) {
+			masteries.addObject()
+					.put("puuid", puuid)
+					.put("championId", mastery.championId)
+					.put("championLevel", mastery.level)
+					.put("championPoints", mastery.points)
+					.put("lastPlayTime", startTime);
+		}
+		return masteries;
+	}
+
+	private void send(HttpServletResponse response, int status, Object body) throws IOException {
+		responses.computeIfAbsent(status, key -> new LongAdder()).increment();
+		response.setStatus(status);
+		response.setContentType("application/json;charset=utf-8");
+		if (body != null) {
+			mapper.writeValue(response.getOutputStream(), body);
+		} else {
+			response.getWriter().write(String.format("{\"status\":{\"status_code\":%d}}", status));
+		}
+	}
+
+	private void logResponses() {
+		StringBuilder summary = new StringBuilder("Responses by status:");
+		responses.forEach((status, count) -> summary.append(' ').append(status).append('=').append(count.sumThenReset()));
+		logger.info(summary.toString());
+	}
+
+	private static String decode(String segment) {
+		return URLDecoder.decode(segment, StandardCharsets.UTF_8);
+	}
+}
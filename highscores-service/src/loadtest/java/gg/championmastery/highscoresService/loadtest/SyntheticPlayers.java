@@ -0,0 +1,111 @@
+package gg.championmastery.highscoresService.loadtest;
+
+import com.merakianalytics.orianna.types.common.Platform;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The players served by {@link StubRiotApi} and looked up by {@link LoadDriver}. Players are numbered from 0, and
+ * everything about a player is derived from their number, so the stub and the driver agree on which players exist
+ * without sharing any state.
+ * <p>
+ * Each player has a single summoner, on the platform chosen by their number (a player with summoners on several
+ * platforms would be treated as a transfer). Most players have a few hundred thousand points at most, while one in a
+ * hundred has millions, so that the highscores fill up the way they do in production.
+ */
+final class SyntheticPlayers {
+
+	static final String TAG_LINE = "LOAD";
+	private static final String GAME_NAME_PREFIX = "LoadTest";
+	private static final String PUUID_PREFIX = "loadtest-";
+	/** The number of champions that players can have mastery on. */
+	static final int CHAMPIONS = 170;
+
+	private SyntheticPlayers() {
+	}
+
+	static String getPuuid(int player) {
+		// PUUIDs are always 78 characters long.
+		return String.format("%s%069d", PUUID_PREFIX, player);
+	}
+
+	static String getGameName(int player) {
+		return GAME_NAME_PREFIX + player;
+	}
+
+	static Platform getPlatform(int player) {
+		Platform[] platforms = Platform.values();
+		return platforms[player % platforms.length];
+	}
+
+	/**
+	 * @return The number of the player with the PUUID, or -1 if it isn't a synthetic player's PUUID.
+	 */
+	static int parsePuuid(String puuid) {
+		if (!puuid.startsWith(PUUID_PREFIX)) {
+			return -1;
+		}
+		try {
+			return Integer.parseInt(puuid.substring(PUUID_PREFIX.length()));
+		} catch (NumberFormatException ex) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @return The number of the player with the Riot ID, or -1 if it isn't a synthetic player's Riot ID.
+	 */
+	static int parseRiotId(String gameName, String tagLine) {
+		if (!TAG_LINE.equalsIgnoreCase(tagLine) || !gameName.regionMatches(true, 0, GAME_NAME_PREFIX, 0, GAME_NAME_PREFIX.length())) {
+			return -1;
+		}
+		try {
+			return Integer.parseInt(gameName.substring(GAME_NAME_PREFIX.length()));
+		} catch (NumberFormatException ex) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Generates a player's champion masteries. Some champions gain points every minute, so that lookups of the same
+	 * player eventually change their scores.
+	 *
+	 * @param player The number of the player.
+	 * @param elapsedMinutes The number of minutes since the stub started.
+	 * @return The player's masteries.
+	 */
+	static List<Mastery> getMasteries(int player, long elapsedMinutes) {
+		Random random = new Random(player);
+		List<Integer> championIds = new ArrayList<>(CHAMPIONS);
+		for (int championId = 1; championId <= CHAMPIONS; championId++) {
+			championIds.add(championId);
+		}
+		Collections.shuffle(championIds, random);
+
+		int played = 10 + random.nextInt(CHAMPIONS - 10);
+		int maxPoints = player % 100 == 0 ? 5000000 : 150000;
+		List<Mastery> masteries = new ArrayList<>(played);
+		for (int i = 0; i < played; i++) {
+			int points = (int) (maxPoints * Math.pow(random.nextDouble(), 3));
+			int pointsPerMinute = random.nextInt(4) == 0 ? random.nextInt(200) : 0;
+			points += (int) Math.min(elapsedMinutes * pointsPerMinute, Integer.MAX_VALUE - points);
+			masteries.add(new Mastery(championIds.get(i), points, Math.min(points / 12000 + 1, 100)));
+		}
+		return masteries;
+	}
+
+	static final class Mastery {
+		final int championId;
+		final int points;
+		final int level;
+
+		private Mastery(int championId, int points, int level) {
+			this.championId = championId;
+			this.points = points;
+			this.level = level;
+		}
+	}
+}
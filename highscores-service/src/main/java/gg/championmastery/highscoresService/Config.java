@@ -0,0 +1,224 @@
+package gg.championmastery.highscoresService;
+
+import gg.championmastery.highscoresService.api.RefreshScheduler;
+import gg.championmastery.highscoresService.api.RiotRequestScheduler;
+import gg.championmastery.highscoresService.api.http.HttpApi;
+import gg.championmastery.highscoresService.persistence.PersistenceExecutor;
+import gg.championmastery.highscoresService.persistence.ScoreWriter;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Optional settings, which can be overridden with environment variables. Required settings (such as
+ * {@code MYSQL_CONNECTION_URL}) are checked by {@link HighscoresService#main(String[])} instead.
+ */
+public final class Config {
+
+	/** How often (in seconds) the in-memory leaderboards are reloaded from the database. */
+	public static final long LEADERBOARD_REFRESH_INTERVAL = getLong("LEADERBOARD_REFRESH_INTERVAL", 600);
+	/**
+	 * How often (in seconds) one platform's in-memory leaderboards are reloaded from the database. Platforms are reloaded
+	 * in turn, so each one is reloaded once every this many seconds multiplied by the number of platforms.
+	 */
+	public static final long REGIONAL_LEADERBOARD_REFRESH_INTERVAL = getLong("REGIONAL_LEADERBOARD_REFRESH_INTERVAL", 1800);
+	/** How long (in seconds) rank thresholds are cached before being read from the database again. */
+	public static final long RANK_THRESHOLDS_CACHE_DURATION = getLong("RANK_THRESHOLDS_CACHE_DURATION", 300);
+	/** The number of entries in each page of a paginated champion leaderboard, unless a smaller page is requested. */
+	public static final int LEADERBOARD_PAGE_SIZE = getInt("LEADERBOARD_PAGE_SIZE", 100);
+	/** How many of the highest scores for each champion can be browsed through paginated champion leaderboards. */
+	public static final int LEADERBOARD_MAX_DEPTH = getInt("LEADERBOARD_MAX_DEPTH", 10000);
+	/** The value (in seconds) of the {@code max-age} directive sent with cacheable responses. */
+	public static final long RESPONSE_MAX_AGE = getLong("RESPONSE_MAX_AGE", 30);
+	/**
+	 * How summoners and their scores are saved to the database. {@link ScoreWriter.Mode#WRITE_BEHIND} is opt-in, since
+	 * lookups are acknowledged before their scores are saved.
+	 */
+	public static final ScoreWriter.Mode SCORE_WRITE_MODE = getEnum("SCORE_WRITE_MODE", ScoreWriter.Mode.class, ScoreWriter.Mode.TRANSACTIONAL);
+	/** The maximum number of summoners that can be waiting to be saved in {@link ScoreWriter.Mode#WRITE_BEHIND} mode. */
+	public static final int WRITE_BEHIND_CAPACITY = getInt("WRITE_BEHIND_CAPACITY", 10000);
+	/** The maximum number of summoners saved in each transaction in {@link ScoreWriter.Mode#WRITE_BEHIND} mode. */
+	public static final int WRITE_BEHIND_BATCH_SIZE = getInt("WRITE_BEHIND_BATCH_SIZE", 100);
+	/** How often (in milliseconds) queued summoners are saved in {@link ScoreWriter.Mode#WRITE_BEHIND} mode. */
+	public static final long WRITE_BEHIND_FLUSH_INTERVAL = getLong("WRITE_BEHIND_FLUSH_INTERVAL", 1000);
+	/** The number of threads used for asynchronous database work. */
+	public static final int PERSISTENCE_THREADS = getInt("PERSISTENCE_THREADS", 4);
+	/**
+	 * How long (in seconds) a thread can hold its claim on a new entity's ID before another thread can take it over. This
+	 * should be longer than any transaction that saves a summoner.
+	 */
+	public static final long ENTITY_CLAIM_TIMEOUT = getLong("ENTITY_CLAIM_TIMEOUT", 300);
+	/** The maximum number of asynchronous database tasks that can be waiting to run. */
+	public static final int PERSISTENCE_QUEUE_CAPACITY = getInt("PERSISTENCE_QUEUE_CAPACITY", 1000);
+	/** What to do with asynchronous database tasks that are submitted while the queue is full. */
+	public static final PersistenceExecutor.RejectionPolicy PERSISTENCE_REJECTION_POLICY = getEnum("PERSISTENCE_REJECTION_POLICY",
+			PersistenceExecutor.RejectionPolicy.class, PersistenceExecutor.RejectionPolicy.CALLER_RUNS);
+	/**
+	 * Which threads HTTP requests are handled on. {@link HttpApi.Executor#VIRTUAL_THREADS} is opt-in, since JDBC work
+	 * can pin their carrier threads.
+	 */
+	public static final HttpApi.Executor HTTP_EXECUTOR = getEnum("HTTP_EXECUTOR", HttpApi.Executor.class, HttpApi.Executor.THREAD_POOL);
+	/** The maximum number of Riot IDs (and, separately, summoners) that are cached. */
+	public static final long IDENTITY_CACHE_SIZE = getLong("IDENTITY_CACHE_SIZE", 100000);
+	/** How long (in seconds) a Riot ID is trusted after it was retrieved from the Riot Games API. */
+	public static final long ACCOUNT_CACHE_DURATION = getLong("ACCOUNT_CACHE_DURATION", 86400);
+	/** How long (in seconds) summoners are cached. Summoners include their level and icon, so this should be short. */
+	public static final long SUMMONER_CACHE_DURATION = getLong("SUMMONER_CACHE_DURATION", 600);
+	/** How long (in seconds) nonexistent accounts and summoners are cached. */
+	public static final long NEGATIVE_CACHE_DURATION = getLong("NEGATIVE_CACHE_DURATION", 300);
+	/**
+	 * Whether to check every summoner that exists on multiple platforms for transfers at startup. This only needs to be
+	 * enabled once, since transfers are otherwise detected when summoners are saved.
+	 */
+	public static final boolean RECONCILE_TRANSFERS = getBoolean("RECONCILE_TRANSFERS", false);
+	/** The number of threads used when {@link #RECONCILE_TRANSFERS} is enabled. */
+	public static final int RECONCILE_TRANSFERS_THREADS = getInt("RECONCILE_TRANSFERS_THREADS", 4);
+	/** How requests to the Riot Games API are prioritized when every slot is in use. */
+	public static final RiotRequestScheduler.Policy RIOT_SCHEDULER_POLICY = getEnum("RIOT_SCHEDULER_POLICY",
+			RiotRequestScheduler.Policy.class, RiotRequestScheduler.Policy.STRICT);
+	/** The number of requests to the Riot Games API that can be sent at once on each platform. */
+	public static final int RIOT_SCHEDULER_SLOTS = getInt("RIOT_SCHEDULER_SLOTS", 10);
+	/** For the {@code WEIGHTED} policy, the number of interactive requests sent for each background request. */
+	public static final int RIOT_SCHEDULER_INTERACTIVE_WEIGHT = getInt("RIOT_SCHEDULER_INTERACTIVE_WEIGHT", 4);
+	/** Whether stale summoners are refreshed in the background by {@link RefreshScheduler}. */
+	public static final boolean REFRESH_SCHEDULER_ENABLED = getBoolean("REFRESH_SCHEDULER_ENABLED", false);
+	/** How long (in seconds) after their last lookup a summoner is refreshed by {@link RefreshScheduler}. */
+	public static final long REFRESH_STALE_AFTER = getLong("REFRESH_STALE_AFTER", 604800);
+	/** The number of Riot API requests per second that the API key is allowed to make on each platform. */
+	public static final double REFRESH_RATE_LIMIT = getDouble("REFRESH_RATE_LIMIT", 20);
+	/** The share (between 0 and 1) of {@link #REFRESH_RATE_LIMIT} that {@link RefreshScheduler} may use. */
+	public static final double REFRESH_RATE_SHARE = getDouble("REFRESH_RATE_SHARE", 0.25);
+	/** The number of stale summoners that {@link RefreshScheduler} reads from the database at a time for each platform. */
+	public static final int REFRESH_PAGE_SIZE = getInt("REFRESH_PAGE_SIZE", 1000);
+	/** The maximum number of refreshes that {@link RefreshScheduler} runs at once on each platform. */
+	public static final int REFRESH_CONCURRENCY = getInt("REFRESH_CONCURRENCY", 8);
+	/** The maximum number of players refreshed at once on each platform by a single {@code /refreshPlayers} request. */
+	public static final int REFRESH_BATCH_CONCURRENCY = getInt("REFRESH_BATCH_CONCURRENCY", 4);
+	/**
+	 * The URL of a local stand-in for the Riot Games API (such as the load test's {@code StubRiotApi}). If this is set,
+	 * requests to the Riot Games API are sent there instead of through the Orianna pipeline. For load testing only.
+	 */
+	public static final String RIOT_API_STAND_IN_URL = getString("RIOT_API_STAND_IN_URL", null);
+
+	private Config() {
+	}
+
+	/**
+	 * Reads a string setting from an environment variable. Empty values are treated as undefined.
+	 *
+	 * @param key The name of the environment variable.
+	 * @param defaultValue The value to use if the environment variable is not defined.
+	 * @return The value of the environment variable, or {@code defaultValue} if it is not defined.
+	 */
+	private static String getString(String key, String defaultValue) {
+		String value = System.getenv(key);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		return value.trim();
+	}
+
+	/**
+	 * Reads a numeric setting from an environment variable.
+	 *
+	 * @param key The name of the environment variable.
+	 * @param defaultValue The value to use if the environment variable is not defined.
+	 * @return The value of the environment variable, or {@code defaultValue} if it is not defined.
+	 * @throws IllegalStateException thrown if the environment variable is not a valid number.
+	 */
+	private static long getLong(String key, long defaultValue) {
+		String value = System.getenv(key);
+		if (value == null) {
+			return defaultValue;
+		}
+
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException ex) {
+			throw new IllegalStateException(String.format("Environment variable '%s' must be a number (got '%s')", key, value), ex);
+		}
+	}
+
+	/**
+	 * Reads an integer setting from an environment variable.
+	 *
+	 * @param key The name of the environment variable.
+	 * @param defaultValue The value to use if the environment variable is not defined.
+	 * @return The value of the environment variable, or {@code defaultValue} if it is not defined.
+	 * @throws IllegalStateException thrown if the environment variable is not a valid integer.
+	 */
+	private static int getInt(String key, int defaultValue) {
+		long value = getLong(key, defaultValue);
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+			throw new IllegalStateException(String.format("Environment variable '%s' is out of range (got %d)", key, value));
+		}
+		return (int) value;
+	}
+
+	/**
+	 * Reads a decimal setting from an environment variable.
+	 *
+	 * @param key The name of the environment variable.
+	 * @param defaultValue The value to use if the environment variable is not defined.
+	 * @return The value of the environment variable, or {@code defaultValue} if it is not defined.
+	 * @throws IllegalStateException thrown if the environment variable is not a valid number.
+	 */
+	private static double getDouble(String key, double defaultValue) {
+		String value = System.getenv(key);
+		if (value == null) {
+			return defaultValue;
+		}
+
+		try {
+			return Double.parseDouble(value.trim());
+		} catch (NumberFormatException ex) {
+			throw new IllegalStateException(String.format("Environment variable '%s' must be a number (got '%s')", key, value), ex);
+		}
+	}
+
+	/**
+	 * Reads a boolean setting from an environment variable. Values are case-insensitive.
+	 *
+	 * @param key The name of the environment variable.
+	 * @param defaultValue The value to use if the environment variable is not defined.
+	 * @return The value of the environment variable, or {@code defaultValue} if it is not defined.
+	 * @throws IllegalStateException thrown if the environment variable is not {@code true} or {@code false}.
+	 */
+	private static boolean getBoolean(String key, boolean defaultValue) {
+		String value = System.getenv(key);
+		if (value == null) {
+			return defaultValue;
+		}
+
+		switch (value.trim().toLowerCase(Locale.ROOT)) {
+			case "true":
+				return true;
+			case "false":
+				return false;
+			default:
+				throw new IllegalStateException(String.format("Environment variable '%s' must be true or false (got '%s')", key, value));
+		}
+	}
+
+	/**
+	 * Reads an enum setting from an environment variable. Values are case-insensitive.
+	 *
+	 * @param key The name of the environment variable.
+	 * @param enumClass The class of the enum.
+	 * @param defaultValue The value to use if the environment variable is not defined.
+	 * @return The value of the environment variable, or {@code defaultValue} if it is not defined.
+	 * @throws IllegalStateException thrown if the environment variable is not the name of a constant in the enum.
+	 */
+	private static <T extends Enum<T>> T getEnum(String key, Class<T> enumClass, T defaultValue) {
+		String value = System.getenv(key);
+		if (value == null) {
+			return defaultValue;
+		}
+
+		try {
+			return Enum.valueOf(enumClass, value.trim().toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException ex) {
+			throw new IllegalStateException(String.format("Environment variable '%s' must be one of %s (got '%s')", key, Arrays.toString(enumClass.getEnumConstants()), value), ex);
+		}
+	}
+}
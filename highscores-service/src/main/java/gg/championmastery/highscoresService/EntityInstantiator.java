@@ -1,21 +1,31 @@
 package gg.championmastery.highscoresService;
 
+import io.prometheus.client.Counter;
+import org.hibernate.LockMode;
 import org.hibernate.Session;
 
 import java.io.Serializable;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * This class is used to instantiate subclasses of {@link HibernateEntity}. It is designed to ensure that 2 different
  * entities with the same ID (primary key) will never be instantiated, even in a multi-threaded environment. When an
- * entity is instantiated through this class, its ID will be added to a list of pending IDs before checking that an
- * entity with the specified ID has not already been persisted. Any time an attempt is made to instantiate an entity
- * with an ID that is already listed as a pending entity or that has already been persisted, the attempt will fail. This
- * ensures that between the time an entity is instantiated and the time it is persisted to the database, no other thread
- * can create another entity with the same ID.
+ * entity is instantiated through this class, the calling thread claims its ID until the entity has been persisted. Any
+ * attempt to instantiate an entity with an ID that is already claimed by another thread will fail. This ensures that
+ * between the time an entity is instantiated and the time it is persisted to the database, no other thread can create
+ * another entity with the same ID.
+ * <p>
+ * Claims are held in a {@link ConcurrentHashMap}, so threads instantiating different entities never block each other.
+ * Once an ID has been claimed, the database is checked again through the caller's own session, which catches an
+ * entity that was committed by another thread between the caller's own lookup and the claim. A thread that already
+ * holds a claim can claim the same ID again. Another thread can take a claim over if its owner has died, or if it has
+ * been held for longer than {@link Config#ENTITY_CLAIM_TIMEOUT} (which means that its owner leaked it, since claims are
+ * normally held for one transaction). Taking over a claim whose owner is still persisting the entity is safe, because
+ * the locking read waits for the owner's insert to be committed (and then finds the entity), and a concurrent duplicate
+ * insert fails on the primary key.
  * <p>
  * For this class to work correctly, ALL entities of type {@link K} must be instantiated through this class.
  *
@@ -24,69 +34,115 @@ import java.util.Set;
  */
 public abstract class EntityInstantiator<T extends HibernateEntity<K>, K extends Serializable> {
 
+	private static final Counter abandonedClaims = Counter.build()
+			.name("entity_instantiator_abandoned_claims_total")
+			.help("Claims on entity IDs that were taken over because the thread holding them died (dead_owner), or held them for too long (expired).")
+			.labelNames("entity", "reason")
+			.register();
+
 	private final Class<T> clazz;
-	/** IDs of entities which have been created but not yet persisted. */
-	private final Set<K> pendingIds = Collections.synchronizedSet(new HashSet<>());
+	private final String entityName;
+	/** Claims on IDs of entities which have been created but not yet persisted. */
+	private final ConcurrentMap<K, Claim> claims = new ConcurrentHashMap<>();
 
 	/**
 	 * @param clazz The class of the entity that this class will instantiate.
 	 */
 	protected EntityInstantiator(Class<T> clazz) {
 		this.clazz = clazz;
+		this.entityName = clazz.getSimpleName();
 	}
 
 	/**
 	 * Returns a new entity initialized by {@link #instantiateEntity(Serializable)} (if an entity with the specified ID
-	 * does not already exist), or {@code null} (if an entity with this ID already exists).
+	 * does not already exist), or {@code null} (if an entity with this ID already exists, or has been instantiated by
+	 * another thread and not persisted yet).
+	 * <p>
+	 * Once the ID has been claimed, the database is checked with a locking read through {@code session}, which should
+	 * be the session (and transaction) that the entity will be persisted with.
 	 * <p>
-	 * The caller must call either {@link #persistEntity(Serializable)} or {@link #persistEntities(Collection)} with the
-	 * ID of the acquired entity (if it isn't null) once the entity has been saved. If it fails to do so, future
-	 * attempts to acquire the same entity will always fail.
+	 * The caller must call either {@link #persistEntity(Serializable)} or {@link #persistEntities(Collection)} with
+	 * the ID of the acquired entity (if it isn't null) once the entity has been saved (or the attempt to save it has
+	 * failed). If it fails to do so, other threads can't acquire the ID until the calling thread has died or
+	 * {@link Config#ENTITY_CLAIM_TIMEOUT} has passed.
 	 *
+	 * @param session The session that the entity will be persisted with.
 	 * @param id The ID of the entity to attempt to create.
 	 * @return A new entity initialized by {@link #instantiateEntity(Serializable)} if an entity with the specified ID
-	 * 		does not already exist, or {@code null} if an entity with this ID already exists.
+	 * 		does not already exist, or {@code null} if an entity with this ID already exists or is claimed by another
+	 * 		thread.
 	 */
-	public final T acquireEntity(K id) {
-		// Return null if an entity with this ID has been instantiated and is pending persistence.
-		if (!pendingIds.add(id)) {
+	public final T acquireEntity(Session session, K id) {
+		if (!claim(id)) {
 			return null;
 		}
 
-		// Return null if an entity with this ID already exists in the database.
-		try (Session session = HighscoresService.getHibernateSessionFactory().openSession()) {
-			if (session.get(clazz, id) != null) {
-				return null;
-			}
+		// Another thread may have committed the entity between the caller's lookup and the claim.
+		if (session.get(clazz, id, LockMode.PESSIMISTIC_WRITE) != null) {
+			persistEntity(id);
+			return null;
 		}
 
 		return instantiateEntity(id);
 	}
 
 	/**
-	 * Removes an entity from the list of pending entities. This method should be called after an entity created by
-	 * {@link #acquireEntity(Serializable)} has been persisted.
-	 * <p>
-	 * This method must be called for all entities created by {@link #acquireEntity(Serializable)} (not including any
-	 * {@code null} entities) to prevent memory "leaks".
+	 * Claims an ID for the calling thread. An existing claim is renewed if the calling thread holds it, and taken over
+	 * if the thread that holds it has died or it has expired.
+	 *
+	 * @param id The ID to claim.
+	 * @return {@code true} if the ID was claimed, or {@code false} if it is claimed by another live thread.
+	 */
+	final boolean claim(K id) {
+		Claim claim = new Claim(Thread.currentThread(), System.nanoTime());
+		Claim existing = claims.putIfAbsent(id, claim);
+		if (existing == null) {
+			return true;
+		}
+
+		String reason;
+		if (existing.owner == claim.owner) {
+			reason = null;
+		} else if (!existing.owner.isAlive()) {
+			reason = "dead_owner";
+		} else if (claim.acquired - existing.acquired > TimeUnit.SECONDS.toNanos(Config.ENTITY_CLAIM_TIMEOUT)) {
+			reason = "expired";
+		} else {
+			return false;
+		}
+		if (!claims.replace(id, existing, claim)) {
+			return false;
+		}
+		if (reason != null) {
+			abandonedClaims.labels(entityName, reason).inc();
+		}
+		return true;
+	}
+
+	/**
+	 * Releases the claim on an entity's ID. This method should be called after an entity created by
+	 * {@link #acquireEntity(Session, Serializable)} has been persisted. Only claims held by the calling thread are
+	 * released, so it is safe to call this even if {@link #acquireEntity(Session, Serializable)} returned {@code null}.
 	 *
-	 * @param id The ID of the entity to remove from the list of pending entities.
+	 * @param id The ID of the entity to release.
 	 */
 	public final void persistEntity(K id) {
-		pendingIds.remove(id);
+		Claim claim = claims.get(id);
+		if (claim != null && claim.owner == Thread.currentThread()) {
+			claims.remove(id, claim);
+		}
 	}
 
 	/**
-	 * Removes entities from the list of pending entities. This method should be called after entities created by {@link
-	 * #acquireEntity(Serializable)} have been persisted.
-	 * <p>
-	 * This method must be called for all entities created by {@link #acquireEntity(Serializable)} (not including any
-	 * {@code null} entities) to prevent memory "leaks".
+	 * Releases the claims on entities' IDs. This method should be called after entities created by {@link
+	 * #acquireEntity(Session, Serializable)} have been persisted. Only claims held by the calling thread are released.
 	 *
-	 * @param ids The IDs of the entities to remove from the list of pending entities.
+	 * @param ids The IDs of the entities to release.
 	 */
 	public final void persistEntities(Collection<K> ids) {
-		pendingIds.removeAll(ids);
+		for (K id : ids) {
+			persistEntity(id);
+		}
 	}
 
 	/**
@@ -98,4 +154,16 @@ public abstract class EntityInstantiator<T extends HibernateEntity<K>, K extends
 	 *        {@code id}.
 	 */
 	protected abstract T instantiateEntity(K id);
+
+	/** A thread's claim on an ID. */
+	private static final class Claim {
+		private final Thread owner;
+		/** When the claim was made, from {@link System#nanoTime()}. */
+		private final long acquired;
+
+		private Claim(Thread owner, long acquired) {
+			this.owner = owner;
+			this.acquired = acquired;
+		}
+	}
 }
@@ -4,6 +4,7 @@ import com.merakianalytics.datapipelines.DataPipeline;
 import com.merakianalytics.orianna.Orianna;
 import gg.championmastery.highscoresService.api.HighscoresApi;
 import gg.championmastery.highscoresService.api.http.HttpApi;
+import gg.championmastery.highscoresService.persistence.PersistenceExecutor;
 import io.prometheus.client.exporter.HTTPServer;
 import io.prometheus.client.hibernate.HibernateStatisticsCollector;
 import io.prometheus.client.hotspot.DefaultExports;
@@ -15,9 +16,15 @@ import org.slf4j.LoggerFactory;
 public class HighscoresService {
 
 	public static int CHAMPION_HIGHSCORES_LENGTH = 50;
+	/**
+	 * How many scores are kept in memory for each champion. This is larger than {@link #CHAMPION_HIGHSCORES_LENGTH} so
+	 * that players who are removed from the highscores (e.g. transferred accounts) leave entries to take their place.
+	 */
+	public static int LEADERBOARD_CAPACITY = CHAMPION_HIGHSCORES_LENGTH * 2;
 	private static SessionFactory hibernateSessionFactory;
 	private static final Logger logger = LoggerFactory.getLogger(HighscoresService.class);
 	private static HighscoresApi highscoresApi;
+	private static PersistenceExecutor persistenceExecutor;
 
 	public static void main(String[] args) throws Exception {
 		logger.info("Starting highscores service...");
@@ -38,6 +45,18 @@ public class HighscoresService {
 		hibernateSessionFactory = hibernateConfig.buildSessionFactory();
 
 		Orianna.setRiotAPIKey(System.getenv("RIOT_API_KEY"));
+		if (Config.RIOT_API_STAND_IN_URL != null) {
+			logger.warn(String.format("Sending Riot API requests to the stand-in at %s instead of the Riot Games API", Config.RIOT_API_STAND_IN_URL));
+		}
+
+		persistenceExecutor = new PersistenceExecutor("persistence", Config.PERSISTENCE_THREADS,
+				Config.PERSISTENCE_QUEUE_CAPACITY, Config.PERSISTENCE_REJECTION_POLICY);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			try {
+				persistenceExecutor.shutdown(30);
+			} catch (InterruptedException ignored) {
+			}
+		}, "persistence-shutdown"));
 
 		highscoresApi = new HighscoresApi();
 		HttpApi httpApi = new HttpApi(8181);
@@ -61,4 +80,13 @@ public class HighscoresService {
 	public static HighscoresApi getApi() {
 		return highscoresApi;
 	}
+
+	/**
+	 * Returns the executor that should be used for asynchronous database work.
+	 *
+	 * @return The executor that should be used for asynchronous database work.
+	 */
+	public static PersistenceExecutor getPersistenceExecutor() {
+		return persistenceExecutor;
+	}
 }
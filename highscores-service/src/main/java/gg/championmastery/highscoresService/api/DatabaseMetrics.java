@@ -0,0 +1,20 @@
+package gg.championmastery.highscoresService.api;
+
+import io.prometheus.client.Histogram;
+
+/**
+ * Metrics for the database queries made while serving requests and building the in-memory indexes. Saving scores is
+ * measured separately by each {@code ScoreWriter}.
+ */
+final class DatabaseMetrics {
+
+	static final Histogram queryDuration = Histogram.build()
+			.name("database_query_duration_seconds")
+			.help("Time taken to run a database query and read its results, by query.")
+			.labelNames("query")
+			.buckets(0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 300)
+			.register();
+
+	private DatabaseMetrics() {
+	}
+}
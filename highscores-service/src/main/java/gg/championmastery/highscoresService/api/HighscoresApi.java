@@ -1,208 +1,740 @@
 package gg.championmastery.highscoresService.api;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.merakianalytics.orianna.types.common.OriannaException;
 import com.merakianalytics.orianna.types.common.Platform;
+import com.merakianalytics.orianna.types.dto.account.Account;
 import com.merakianalytics.orianna.types.dto.championmastery.ChampionMasteries;
 import com.merakianalytics.orianna.types.dto.championmastery.ChampionMastery;
 import com.merakianalytics.orianna.types.dto.summoner.Summoner;
+import gg.championmastery.highscoresService.Config;
 import gg.championmastery.highscoresService.HighscoresService;
-import gg.championmastery.highscoresService.persistence.MasteryScoreEntity;
+import gg.championmastery.highscoresService.leaderboard.ChampionLeaderboard;
+import gg.championmastery.highscoresService.leaderboard.HighscoresSummary;
+import gg.championmastery.highscoresService.leaderboard.LeaderboardCursor;
+import gg.championmastery.highscoresService.leaderboard.LeaderboardEntry;
+import gg.championmastery.highscoresService.leaderboard.LeaderboardIndex;
+import gg.championmastery.highscoresService.leaderboard.LeaderboardPage;
+import gg.championmastery.highscoresService.leaderboard.PlayerRank;
+import gg.championmastery.highscoresService.leaderboard.PlayerRankIndex;
+import gg.championmastery.highscoresService.leaderboard.RankEstimate;
+import gg.championmastery.highscoresService.leaderboard.RankEstimator;
+import gg.championmastery.highscoresService.persistence.OptimisticScoreWriter;
 import gg.championmastery.highscoresService.persistence.RankThresholdEntity;
+import gg.championmastery.highscoresService.persistence.SavedScores;
+import gg.championmastery.highscoresService.persistence.ScoreWriter;
 import gg.championmastery.highscoresService.persistence.SummonerEntity;
-import org.hibernate.LockMode;
+import gg.championmastery.highscoresService.persistence.SummonerScores;
+import gg.championmastery.highscoresService.persistence.TransactionalScoreWriter;
+import gg.championmastery.highscoresService.persistence.TransferReconciler;
+import gg.championmastery.highscoresService.persistence.WriteBehindScoreWriter;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
 import org.hibernate.Session;
-import org.hibernate.Transaction;
+import org.hibernate.StatelessSession;
+import org.hibernate.query.NativeQuery;
 import org.hibernate.query.Query;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.persistence.LockModeType;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletableFuture;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class HighscoresApi {
+public final class HighscoresApi {
 
 	private static final Logger logger = LoggerFactory.getLogger(HighscoresApi.class);
 
+	private static final Histogram leaderboardRefreshDuration = Histogram.build()
+			.name("leaderboard_refresh_duration_seconds")
+			.help("Time taken to reload the in-memory leaderboards from the database.")
+			.buckets(0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60)
+			.register();
+	private static final Gauge leaderboardLastRefresh = Gauge.build()
+			.name("leaderboard_last_refresh_timestamp_seconds")
+			.help("Unix time when the in-memory leaderboards were last reloaded from the database.")
+			.register();
+	private static final Gauge leaderboardStaleness = Gauge.build()
+			.name("leaderboard_staleness_seconds")
+			.help("Seconds since the in-memory leaderboards were last reloaded from the database.")
+			.create();
+
+	static {
+		leaderboardStaleness.setChild(new Gauge.Child() {
+			@Override
+			public double get() {
+				return System.currentTimeMillis() / 1000.0 - leaderboardLastRefresh.get();
+			}
+		});
+		leaderboardStaleness.register();
+	}
+
+	private final LeaderboardIndex leaderboards = new LeaderboardIndex(HighscoresService.LEADERBOARD_CAPACITY);
+	/** Leaderboards for each platform, mapped by platform tag. */
+	private final Map<String, LeaderboardIndex> regionalLeaderboards = createRegionalLeaderboards();
+	/** The index in {@link Platform#values()} of the platform whose leaderboards are reloaded next. Only used by {@link #leaderboardRefresher}. */
+	private int nextRegionalRefresh;
+	private final RankEstimator rankEstimator = new RankEstimator();
+	private final PlayerRankIndex playerRanks = new PlayerRankIndex();
+	/** The cached rank thresholds, or {@code null} if they haven't been loaded yet. */
+	private volatile Versioned<List<RankThresholdEntity>> rankThresholds;
+	private volatile long rankThresholdsLastUpdated;
+	private final AtomicLong rankThresholdsVersion = new AtomicLong();
+	/** Whether a thread is reloading expired rank thresholds. */
+	private final AtomicBoolean reloadingRankThresholds = new AtomicBoolean();
+	private final ScheduledExecutorService leaderboardRefresher = Executors.newSingleThreadScheduledExecutor(
+			new ThreadFactoryBuilder().setNameFormat("leaderboard-refresher").setDaemon(true).build()
+	);
+
+	private final ScoreWriter scoreWriter;
+	private final RiotRequestScheduler riotRequests = new RiotRequestScheduler(Config.RIOT_SCHEDULER_POLICY, Config.RIOT_SCHEDULER_SLOTS,
+			Config.RIOT_SCHEDULER_INTERACTIVE_WEIGHT, Config.RIOT_API_STAND_IN_URL);
+	private final IdentityCache identityCache = new IdentityCache(riotRequests, Config.IDENTITY_CACHE_SIZE, Duration.ofSeconds(Config.ACCOUNT_CACHE_DURATION),
+			Duration.ofSeconds(Config.SUMMONER_CACHE_DURATION), Duration.ofSeconds(Config.NEGATIVE_CACHE_DURATION));
+	/** Coalesces concurrent lookups for the same Riot ID, keyed by platform and normalized Riot ID. */
+	private final SingleFlight<String, PlayerLookup> riotIdLookups = new SingleFlight<>("riot_id");
+	/** Coalesces concurrent mastery lookups (and the resulting database writes) for the same summoner. */
+	private final SingleFlight<SummonerEntity.Key, ChampionMasteries> scoreLookups = new SingleFlight<>("puuid");
+
+	public HighscoresApi() {
+		switch (Config.SCORE_WRITE_MODE) {
+			case TRANSACTIONAL:
+				scoreWriter = new TransactionalScoreWriter(this::onScoresSaved, HighscoresService.getPersistenceExecutor());
+				break;
+			case WRITE_BEHIND:
+				scoreWriter = new WriteBehindScoreWriter(this::onScoresSaved, Config.WRITE_BEHIND_CAPACITY,
+						Config.WRITE_BEHIND_BATCH_SIZE, Config.WRITE_BEHIND_FLUSH_INTERVAL);
+				break;
+			case OPTIMISTIC:
+				scoreWriter = new OptimisticScoreWriter(this::onScoresSaved, HighscoresService.getPersistenceExecutor());
+				break;
+			default:
+				throw new IllegalStateException("Unknown score write mode " + Config.SCORE_WRITE_MODE);
+		}
+
+		logger.info("Loading leaderboards...");
+		refreshLeaderboards();
+		// Loading the regional leaderboards and building the rank estimator and rank index are done in the background,
+		// since they read far more rows. Until a platform's leaderboards are loaded, they only contain scores saved since
+		// startup.
+		leaderboardRefresher.execute(() -> {
+			for (Platform platform : Platform.values()) {
+				try {
+					refreshRegionalLeaderboards(platform.getTag());
+				} catch (Exception ex) {
+					logger.error(String.format("Error loading leaderboards for %s", platform.getTag()), ex);
+				}
+			}
+			try {
+				buildRankEstimator();
+			} catch (Exception ex) {
+				logger.error("Error building rank estimator", ex);
+			}
+			try {
+				buildPlayerRankIndex();
+			} catch (Exception ex) {
+				logger.error("Error building player rank index", ex);
+			}
+		});
+
+		if (Config.RECONCILE_TRANSFERS) {
+			Thread reconciler = new Thread(() -> {
+				try {
+					new TransferReconciler(this::onScoresSaved, Config.RECONCILE_TRANSFERS_THREADS).run();
+				} catch (Exception ex) {
+					logger.error("Error reconciling transferred summoners", ex);
+				}
+			}, "transfer-reconciler");
+			reconciler.setDaemon(true);
+			reconciler.start();
+		}
+
+		if (Config.REFRESH_SCHEDULER_ENABLED) {
+			new RefreshScheduler(this, Duration.ofSeconds(Config.REFRESH_STALE_AFTER), Config.REFRESH_RATE_LIMIT * Config.REFRESH_RATE_SHARE,
+					Config.REFRESH_PAGE_SIZE, Config.REFRESH_CONCURRENCY).start();
+		}
+
+		// Periodically reload leaderboards to pick up changes made outside of this service, and to fill gaps left by
+		// players who have been removed from the highscores.
+		leaderboardRefresher.scheduleWithFixedDelay(() -> {
+			try {
+				refreshLeaderboards();
+			} catch (Exception ex) {
+				logger.error("Error refreshing leaderboards", ex);
+			}
+		}, Config.LEADERBOARD_REFRESH_INTERVAL, Config.LEADERBOARD_REFRESH_INTERVAL, TimeUnit.SECONDS);
+		// Regional leaderboards are kept up to date by the write path, so they are only reloaded (for the same reasons)
+		// one platform at a time, on a much longer interval.
+		leaderboardRefresher.scheduleWithFixedDelay(() -> {
+			String platform = Platform.values()[nextRegionalRefresh].getTag();
+			nextRegionalRefresh = (nextRegionalRefresh + 1) % Platform.values().length;
+			try {
+				refreshRegionalLeaderboards(platform);
+			} catch (Exception ex) {
+				logger.error(String.format("Error refreshing leaderboards for %s", platform), ex);
+			}
+		}, Config.REGIONAL_LEADERBOARD_REFRESH_INTERVAL, Config.REGIONAL_LEADERBOARD_REFRESH_INTERVAL, TimeUnit.SECONDS);
+
+	}
+
+	/**
+	 * Looks up a player by their Riot ID, retrieves their mastery scores, and saves them (see
+	 * {@link #getSummonerScores(Summoner, String, Instant, RiotRequestScheduler.Priority)}). The player's account and
+	 * summoner are read from the {@link IdentityCache} when possible. Concurrent lookups for the same Riot ID are
+	 * coalesced, so they only make one set of Riot API requests and one database write.
+	 *
+	 * @param platform The platform to look up the player's summoner on.
+	 * @param gameName The game name portion of the player's Riot ID.
+	 * @param tagLine The tag line portion of the player's Riot ID.
+	 * @return The result of the lookup.
+	 * @throws OriannaException thrown if the Riot Games API returns an error.
+	 */
+	public PlayerLookup lookupPlayer(Platform platform, String gameName, String tagLine) throws OriannaException {
+		return riotIdLookups.execute(IdentityCache.getRiotIdKey(platform, gameName, tagLine), () -> {
+			IdentityCache.AccountIdentity account = identityCache.getAccount(platform, gameName, tagLine);
+			if (account == null) {
+				return PlayerLookup.accountNotFound();
+			}
+
+			Summoner summoner = identityCache.getSummoner(platform, account.getPuuid());
+			if (summoner == null) {
+				logger.error("Summoner does not exist for PUUID '{}'", account.getPuuid());
+				return PlayerLookup.summonerNotFound(account);
+			}
+
+			return PlayerLookup.found(account, summoner, getSummonerScores(summoner, account.getRiotId(), account.getLookupTime(), RiotRequestScheduler.Priority.INTERACTIVE));
+		});
+	}
+
+	/**
+	 * Looks up a player by their PUUID, retrieves their mastery scores, and saves them (see
+	 * {@link #getSummonerScores(Summoner, String, Instant, RiotRequestScheduler.Priority)}). The player's summoner and
+	 * account are always retrieved from the Riot Games API, so that their revision date and Riot ID are up to date.
+	 * Refreshes are background work, so their requests are sent with {@link RiotRequestScheduler.Priority#BACKGROUND}
+	 * priority.
+	 *
+	 * @param platform The platform of the player's summoner.
+	 * @param puuid The player's encrypted PUUID.
+	 * @return The result of the refresh.
+	 * @throws OriannaException thrown if the Riot Games API returns an error.
+	 */
+	public PlayerRefresh refreshPlayer(Platform platform, String puuid) throws OriannaException {
+		Summoner summoner = riotRequests.get(Summoner.class, platform, RiotRequestScheduler.Priority.BACKGROUND, ImmutableMap.of(
+				"platform", platform,
+				"puuid", puuid
+		));
+		if (summoner == null) {
+			return new PlayerRefresh(PlayerRefresh.Outcome.SUMMONER_NOT_FOUND, null);
+		}
+
+		Account account = riotRequests.get(Account.class, platform, RiotRequestScheduler.Priority.BACKGROUND, ImmutableMap.of(
+				"puuid", summoner.getPuuid(),
+				"platform", platform
+		));
+		if (account == null) {
+			logger.error("Could not find account for PUUID {}", summoner.getPuuid());
+			return new PlayerRefresh(PlayerRefresh.Outcome.ACCOUNT_NOT_FOUND, null);
+		}
+
+		String riotId = account.getGameName() + " #" + account.getTagLine();
+		getSummonerScores(summoner, riotId, Instant.now(), RiotRequestScheduler.Priority.BACKGROUND);
+		return new PlayerRefresh(PlayerRefresh.Outcome.REFRESHED, riotId);
+	}
+
 	/**
 	 * Retrieves the champion mastery scores for the specified summoner, updates their summoner information in the
 	 * database, and adds their scores to the highscores table if they're high enough to qualify. All database
-	 * modifications occur asynchronously.
+	 * modifications are made by the {@link ScoreWriter} selected by {@link Config#SCORE_WRITE_MODE}, and occur
+	 * asynchronously. Concurrent calls for the same summoner are coalesced.
 	 *
 	 * @param summoner The summoner whose scores should be retrieved.
+	 * @param riotId The summoner's Riot ID.
+	 * @param riotIdLookupTime When {@code riotId} was retrieved from the Riot Games API.
+	 * @param priority The priority of the request to the Riot Games API. If a lookup for the same summoner is already
+	 * 		in progress, its priority is used instead.
 	 * @return The summoner's mastery scores for every champion.
 	 * @throws OriannaException thrown if the Riot Games API returns an error.
 	 */
-	public ChampionMasteries getSummonerScores(Summoner summoner, String riotId) throws OriannaException {
-		ChampionMasteries masteries = HighscoresService.getOriannaPipeline().get(ChampionMasteries.class, ImmutableMap.of(
-				"platform", Platform.withTag(summoner.getPlatform()),
+	public ChampionMasteries getSummonerScores(Summoner summoner, String riotId, Instant riotIdLookupTime, RiotRequestScheduler.Priority priority) throws OriannaException {
+		return scoreLookups.execute(new SummonerEntity.Key(summoner.getPlatform(), summoner.getPuuid()),
+				() -> fetchSummonerScores(summoner, riotId, riotIdLookupTime, priority));
+	}
+
+	private ChampionMasteries fetchSummonerScores(Summoner summoner, String riotId, Instant riotIdLookupTime, RiotRequestScheduler.Priority priority) {
+		Platform platform = Platform.withTag(summoner.getPlatform());
+		ChampionMasteries masteries = riotRequests.get(ChampionMasteries.class, platform, priority, ImmutableMap.of(
+				"platform", platform,
 				"puuid", summoner.getPuuid()
 		));
 
 		// Filter out LoL Classic champs (makes assumption that champs have ID >60000 iff they are LoL Classic).
 		masteries.removeIf(championMastery -> championMastery.getChampionId() > 60000);
 
-		// Asynchronously check if the summoner is in the database, and add them if they're not.
-		CompletableFuture.runAsync(() -> {
-			Transaction tx = null;
-			SummonerEntity.Key summonerKey = new SummonerEntity.Key(summoner.getPlatform(), summoner.getPuuid());
-			try (Session session = HighscoresService.getHibernateSessionFactory().openSession()) {
-				tx = session.beginTransaction();
-				SummonerEntity summonerEntity = session.get(SummonerEntity.class, summonerKey, LockMode.PESSIMISTIC_WRITE);
-				// If the summoner doesn't already exist in the database, create a new entity
-				if (summonerEntity == null) {
-					summonerEntity = SummonerEntity.getInstantiator().acquireEntity(summonerKey);
-					// If the summoner has already been instantiated by another thread, abort.
-					if (summonerEntity == null) {
-						return;
-					}
-				}
+		// Save the summoner and any scores that are high enough to be on the highscores.
+		Map<Short, Integer> scores = getQualifyingScores(masteries);
+		scoreWriter.write(new SummonerScores(summoner.getPlatform(), summoner.getPuuid(), riotId, riotIdLookupTime,
+				Instant.ofEpochMilli(summoner.getRevisionDate()), Instant.now(), Collections.unmodifiableMap(scores)));
 
-				// Update the summoner entity.
-				summonerEntity.setRiotId(riotId);
-				summonerEntity.setEncryptedPuuid(summoner.getPuuid());
-				summonerEntity.setNameLastUpdatedInstant(Instant.now());
-				summonerEntity.setRevisionDateInstant(Instant.ofEpochMilli(summoner.getRevisionDate()));
-				summonerEntity.setMasteriesLastUpdatedInstant(Instant.now());
-				session.saveOrUpdate(summonerEntity);
-
-				// Update the summoner's mastery scores.
-				List<MasteryScoreEntity> results = session
-						.createQuery("FROM MasteryScoreEntity WHERE platform=:platform AND summoner=:id")
-						.setParameter("platform", summonerEntity.getPlatform())
-						.setParameter("id", summonerEntity)
-						.setLockMode(LockModeType.PESSIMISTIC_WRITE)
-						.getResultList();
-				Map<Short, MasteryScoreEntity> scores = results.stream().collect(Collectors.toMap(MasteryScoreEntity::getChampionId, Function.identity()));
-
-				// Consider saving each score and calculate total level/points.
-				int totalPoints = 0;
-				int totalLevel = 0;
-				for (ChampionMastery score : masteries) {
-					MasteryScoreEntity scoreEntity = getMasteryScoreEntity(scores, summonerEntity, (short) score.getChampionId(), score.getChampionPoints());
-					considerSaveOrUpdate(scoreEntity, session);
-					totalPoints += score.getChampionPoints();
-					totalLevel += score.getChampionLevel();
-				}
-				considerSaveOrUpdate(getMasteryScoreEntity(scores, summonerEntity, (short) -1, totalPoints), session);
-				considerSaveOrUpdate(getMasteryScoreEntity(scores, summonerEntity, (short) -2, totalLevel), session);
-
-				tx.commit();
-			} catch (Exception ex) {
-				if (tx != null && tx.isActive()) {
-					tx.setRollbackOnly();
-				}
+		return masteries;
+	}
 
-				logger.error(String.format("Error updating mastery scores for summoner '%s' (%s)", riotId, summoner.getPlatform()), ex);
-			} finally {
-				// Release the entity if it was locked by the instantiator.
-				SummonerEntity.getInstantiator().persistEntity(summonerKey);
-			}
-		});
+	/**
+	 * Finds the scores from a summoner's champion masteries that are high enough to be on the highscores, including
+	 * their total points and total level.
+	 *
+	 * @param masteries The summoner's champion masteries.
+	 * @return The scores to save, keyed by champion ID (or -1 for total points, or -2 for total level).
+	 */
+	static Map<Short, Integer> getQualifyingScores(List<ChampionMastery> masteries) {
+		Map<Short, Integer> scores = new LinkedHashMap<>();
+		int totalPoints = 0;
+		int totalLevel = 0;
+		for (ChampionMastery score : masteries) {
+			considerScore(scores, score.getChampionId(), score.getChampionPoints());
+			totalPoints += score.getChampionPoints();
+			totalLevel += score.getChampionLevel();
+		}
+		considerScore(scores, -1, totalPoints);
+		considerScore(scores, -2, totalLevel);
+		return scores;
+	}
 
-		return masteries;
+	/**
+	 * Returns the lowest score that is currently shown in the highscores for a champion.
+	 *
+	 * @param championId The ID of the champion (or -1 for total points, or -2 for total level).
+	 * @return The lowest score shown, or 0 if the highscores for the champion aren't full.
+	 */
+	public int getLeaderboardCutoff(short championId) {
+		return leaderboards.getCutoff(championId, HighscoresService.CHAMPION_HIGHSCORES_LENGTH);
 	}
 
 	/**
 	 * Retrieves a list of the top 3 players for each champion (including total level/points).
 	 *
-	 * @return Lists of the top 3 players for each champion in descending order, mapped by champion ID.
+	 * @return A snapshot of the top 3 players for each champion in descending order.
 	 */
-	public Map<Short, List<MasteryScoreEntity>> getHighscoresSummary() {
-		try (Session session = HighscoresService.getHibernateSessionFactory().openSession()) {
-			List<Short> championIds = session.createQuery("SELECT DISTINCT(championId) FROM MasteryScoreEntity", Short.class).getResultList();
-
-			HashMap<Short, List<MasteryScoreEntity>> highscoresSummary = new HashMap<>();
-			for (short championId : championIds) {
-				Query<MasteryScoreEntity> query = session.createQuery("FROM MasteryScoreEntity WHERE championId=:championId AND summoner.status != 1 ORDER BY masteryPoints DESC", MasteryScoreEntity.class)
-						.setParameter("championId", championId)
-						.setMaxResults(3);
-				highscoresSummary.put(championId, query.getResultList());
-			}
+	public HighscoresSummary getHighscoresSummary() {
+		return leaderboards.getSummary(3);
+	}
 
-			return highscoresSummary;
-		}
+	/**
+	 * Retrieves a list of the top 3 players on a platform for each champion (including total level/points).
+	 *
+	 * @param platform The tag of the platform.
+	 * @return A snapshot of the top 3 players on the platform for each champion in descending order.
+	 * @throws IllegalArgumentException thrown if the platform does not exist.
+	 */
+	public HighscoresSummary getHighscoresSummary(String platform) {
+		return getRegionalLeaderboards(platform).getSummary(3);
 	}
 
 	/**
 	 * Retrieves a list of the top 50 players for the specified champion. This method does not attempt to verify that a
 	 * champion with the specified ID actually exists, and will return an empty list if an invalid ID is specified.
 	 *
-	 * @return A list of the top 50 players for the specified champion.
+	 * @return A list of the top 50 players for the specified champion, and the version of the champion's leaderboard.
 	 */
-	public List<MasteryScoreEntity> getChampionHighscores(short championId) {
-		try (Session session = HighscoresService.getHibernateSessionFactory().openSession()) {
-			Query<MasteryScoreEntity> query = session.createQuery("FROM MasteryScoreEntity WHERE championId=:championId AND summoner.status != 1 ORDER BY masteryPoints DESC", MasteryScoreEntity.class)
+	public Versioned<List<LeaderboardEntry>> getChampionHighscores(short championId) {
+		return getChampionHighscores(leaderboards, championId);
+	}
+
+	/**
+	 * Retrieves a list of the top 50 players on a platform for the specified champion. This method does not attempt to
+	 * verify that a champion with the specified ID actually exists, and will return an empty list if an invalid ID is
+	 * specified.
+	 *
+	 * @param platform The tag of the platform.
+	 * @return A list of the top 50 players on the platform for the specified champion, and the version of the
+	 * 		champion's leaderboard.
+	 * @throws IllegalArgumentException thrown if the platform does not exist.
+	 */
+	public Versioned<List<LeaderboardEntry>> getChampionHighscores(String platform, short championId) {
+		return getChampionHighscores(getRegionalLeaderboards(platform), championId);
+	}
+
+	private static Versioned<List<LeaderboardEntry>> getChampionHighscores(LeaderboardIndex index, short championId) {
+		ChampionLeaderboard leaderboard = index.getLeaderboard(championId);
+		if (leaderboard == null) {
+			return new Versioned<>(0, Collections.emptyList());
+		}
+		// Read the version before the entries, so the entries can only be newer than the version (not older).
+		long version = leaderboard.getVersion();
+		return new Versioned<>(version, leaderboard.getTop(HighscoresService.CHAMPION_HIGHSCORES_LENGTH));
+	}
+
+	/**
+	 * Reads a page of the highest scores for a champion from the database, starting after a cursor. Pages are read by
+	 * seeking to the cursor in {@code IX_mastery_points} (whose entries end with the {@code player_id} primary key
+	 * column, so ties are ordered by player ID), so deep pages cost the same as the first page. Only the highest
+	 * {@link Config#LEADERBOARD_MAX_DEPTH} scores can be browsed.
+	 *
+	 * @param championId The ID of the champion (or -1 for total points, or -2 for total level).
+	 * @param after The cursor returned with the previous page, or {@code null} for the first page.
+	 * @param pageSize The maximum number of entries to return.
+	 * @return The page.
+	 */
+	public LeaderboardPage getChampionHighscoresPage(short championId, LeaderboardCursor after, int pageSize) {
+		int position = after == null ? 0 : after.getPosition();
+		int limit = Math.min(pageSize, Config.LEADERBOARD_MAX_DEPTH - position);
+		if (limit <= 0) {
+			return LeaderboardPage.of(championId, after, Collections.emptyList(), false, Config.LEADERBOARD_MAX_DEPTH);
+		}
+
+		// Points are sorted in descending order but player IDs in ascending order, which a row comparison can't express,
+		// so the keyset condition is written as two ranges of the index instead.
+		String keyset = after == null ? "" : "AND (mastery_scores.mastery_points < :points " +
+				"OR (mastery_scores.mastery_points = :points AND mastery_scores.player_id > :playerId)) ";
+		try (StatelessSession session = HighscoresService.getHibernateSessionFactory().openStatelessSession()) {
+			Histogram.Timer timer = DatabaseMetrics.queryDuration.labels("leaderboard_page").startTimer();
+			NativeQuery<?> query = session.createNativeQuery(
+					"SELECT mastery_scores.player_id, summoners.platform, summoners.riot_id, summoners.summoner_status, mastery_scores.mastery_points " +
+							"FROM mastery_scores " +
+							"INNER JOIN summoners ON summoners.player_id = mastery_scores.player_id " +
+							"WHERE mastery_scores.champion_id = :championId AND summoners.summoner_status != 1 " + keyset +
+							"ORDER BY mastery_scores.mastery_points DESC, mastery_scores.player_id " +
+							"LIMIT :limit")
 					.setParameter("championId", championId)
-					.setMaxResults(HighscoresService.CHAMPION_HIGHSCORES_LENGTH);
+					// One extra row is read to find out whether there is another page.
+					.setParameter("limit", limit + 1);
+			if (after != null) {
+				query.setParameter("points", after.getPoints());
+				query.setParameter("playerId", after.getPlayerId());
+			}
+			@SuppressWarnings("unchecked")
+			List<Object[]> rows = (List<Object[]>) query.getResultList();
+			timer.observeDuration();
 
-			return query.getResultList();
+			List<LeaderboardEntry> entries = new ArrayList<>(Math.min(rows.size(), limit));
+			for (Object[] row : rows.subList(0, Math.min(rows.size(), limit))) {
+				SummonerEntity.Status status = SummonerEntity.Status.values()[((Number) row[3]).intValue()];
+				entries.add(new LeaderboardEntry(((Number) row[0]).longValue(), (String) row[1],
+						SummonerEntity.getDisplayName((String) row[2], status), ((Number) row[4]).intValue()));
+			}
+			return LeaderboardPage.of(championId, after, entries, rows.size() > limit, Config.LEADERBOARD_MAX_DEPTH);
 		}
 	}
 
-	public List<RankThresholdEntity> getRankThresholds() {
-		try (Session session = HighscoresService.getHibernateSessionFactory().openSession()) {
+	/**
+	 * Estimates the rank of a score among every saved score for a champion.
+	 *
+	 * @param championId The ID of the champion (or -1 for total points, or -2 for total level).
+	 * @param points The number of points (or levels, for total level).
+	 * @return The estimated rank, or {@code null} if estimates are not available yet or no scores have been saved for
+	 * 		the champion.
+	 */
+	public RankEstimate estimateRank(short championId, int points) {
+		return rankEstimator.estimate(championId, points);
+	}
+
+	/**
+	 * Finds the exact global and regional rank of every score that has been saved for a player.
+	 *
+	 * @param platform The tag of the player's platform.
+	 * @param puuid The player's encrypted PUUID.
+	 * @return The player's ranks in ascending order of champion ID, or {@code null} if the player has not been saved.
+	 * @throws IllegalStateException thrown if the rank index has not been built yet.
+	 */
+	public List<PlayerRank> getPlayerRanks(String platform, String puuid) {
+		if (!playerRanks.isReady()) {
+			throw new IllegalStateException("Player ranks are not available yet");
+		}
+
+		try (StatelessSession session = HighscoresService.getHibernateSessionFactory().openStatelessSession()) {
+			Histogram.Timer timer = DatabaseMetrics.queryDuration.labels("player_ranks").startTimer();
+			@SuppressWarnings("unchecked")
+			List<Object[]> rows = session.createNativeQuery(
+					"SELECT mastery_scores.champion_id, mastery_scores.mastery_points FROM summoners " +
+							"LEFT JOIN mastery_scores ON mastery_scores.player_id = summoners.player_id " +
+							"WHERE summoners.platform = :platform AND summoners.encrypted_puuid = :puuid " +
+							"ORDER BY mastery_scores.champion_id")
+					.setParameter("platform", platform)
+					.setParameter("puuid", puuid)
+					.getResultList();
+			timer.observeDuration();
+			if (rows.isEmpty()) {
+				return null;
+			}
+
+			List<PlayerRank> ranks = new ArrayList<>(rows.size());
+			for (Object[] row : rows) {
+				// The player exists but doesn't have any saved scores.
+				if (row[0] == null) {
+					continue;
+				}
+				short championId = ((Number) row[0]).shortValue();
+				int points = ((Number) row[1]).intValue();
+				ranks.add(new PlayerRank(championId, points, playerRanks.getGlobalRank(championId, points),
+						playerRanks.getRegionalRank(platform, championId, points)));
+			}
+			return ranks;
+		}
+	}
+
+	/**
+	 * Retrieves the mastery points needed to reach certain ranks for each champion. Thresholds are recalculated by the
+	 * database every hour, so they are cached for {@link Config#RANK_THRESHOLDS_CACHE_DURATION} seconds. Once they
+	 * expire, one caller reloads them while the others keep getting the expired thresholds, so no caller waits for
+	 * another's query.
+	 *
+	 * @return The rank thresholds for every champion, and the version of the cached thresholds.
+	 */
+	public Versioned<List<RankThresholdEntity>> getRankThresholds() {
+		Versioned<List<RankThresholdEntity>> cached = rankThresholds;
+		if (cached != null && System.currentTimeMillis() - rankThresholdsLastUpdated <= Config.RANK_THRESHOLDS_CACHE_DURATION * 1000) {
+			return cached;
+		}
+		// There's nothing to return before the first load, so concurrent first calls each load the thresholds.
+		if (cached != null && !reloadingRankThresholds.compareAndSet(false, true)) {
+			return cached;
+		}
+
+		// The thresholds are never modified, so they are read without a persistence context to avoid snapshotting them.
+		try (StatelessSession session = HighscoresService.getHibernateSessionFactory().openStatelessSession()) {
+			Histogram.Timer timer = DatabaseMetrics.queryDuration.labels("rank_thresholds").startTimer();
 			Query<RankThresholdEntity> query = session.createQuery("FROM RankThresholdEntity", RankThresholdEntity.class);
 			List<RankThresholdEntity> results = query.getResultList();
+			timer.observeDuration();
 			logger.info(String.format("Fetched %d rows from rank_thresholds", results.size()));
-			return results;
+			Versioned<List<RankThresholdEntity>> loaded = new Versioned<>(rankThresholdsVersion.incrementAndGet(), Collections.unmodifiableList(results));
+			rankThresholdsLastUpdated = System.currentTimeMillis();
+			rankThresholds = loaded;
+			return loaded;
+		} finally {
+			if (cached != null) {
+				reloadingRankThresholds.set(false);
+			}
+		}
+	}
+
+	private LeaderboardIndex getRegionalLeaderboards(String platform) {
+		LeaderboardIndex index = regionalLeaderboards.get(platform);
+		if (index == null) {
+			throw new IllegalArgumentException(String.format("Unknown platform '%s'", platform));
+		}
+		return index;
+	}
+
+	private static Map<String, LeaderboardIndex> createRegionalLeaderboards() {
+		Map<String, LeaderboardIndex> indexes = new HashMap<>();
+		for (Platform platform : Platform.values()) {
+			indexes.put(platform.getTag(), new LeaderboardIndex(HighscoresService.LEADERBOARD_CAPACITY));
+		}
+		return Collections.unmodifiableMap(indexes);
+	}
+
+	/**
+	 * Reloads the global in-memory leaderboards with the highest scores for every champion from the database. This is
+	 * done with a single query, which uses {@code IX_mastery_points} to read only the top rows for each champion. Rows
+	 * are read as flat projections through a stateless session, so no entities are hydrated.
+	 */
+	private void refreshLeaderboards() {
+		Histogram.Timer timer = leaderboardRefreshDuration.startTimer();
+		leaderboards.beginReload();
+		try (StatelessSession session = HighscoresService.getHibernateSessionFactory().openStatelessSession()) {
+			Histogram.Timer queryTimer = DatabaseMetrics.queryDuration.labels("leaderboards").startTimer();
+			@SuppressWarnings("unchecked")
+			List<Object[]> rows = session.createNativeQuery(
+					"SELECT champions.champion_id, top_scores.player_id, top_scores.platform, top_scores.riot_id, top_scores.summoner_status, top_scores.mastery_points " +
+							"FROM (SELECT DISTINCT champion_id FROM mastery_scores) AS champions, " +
+							"LATERAL (SELECT mastery_scores.player_id, summoners.platform, summoners.riot_id, summoners.summoner_status, mastery_scores.mastery_points " +
+							"FROM mastery_scores INNER JOIN summoners ON summoners.player_id = mastery_scores.player_id " +
+							"WHERE mastery_scores.champion_id = champions.champion_id AND summoners.summoner_status != 1 " +
+							"ORDER BY mastery_scores.mastery_points DESC, mastery_scores.player_id " +
+							"LIMIT :limit) AS top_scores")
+					.setParameter("limit", HighscoresService.LEADERBOARD_CAPACITY)
+					.getResultList();
+			queryTimer.observeDuration();
+
+			Map<Short, List<LeaderboardEntry>> entries = new HashMap<>();
+			for (Object[] row : rows) {
+				SummonerEntity.Status status = SummonerEntity.Status.values()[((Number) row[4]).intValue()];
+				LeaderboardEntry entry = new LeaderboardEntry(((Number) row[1]).longValue(), (String) row[2],
+						SummonerEntity.getDisplayName((String) row[3], status), ((Number) row[5]).intValue());
+				entries.computeIfAbsent(((Number) row[0]).shortValue(), championId -> new ArrayList<>()).add(entry);
+			}
+			leaderboards.finishReload(entries);
+			leaderboardLastRefresh.setToCurrentTime();
+
+			logger.info(String.format("Refreshed leaderboards for %d champions (%d rows) in %.0fms", entries.size(), rows.size(), timer.observeDuration() * 1000));
+		} catch (RuntimeException ex) {
+			// Keep serving the existing leaderboards until the next refresh.
+			leaderboards.cancelReload();
+			throw ex;
 		}
 	}
 
 	/**
-	 * Retrieves the {@link MasteryScoreEntity} for the specified summoner and champion from {@code scores} if it already
-	 * contains it, or creates a new one if it does not.
+	 * Reloads a platform's in-memory leaderboards from the database, in the same way as {@link #refreshLeaderboards()}
+	 * but using {@code IX_regional_mastery_points} to read only the platform's rows.
 	 *
-	 * @param scores MasteryScoreEntities for this summoner that have already been persisted to the database, mapped by
-	 * 		champion ID.
-	 * @param summonerEntity The SummonerEntity who the score belongs to.
-	 * @param championId The ID of the champion this score if for.
-	 * @param points The points or level the summoner has on this champion.
+	 * @param platform The tag of the platform.
 	 */
-	private static MasteryScoreEntity getMasteryScoreEntity(Map<Short, MasteryScoreEntity> scores, SummonerEntity summonerEntity, short championId, int points) {
-		MasteryScoreEntity scoreEntity = scores.get(championId);
-		if (scoreEntity == null) {
-			// There's no need to use an EntityInstantiator since the SummonerEntity row will be locked, ensuring that only 1 thread can access this summoner's scores.
-			scoreEntity = new MasteryScoreEntity();
-			scoreEntity.setPlatform(summonerEntity.getPlatform());
-			scoreEntity.setSummoner(summonerEntity);
-			scoreEntity.setChampionId(championId);
+	private void refreshRegionalLeaderboards(String platform) {
+		long startTime = System.currentTimeMillis();
+		LeaderboardIndex index = regionalLeaderboards.get(platform);
+		index.beginReload();
+		try (StatelessSession session = HighscoresService.getHibernateSessionFactory().openStatelessSession()) {
+			Histogram.Timer queryTimer = DatabaseMetrics.queryDuration.labels("regional_leaderboards").startTimer();
+			@SuppressWarnings("unchecked")
+			List<Object[]> rows = session.createNativeQuery(
+					"SELECT champions.champion_id, top_scores.player_id, top_scores.riot_id, top_scores.summoner_status, top_scores.mastery_points " +
+							"FROM (SELECT DISTINCT champion_id FROM mastery_scores WHERE platform = :platform) AS champions, " +
+							"LATERAL (SELECT mastery_scores.player_id, summoners.riot_id, summoners.summoner_status, mastery_scores.mastery_points " +
+							"FROM mastery_scores INNER JOIN summoners ON summoners.player_id = mastery_scores.player_id " +
+							"WHERE mastery_scores.platform = :platform AND mastery_scores.champion_id = champions.champion_id " +
+							"AND summoners.summoner_status != 1 " +
+							"ORDER BY mastery_scores.mastery_points DESC, mastery_scores.player_id " +
+							"LIMIT :limit) AS top_scores")
+					.setParameter("platform", platform)
+					.setParameter("limit", HighscoresService.LEADERBOARD_CAPACITY)
+					.getResultList();
+			queryTimer.observeDuration();
+
+			Map<Short, List<LeaderboardEntry>> entries = new HashMap<>();
+			for (Object[] row : rows) {
+				SummonerEntity.Status status = SummonerEntity.Status.values()[((Number) row[3]).intValue()];
+				LeaderboardEntry entry = new LeaderboardEntry(((Number) row[1]).longValue(), platform,
+						SummonerEntity.getDisplayName((String) row[2], status), ((Number) row[4]).intValue());
+				entries.computeIfAbsent(((Number) row[0]).shortValue(), championId -> new ArrayList<>()).add(entry);
+			}
+			index.finishReload(entries);
+
+			logger.info(String.format("Refreshed %s leaderboards for %d champions (%d rows) in %dms", platform, entries.size(), rows.size(),
+					System.currentTimeMillis() - startTime));
+		} catch (RuntimeException ex) {
+			index.cancelReload();
+			throw ex;
 		}
+	}
 
-		scoreEntity.setMasteryPoints(points);
-		return scoreEntity;
+	/**
+	 * Builds the {@link RankEstimator} by streaming every score from the database.
+	 */
+	private void buildRankEstimator() {
+		long startTime = System.currentTimeMillis();
+		RankEstimator.Builder builder = rankEstimator.beginBuild();
+		long[] rows = new long[1];
+		try (Session session = HighscoresService.getHibernateSessionFactory().openSession()) {
+			Histogram.Timer timer = DatabaseMetrics.queryDuration.labels("rank_estimator").startTimer();
+			session.doWork(connection -> streamRows(connection,
+					"SELECT mastery_scores.champion_id, mastery_scores.mastery_points FROM mastery_scores " +
+							"INNER JOIN summoners ON summoners.player_id = mastery_scores.player_id WHERE summoners.summoner_status != 1",
+					results -> {
+						builder.add(results.getShort(1), results.getInt(2));
+						rows[0]++;
+					}));
+			timer.observeDuration();
+			builder.finish();
+			logger.info(String.format("Built rank estimator from %d scores in %dms", rows[0], System.currentTimeMillis() - startTime));
+		} catch (RuntimeException ex) {
+			builder.cancel();
+			throw ex;
+		}
 	}
 
 	/**
-	 * Saves scoreEntity to the database if the summoner has enough points to be in the highscores.
+	 * Builds the {@link PlayerRankIndex}. Global and regional scores are streamed in descending order using
+	 * {@code IX_mastery_points} and {@code IX_regional_mastery_points} (so the database doesn't need to sort them), and
+	 * then scores belonging to transferred players are removed.
+	 */
+	private void buildPlayerRankIndex() {
+		long startTime = System.currentTimeMillis();
+		PlayerRankIndex.Builder builder = playerRanks.beginBuild();
+		try (Session session = HighscoresService.getHibernateSessionFactory().openSession()) {
+			Histogram.Timer timer = DatabaseMetrics.queryDuration.labels("player_rank_index").startTimer();
+			session.doWork(connection -> {
+				streamRows(connection, "SELECT champion_id, mastery_points FROM mastery_scores ORDER BY champion_id, mastery_points DESC",
+						results -> builder.addGlobal(results.getShort(1), results.getInt(2)));
+				streamRows(connection, "SELECT platform, champion_id, mastery_points FROM mastery_scores ORDER BY platform, champion_id, mastery_points DESC",
+						results -> builder.addRegional(results.getString(1), results.getShort(2), results.getInt(3)));
+				streamRows(connection, "SELECT mastery_scores.platform, mastery_scores.champion_id, mastery_scores.mastery_points FROM mastery_scores " +
+								"INNER JOIN summoners ON summoners.player_id = mastery_scores.player_id WHERE summoners.summoner_status = 1",
+						results -> builder.exclude(results.getString(1), results.getShort(2), results.getInt(3)));
+			});
+			timer.observeDuration();
+			builder.finish();
+			logger.info(String.format("Built player rank index in %dms", System.currentTimeMillis() - startTime));
+		} catch (RuntimeException ex) {
+			builder.cancel();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Runs a query without loading every row into memory, and passes each row to {@code consumer}.
+	 */
+	private static void streamRows(Connection connection, String sql, RowConsumer consumer) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+			// Makes MySQL Connector/J stream rows instead of loading them all into memory.
+			statement.setFetchSize(Integer.MIN_VALUE);
+			try (ResultSet results = statement.executeQuery()) {
+				while (results.next()) {
+					consumer.accept(results);
+				}
+			}
+		}
+	}
+
+	@FunctionalInterface
+	private interface RowConsumer {
+		void accept(ResultSet row) throws SQLException;
+	}
+
+	/**
+	 * Updates in-memory data after a summoner's scores have been committed to the database.
+	 */
+	private void onScoresSaved(SavedScores saved) {
+		leaderboards.update(saved);
+		LeaderboardIndex regional = regionalLeaderboards.get(saved.getScores().getPlatform());
+		if (regional != null) {
+			regional.update(saved);
+		}
+		rankEstimator.update(saved);
+		playerRanks.update(saved);
+	}
+
+	/**
+	 * Adds a score to {@code scores} if the summoner has enough points to be in the highscores.
 	 *
-	 * @param scoreEntity The MasteryScoreEntity to consider saving.
-	 * @param session The Hibernate session that should be used to save the entity.
+	 * @param scores The map to add the score to.
+	 * @param championId The ID of the champion the score is for (or -1 for total points, or -2 for total level). IDs are
+	 * 		stored as 16-bit values.
+	 * @param points The points or level the summoner has on this champion.
 	 */
-	private static void considerSaveOrUpdate(MasteryScoreEntity scoreEntity, Session session) {
-		if (scoreEntity.getChampionId() == -1) {
+	private static void considerScore(Map<Short, Integer> scores, int championId, int points) {
+		if (championId == -1) {
 			// Only save total mastery points if it's at least 2m.
-			if (scoreEntity.getMasteryPoints() < 2000000) {
+			if (points < 2000000) {
 				return;
 			}
-		} else if (scoreEntity.getChampionId() == -2) {
+		} else if (championId == -2) {
 			// Only save total mastery level if it's at least 500.
-			if (scoreEntity.getMasteryPoints() < 500) {
+			if (points < 500) {
 				return;
 			}
 		} else {
 			// Only save champions with at least 100k mastery points.
-			if (scoreEntity.getMasteryPoints() < 100000) {
+			if (points < 100000) {
 				return;
 			}
 		}
 
-		session.saveOrUpdate(scoreEntity);
+		scores.put((short) championId, points);
 	}
 }
@@ -0,0 +1,239 @@
+package gg.championmastery.highscoresService.api;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.google.common.collect.ImmutableMap;
+import com.merakianalytics.orianna.types.common.OriannaException;
+import com.merakianalytics.orianna.types.common.Platform;
+import com.merakianalytics.orianna.types.dto.account.Account;
+import com.merakianalytics.orianna.types.dto.summoner.Summoner;
+import gg.championmastery.highscoresService.HighscoresService;
+import gg.championmastery.highscoresService.persistence.SummonerEntity;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Histogram;
+import org.hibernate.Session;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Caches the mappings from Riot ID to PUUID, and from PUUID to summoner, so that repeat lookups for a player only need
+ * to request their masteries from the Riot API. Nonexistent accounts and summoners are cached too, for a shorter time.
+ * <p>
+ * Caches are bounded, and evict entries based on how frequently they are used (see {@link Caffeine}). If a Riot ID is
+ * not cached, the {@code summoners} table is checked before the Riot API, since it contains the Riot ID of every
+ * player who has been looked up before.
+ * <p>
+ * A cached summoner's {@code revisionDate} can be up to {@code summonerDuration} out of date. Score writers only ever
+ * move saved revision dates forward, so a stale revision date is never saved over a newer one, and it doesn't
+ * affect transfer detection (which compares saved revision dates).
+ */
+public class IdentityCache {
+
+	private static final Counter lookups = Counter.build()
+			.name("identity_cache_lookups_total")
+			.help("Lookups made through the identity cache, by where the result came from.")
+			.labelNames("cache", "source")
+			.register();
+	private static final Counter.Child accountCacheHits = lookups.labels("account", "cache");
+	private static final Counter.Child accountDatabaseHits = lookups.labels("account", "database");
+	private static final Counter.Child accountRiotLookups = lookups.labels("account", "riot");
+	private static final Counter.Child summonerCacheHits = lookups.labels("summoner", "cache");
+	private static final Counter.Child summonerRiotLookups = lookups.labels("summoner", "riot");
+
+	private final RiotRequestScheduler riotRequests;
+	private final Duration accountDuration;
+	private final Cache<String, Optional<AccountIdentity>> accounts;
+	private final Cache<SummonerEntity.Key, Optional<Summoner>> summoners;
+
+	/**
+	 * @param riotRequests The scheduler that requests to the Riot Games API are sent through. Every lookup made through
+	 * 		the cache is for a user, so requests are sent with {@link RiotRequestScheduler.Priority#INTERACTIVE} priority.
+	 * @param maximumSize The maximum number of entries in each cache.
+	 * @param accountDuration How long a Riot ID is trusted after it was retrieved from the Riot API.
+	 * @param summonerDuration How long a summoner is cached for.
+	 * @param negativeDuration How long nonexistent accounts and summoners are cached for.
+	 */
+	public IdentityCache(RiotRequestScheduler riotRequests, long maximumSize, Duration accountDuration, Duration summonerDuration, Duration negativeDuration) {
+		this.riotRequests = riotRequests;
+		this.accountDuration = accountDuration;
+		accounts = Caffeine.newBuilder()
+				.maximumSize(maximumSize)
+				.expireAfter(new OptionalExpiry<String, AccountIdentity>(
+						// Accounts loaded from the database were retrieved from the Riot API some time ago.
+						account -> Duration.between(Instant.now(), account.getLookupTime().plus(accountDuration)), negativeDuration))
+				.build();
+		summoners = Caffeine.newBuilder()
+				.maximumSize(maximumSize)
+				.expireAfter(new OptionalExpiry<SummonerEntity.Key, Summoner>(summoner -> summonerDuration, negativeDuration))
+				.build();
+	}
+
+	/**
+	 * Looks up the account with the specified Riot ID.
+	 *
+	 * @param platform The platform that the player is being looked up on (used to route requests to the Riot API).
+	 * @param gameName The game name portion of the Riot ID.
+	 * @param tagLine The tag line portion of the Riot ID.
+	 * @return The account, or {@code null} if the Riot ID does not belong to an account.
+	 * @throws OriannaException thrown if the Riot Games API returns an error.
+	 */
+	public AccountIdentity getAccount(Platform platform, String gameName, String tagLine) throws OriannaException {
+		String key = getRiotIdKey(platform, gameName, tagLine);
+		Optional<AccountIdentity> cached = accounts.getIfPresent(key);
+		if (cached != null) {
+			accountCacheHits.inc();
+			return cached.orElse(null);
+		}
+
+		AccountIdentity account = findSavedAccount(platform, gameName, tagLine);
+		if (account != null) {
+			accountDatabaseHits.inc();
+		} else {
+			accountRiotLookups.inc();
+			Account riotAccount = riotRequests.get(Account.class, platform, RiotRequestScheduler.Priority.INTERACTIVE, ImmutableMap.of(
+					"platform", platform,
+					"gameName", gameName,
+					"tagLine", tagLine
+			));
+			if (riotAccount != null) {
+				account = new AccountIdentity(riotAccount.getPuuid(), riotAccount.getGameName() + " #" + riotAccount.getTagLine(), Instant.now());
+			}
+		}
+		accounts.put(key, Optional.ofNullable(account));
+		return account;
+	}
+
+	/**
+	 * Looks up the summoner with the specified PUUID.
+	 *
+	 * @param platform The platform of the summoner.
+	 * @param puuid The summoner's encrypted PUUID.
+	 * @return The summoner, or {@code null} if the player does not have a summoner on the platform.
+	 * @throws OriannaException thrown if the Riot Games API returns an error.
+	 */
+	public Summoner getSummoner(Platform platform, String puuid) throws OriannaException {
+		SummonerEntity.Key key = new SummonerEntity.Key(platform.getTag(), puuid);
+		Optional<Summoner> cached = summoners.getIfPresent(key);
+		if (cached != null) {
+			summonerCacheHits.inc();
+			return cached.orElse(null);
+		}
+
+		summonerRiotLookups.inc();
+		Summoner summoner = riotRequests.get(Summoner.class, platform, RiotRequestScheduler.Priority.INTERACTIVE, ImmutableMap.of(
+				"platform", platform,
+				"puuid", puuid
+		));
+		summoners.put(key, Optional.ofNullable(summoner));
+		return summoner;
+	}
+
+	/**
+	 * Normalizes a Riot ID so that it can be used as a key. Riot IDs are case-insensitive.
+	 *
+	 * @return A key that is the same for every spelling of the Riot ID on the platform.
+	 */
+	static String getRiotIdKey(Platform platform, String gameName, String tagLine) {
+		return String.format("%s/%s#%s", platform.getTag(), gameName.trim().toLowerCase(Locale.ROOT), tagLine.trim().toLowerCase(Locale.ROOT));
+	}
+
+	/**
+	 * Looks for a summoner in the database whose Riot ID was verified recently enough to be trusted. Transferred and
+	 * forgotten summoners are ignored, since their rows may be out of date.
+	 *
+	 * @return The account, or {@code null} if a recent enough summoner was not found.
+	 */
+	private AccountIdentity findSavedAccount(Platform platform, String gameName, String tagLine) {
+		try (Session session = HighscoresService.getHibernateSessionFactory().openSession()) {
+			Histogram.Timer timer = DatabaseMetrics.queryDuration.labels("saved_account").startTimer();
+			// riot_id uses a case-insensitive collation.
+			@SuppressWarnings("unchecked")
+			List<Object[]> rows = session.createNativeQuery(
+					"SELECT encrypted_puuid, riot_id, name_last_updated FROM summoners " +
+							"WHERE platform = :platform AND riot_id = :riotId AND name_last_updated > :cutoff AND summoner_status NOT IN (:transferred, :forgotten) " +
+							"ORDER BY name_last_updated DESC LIMIT 1")
+					.setParameter("platform", platform.getTag())
+					.setParameter("riotId", gameName.trim() + " #" + tagLine.trim())
+					.setParameter("cutoff", Timestamp.from(Instant.now().minus(accountDuration)))
+					.setParameter("transferred", SummonerEntity.Status.TRANSFERRED.ordinal())
+					.setParameter("forgotten", SummonerEntity.Status.FORGOTTEN.ordinal())
+					.getResultList();
+			timer.observeDuration();
+			if (rows.isEmpty()) {
+				return null;
+			}
+
+			Object[] row = rows.get(0);
+			return new AccountIdentity((String) row[0], (String) row[1], ((Timestamp) row[2]).toInstant());
+		}
+	}
+
+	/**
+	 * The parts of a Riot account that are needed to look up a player.
+	 */
+	public static final class AccountIdentity {
+		private final String puuid;
+		private final String riotId;
+		private final Instant lookupTime;
+
+		private AccountIdentity(String puuid, String riotId, Instant lookupTime) {
+			this.puuid = puuid;
+			this.riotId = riotId;
+			this.lookupTime = lookupTime;
+		}
+
+		public String getPuuid() {
+			return puuid;
+		}
+
+		/**
+		 * @return The Riot ID as it is formatted by Riot (e.g. "Name #TAG").
+		 */
+		public String getRiotId() {
+			return riotId;
+		}
+
+		/**
+		 * @return When the Riot ID was retrieved from the Riot API.
+		 */
+		public Instant getLookupTime() {
+			return lookupTime;
+		}
+	}
+
+	/**
+	 * Expires present values after a duration that depends on the value, and empty values (for things that don't exist)
+	 * after a fixed duration.
+	 */
+	private static class OptionalExpiry<K, V> implements Expiry<K, Optional<V>> {
+		private final Function<V, Duration> present;
+		private final long emptyNanos;
+
+		private OptionalExpiry(Function<V, Duration> present, Duration empty) {
+			this.present = present;
+			this.emptyNanos = empty.toNanos();
+		}
+
+		@Override
+		public long expireAfterCreate(K key, Optional<V> value, long currentTime) {
+			return value.map(v -> Math.max(0, present.apply(v).toNanos())).orElse(emptyNanos);
+		}
+
+		@Override
+		public long expireAfterUpdate(K key, Optional<V> value, long currentTime, long currentDuration) {
+			return expireAfterCreate(key, value, currentTime);
+		}
+
+		@Override
+		public long expireAfterRead(K key, Optional<V> value, long currentTime, long currentDuration) {
+			return currentDuration;
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package gg.championmastery.highscoresService.api;
+
+import com.merakianalytics.orianna.types.dto.championmastery.ChampionMasteries;
+import com.merakianalytics.orianna.types.dto.summoner.Summoner;
+
+/**
+ * The result of looking up a player by their Riot ID. Results may be shared between threads, so they must not be
+ * modified.
+ */
+public final class PlayerLookup {
+
+	private static final PlayerLookup ACCOUNT_NOT_FOUND = new PlayerLookup(null, null, null);
+
+	private final IdentityCache.AccountIdentity account;
+	private final Summoner summoner;
+	private final ChampionMasteries masteries;
+
+	private PlayerLookup(IdentityCache.AccountIdentity account, Summoner summoner, ChampionMasteries masteries) {
+		this.account = account;
+		this.summoner = summoner;
+		this.masteries = masteries;
+	}
+
+	/**
+	 * Creates a result for a Riot ID that does not belong to an account.
+	 */
+	static PlayerLookup accountNotFound() {
+		return ACCOUNT_NOT_FOUND;
+	}
+
+	/**
+	 * Creates a result for an account that does not have a summoner on the requested platform.
+	 */
+	static PlayerLookup summonerNotFound(IdentityCache.AccountIdentity account) {
+		return new PlayerLookup(account, null, null);
+	}
+
+	/**
+	 * Creates a result for a player who was found.
+	 */
+	static PlayerLookup found(IdentityCache.AccountIdentity account, Summoner summoner, ChampionMasteries masteries) {
+		return new PlayerLookup(account, summoner, masteries);
+	}
+
+	/**
+	 * @return The player's account, or {@code null} if the Riot ID does not belong to an account.
+	 */
+	public IdentityCache.AccountIdentity getAccount() {
+		return account;
+	}
+
+	/**
+	 * @return The player's summoner, or {@code null} if the account does not exist or does not have a summoner on the
+	 * 		requested platform.
+	 */
+	public Summoner getSummoner() {
+		return summoner;
+	}
+
+	/**
+	 * @return The player's mastery scores for every champion, or {@code null} if the player was not found.
+	 */
+	public ChampionMasteries getMasteries() {
+		return masteries;
+	}
+}
@@ -0,0 +1,38 @@
+package gg.championmastery.highscoresService.api;
+
+/**
+ * The result of refreshing a player by their PUUID.
+ */
+public final class PlayerRefresh {
+
+	private final Outcome outcome;
+	private final String riotId;
+
+	PlayerRefresh(Outcome outcome, String riotId) {
+		this.outcome = outcome;
+		this.riotId = riotId;
+	}
+
+	public Outcome getOutcome() {
+		return outcome;
+	}
+
+	/**
+	 * @return The player's Riot ID, or {@code null} if the player was not refreshed.
+	 */
+	public String getRiotId() {
+		return riotId;
+	}
+
+	/**
+	 * The ways that a refresh can finish.
+	 */
+	public enum Outcome {
+		/** The player's scores were retrieved and saved. */
+		REFRESHED,
+		/** The PUUID does not have a summoner on the platform. */
+		SUMMONER_NOT_FOUND,
+		/** The summoner exists, but their Riot account could not be found. */
+		ACCOUNT_NOT_FOUND
+	}
+}
@@ -0,0 +1,243 @@
+package gg.championmastery.highscoresService.api;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.merakianalytics.orianna.types.common.Platform;
+import gg.championmastery.highscoresService.HighscoresService;
+import gg.championmastery.highscoresService.persistence.SummonerEntity;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Refreshes summoners whose scores haven't been looked up recently, so that the highscores stay up to date without
+ * relying on players to look themselves up.
+ * <p>
+ * Each platform is refreshed independently. Stale summoners are read a page at a time in order of
+ * {@code masteries_last_updated} and {@code player_id} (using {@code IX_masteries_last_updated}), and each page is refreshed starting with the
+ * players whose scores are closest to the lowest score shown for a champion, since their refreshes are the most likely
+ * to change the highscores. Refreshes are limited to a share of the platform's rate limit, so that lookups made by
+ * users are never starved.
+ */
+public class RefreshScheduler {
+
+	private static final Logger logger = LoggerFactory.getLogger(RefreshScheduler.class);
+	/** The number of Riot API requests made by each refresh (summoner, account and champion masteries). */
+	private static final int REQUESTS_PER_REFRESH = 3;
+	/** How long to wait before checking for stale summoners again once none are left (or after an error). */
+	private static final Duration IDLE_DELAY = Duration.ofMinutes(1);
+
+	private static final Counter refreshes = Counter.build()
+			.name("refresh_scheduler_refreshes_total")
+			.help("Summoners refreshed by the background refresh scheduler, by platform and outcome.")
+			.labelNames("platform", "outcome")
+			.register();
+	private static final Gauge backlogAge = Gauge.build()
+			.name("refresh_scheduler_backlog_age_seconds")
+			.help("Seconds since the stalest summoner waiting to be refreshed was last looked up, by platform.")
+			.labelNames("platform")
+			.register();
+	private static final Gauge queued = Gauge.build()
+			.name("refresh_scheduler_queued_summoners")
+			.help("Summoners in the current page that are waiting to be refreshed, by platform.")
+			.labelNames("platform")
+			.register();
+
+	private final HighscoresApi api;
+	private final Duration staleAfter;
+	private final double refreshesPerSecond;
+	private final int pageSize;
+	private final int concurrency;
+	private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("refresh-", 0).factory());
+
+	/**
+	 * @param api The API used to refresh summoners.
+	 * @param staleAfter How long after their last lookup a summoner is refreshed.
+	 * @param requestsPerSecond The number of Riot API requests per second that may be used on each platform.
+	 * @param pageSize The number of stale summoners read from the database at a time for each platform.
+	 * @param concurrency The maximum number of refreshes that run at once on each platform.
+	 */
+	public RefreshScheduler(HighscoresApi api, Duration staleAfter, double requestsPerSecond, int pageSize, int concurrency) {
+		this.api = api;
+		this.staleAfter = staleAfter;
+		this.refreshesPerSecond = requestsPerSecond / REQUESTS_PER_REFRESH;
+		this.pageSize = pageSize;
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * Starts refreshing every platform in the background.
+	 */
+	public void start() {
+		logger.info(String.format("Refreshing summoners not looked up in %s, at up to %.2f refreshes per second per platform", staleAfter, refreshesPerSecond));
+		for (Platform platform : Platform.values()) {
+			executor.execute(() -> refreshPlatform(platform));
+		}
+	}
+
+	private void refreshPlatform(Platform platform) {
+		String tag = platform.getTag();
+		RateLimiter rateLimiter = RateLimiter.create(refreshesPerSecond);
+		Semaphore inFlight = new Semaphore(concurrency);
+		// Pages are read in order of lookup time, starting after the last summoner in the previous page. Refreshes are
+		// saved asynchronously, so re-reading from the start could return summoners that were just refreshed. Lookup
+		// times only have second precision (and summoners that were never looked up share the default), so ties are
+		// broken by player ID.
+		StaleSummoner cursor = null;
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				List<StaleSummoner> page = loadPage(tag, cursor);
+				if (page.isEmpty()) {
+					backlogAge.labels(tag).set(0);
+					cursor = null;
+					Thread.sleep(IDLE_DELAY.toMillis());
+					continue;
+				}
+				cursor = page.get(page.size() - 1);
+				backlogAge.labels(tag).set(Duration.between(page.get(0).lastUpdated, Instant.now()).getSeconds());
+
+				prioritize(page);
+				queued.labels(tag).set(page.size());
+				for (StaleSummoner summoner : page) {
+					rateLimiter.acquire();
+					inFlight.acquire();
+					queued.labels(tag).dec();
+					executor.execute(() -> {
+						try {
+							refresh(platform, summoner);
+						} finally {
+							inFlight.release();
+						}
+					});
+				}
+			} catch (InterruptedException ex) {
+				return;
+			} catch (Exception ex) {
+				logger.error(String.format("Error refreshing stale summoners on %s", tag), ex);
+				try {
+					Thread.sleep(IDLE_DELAY.toMillis());
+				} catch (InterruptedException ignored) {
+					return;
+				}
+			}
+		}
+	}
+
+	private void refresh(Platform platform, StaleSummoner summoner) {
+		String outcome;
+		try {
+			outcome = api.refreshPlayer(platform, summoner.puuid).getOutcome().name().toLowerCase(Locale.ROOT);
+		} catch (Exception ex) {
+			outcome = "error";
+			logger.warn(String.format("Error refreshing summoner '%s' (%s)", summoner.puuid, platform.getTag()), ex);
+		}
+		refreshes.labels(platform.getTag(), outcome).inc();
+	}
+
+	/**
+	 * Reads the next page of summoners that haven't been looked up since {@link #staleAfter} ago, in order of when they
+	 * were last looked up (and then player ID), along with their saved scores.
+	 *
+	 * @param after The last summoner in the previous page, or {@code null} to start from the stalest summoner.
+	 */
+	private List<StaleSummoner> loadPage(String platform, StaleSummoner after) {
+		List<StaleSummoner> page = new ArrayList<>();
+		Histogram.Timer timer = DatabaseMetrics.queryDuration.labels("stale_summoners").startTimer();
+		try (Session session = HighscoresService.getHibernateSessionFactory().openSession()) {
+			session.doWork(connection -> {
+				try (PreparedStatement statement = connection.prepareStatement(
+						"SELECT player_id, encrypted_puuid, masteries_last_updated FROM summoners " +
+								"WHERE platform = ? AND (masteries_last_updated > ? OR (masteries_last_updated = ? AND player_id > ?)) " +
+								"AND masteries_last_updated < ? AND summoner_status = ? " +
+								"ORDER BY masteries_last_updated, player_id LIMIT ?")) {
+					Timestamp afterLastUpdated = Timestamp.from(after == null ? Instant.EPOCH : after.lastUpdated);
+					statement.setString(1, platform);
+					statement.setTimestamp(2, afterLastUpdated);
+					statement.setTimestamp(3, afterLastUpdated);
+					statement.setLong(4, after == null ? 0 : after.playerId);
+					statement.setTimestamp(5, Timestamp.from(Instant.now().minus(staleAfter)));
+					statement.setInt(6, SummonerEntity.Status.NORMAL.ordinal());
+					statement.setInt(7, pageSize);
+					try (ResultSet results = statement.executeQuery()) {
+						while (results.next()) {
+							page.add(new StaleSummoner(results.getLong(1), results.getString(2), results.getTimestamp(3).toInstant()));
+						}
+					}
+				}
+				if (page.isEmpty()) {
+					return;
+				}
+
+				Map<Long, StaleSummoner> summoners = new HashMap<>();
+				for (StaleSummoner summoner : page) {
+					summoners.put(summoner.playerId, summoner);
+				}
+				try (PreparedStatement statement = connection.prepareStatement(
+						"SELECT player_id, champion_id, mastery_points FROM mastery_scores WHERE player_id IN (" +
+								String.join(", ", Collections.nCopies(page.size(), "?")) + ")")) {
+					int parameter = 1;
+					for (StaleSummoner summoner : page) {
+						statement.setLong(parameter++, summoner.playerId);
+					}
+					try (ResultSet results = statement.executeQuery()) {
+						while (results.next()) {
+							summoners.get(results.getLong(1)).scores.put(results.getShort(2), results.getInt(3));
+						}
+					}
+				}
+			});
+		}
+		timer.observeDuration();
+		return page;
+	}
+
+	/**
+	 * Sorts a page so that the summoners whose scores are closest (relative to the score) to the lowest score shown for
+	 * any champion come first. Summoners without any saved scores stay in order of when they were last looked up.
+	 */
+	private void prioritize(List<StaleSummoner> page) {
+		Map<Short, Integer> cutoffs = new HashMap<>();
+		for (StaleSummoner summoner : page) {
+			for (Map.Entry<Short, Integer> score : summoner.scores.entrySet()) {
+				int cutoff = cutoffs.computeIfAbsent(score.getKey(), api::getLeaderboardCutoff);
+				double distance = Math.abs(score.getValue() - cutoff) / (double) Math.max(cutoff, 1);
+				summoner.distance = Math.min(summoner.distance, distance);
+			}
+		}
+		// The sort is stable, so summoners at the same distance stay in order of when they were last looked up.
+		page.sort(Comparator.comparingDouble(summoner -> summoner.distance));
+	}
+
+	private static final class StaleSummoner {
+		private final long playerId;
+		private final String puuid;
+		private final Instant lastUpdated;
+		private final Map<Short, Integer> scores = new HashMap<>();
+		/** The smallest relative distance between one of the summoner's scores and the lowest score shown. */
+		private double distance = Double.POSITIVE_INFINITY;
+
+		private StaleSummoner(long playerId, String puuid, Instant lastUpdated) {
+			this.playerId = playerId;
+			this.puuid = puuid;
+			this.lastUpdated = lastUpdated;
+		}
+	}
+}
@@ -0,0 +1,193 @@
+package gg.championmastery.highscoresService.api;
+
+import com.merakianalytics.orianna.types.common.OriannaException;
+import com.merakianalytics.orianna.types.common.Platform;
+import gg.championmastery.highscoresService.HighscoresService;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Decides which requests to the Riot Games API are sent first, so that background work (such as refreshing stale
+ * summoners) doesn't slow down lookups made by users.
+ * <p>
+ * Each platform has a fixed number of slots for requests that are being sent through the Orianna pipeline. Once every
+ * slot is in use, requests wait in a queue for their priority, and each freed slot is given to the next waiting
+ * request according to the {@link Policy}. Because Orianna's rate limiter only delays requests that have already been
+ * given a slot, requests queue here (in priority order) rather than in the rate limiter (in arrival order).
+ */
+public class RiotRequestScheduler {
+
+	private static final Histogram queueWait = Histogram.build()
+			.name("riot_request_queue_wait_seconds")
+			.help("Time requests to the Riot Games API waited for a slot, by platform and priority.")
+			.labelNames("platform", "priority")
+			.buckets(0.001, 0.005, 0.01, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60)
+			.register();
+	private static final Histogram requestDuration = Histogram.build()
+			.name("riot_api_request_duration_seconds")
+			.help("Time taken by requests to the Riot Games API once they were given a slot (including Orianna's retries and rate limiting), by type, platform and outcome.")
+			.labelNames("type", "platform", "outcome")
+			.buckets(0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30)
+			.register();
+	private static final Gauge queueDepth = Gauge.build()
+			.name("riot_request_queue_depth")
+			.help("Requests to the Riot Games API waiting for a slot, by platform and priority.")
+			.labelNames("platform", "priority")
+			.register();
+
+	private final Map<Platform, PlatformQueue> queues = new EnumMap<>(Platform.class);
+	private final StandInRiotApi standIn;
+
+	/**
+	 * @param policy How slots are shared between priorities.
+	 * @param slots The number of requests that can be sent at once on each platform.
+	 * @param interactiveWeight For {@link Policy#WEIGHTED}, the number of slots given to interactive requests for every
+	 * 		slot given to a background request while both are waiting.
+	 * @param standInUrl The URL of a local stand-in for the Riot Games API to send requests to instead of the Orianna
+	 * 		pipeline (see {@link StandInRiotApi}), or {@code null} to use the Orianna pipeline.
+	 */
+	public RiotRequestScheduler(Policy policy, int slots, int interactiveWeight, String standInUrl) {
+		this.standIn = standInUrl == null ? null : new StandInRiotApi(standInUrl);
+		for (Platform platform : Platform.values()) {
+			queues.put(platform, new PlatformQueue(platform.getTag(), policy, slots, interactiveWeight));
+		}
+	}
+
+	/**
+	 * Retrieves an object from the Orianna pipeline (or the stand-in, if one was configured) once a slot is available.
+	 *
+	 * @param type The type of object to retrieve.
+	 * @param platform The platform that the request is for.
+	 * @param priority The priority of the request.
+	 * @param query The query to pass to the pipeline.
+	 * @return The object, or {@code null} if it does not exist.
+	 * @throws OriannaException thrown if the Riot Games API returns an error.
+	 */
+	public <T> T get(Class<T> type, Platform platform, Priority priority, Map<String, Object> query) throws OriannaException {
+		PlatformQueue queue = queues.get(platform);
+		queue.acquire(priority);
+		long start = System.nanoTime();
+		String outcome = "error";
+		try {
+			T result = standIn != null ? standIn.get(type, platform, query) : HighscoresService.getOriannaPipeline().get(type, query);
+			outcome = result == null ? "not_found" : "found";
+			return result;
+		} finally {
+			queue.release();
+			requestDuration.labels(type.getSimpleName(), platform.getTag(), outcome).observe((System.nanoTime() - start) / 1e9);
+		}
+	}
+
+	/**
+	 * How important a request is.
+	 */
+	public enum Priority {
+		/** Requests made while a user waits for a response. */
+		INTERACTIVE,
+		/** Requests made to keep saved data up to date, which can wait. */
+		BACKGROUND
+	}
+
+	/**
+	 * How slots are shared between priorities.
+	 */
+	public enum Policy {
+		/** Background requests are only given slots when no interactive requests are waiting. */
+		STRICT,
+		/**
+		 * Background requests are given a share of the slots while interactive requests are waiting, so that background
+		 * work is never stalled completely.
+		 */
+		WEIGHTED
+	}
+
+	/** The slots and waiting requests for a single platform. */
+	private static final class PlatformQueue {
+		private final Policy policy;
+		private final int interactiveWeight;
+		private final Histogram.Child[] waitTimes = new Histogram.Child[Priority.values().length];
+		private final Gauge.Child[] depths = new Gauge.Child[Priority.values().length];
+		/** Waiting requests, indexed by priority. Guarded by {@code this}. */
+		private final ArrayDeque<CountDownLatch>[] waiting;
+		/** Guarded by {@code this}. */
+		private int availableSlots;
+		/** Slots given to interactive requests in a row while background requests were waiting. Guarded by {@code this}. */
+		private int interactiveStreak;
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		private PlatformQueue(String platform, Policy policy, int slots, int interactiveWeight) {
+			this.policy = policy;
+			this.interactiveWeight = interactiveWeight;
+			this.availableSlots = slots;
+			waiting = new ArrayDeque[Priority.values().length];
+			for (Priority priority : Priority.values()) {
+				String label = priority.name().toLowerCase(Locale.ROOT);
+				waitTimes[priority.ordinal()] = queueWait.labels(platform, label);
+				depths[priority.ordinal()] = queueDepth.labels(platform, label);
+				waiting[priority.ordinal()] = new ArrayDeque<>();
+			}
+		}
+
+		private void acquire(Priority priority) {
+			long start = System.nanoTime();
+			CountDownLatch granted;
+			synchronized (this) {
+				if (availableSlots > 0) {
+					availableSlots--;
+					waitTimes[priority.ordinal()].observe(0);
+					return;
+				}
+				granted = new CountDownLatch(1);
+				waiting[priority.ordinal()].add(granted);
+				depths[priority.ordinal()].inc();
+			}
+
+			// A slot can't be handed back once it has been given to this request, so interrupts are deferred until then.
+			boolean interrupted = false;
+			while (true) {
+				try {
+					granted.await();
+					break;
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			waitTimes[priority.ordinal()].observe((System.nanoTime() - start) / 1e9);
+		}
+
+		private synchronized void release() {
+			ArrayDeque<CountDownLatch> interactive = waiting[Priority.INTERACTIVE.ordinal()];
+			ArrayDeque<CountDownLatch> background = waiting[Priority.BACKGROUND.ordinal()];
+			Priority next;
+			if (interactive.isEmpty() && background.isEmpty()) {
+				availableSlots++;
+				return;
+			} else if (background.isEmpty()) {
+				next = Priority.INTERACTIVE;
+			} else if (interactive.isEmpty()) {
+				next = Priority.BACKGROUND;
+			} else if (policy == Policy.WEIGHTED && interactiveStreak >= interactiveWeight) {
+				next = Priority.BACKGROUND;
+			} else {
+				next = Priority.INTERACTIVE;
+			}
+
+			if (next == Priority.INTERACTIVE && !background.isEmpty()) {
+				interactiveStreak++;
+			} else {
+				interactiveStreak = 0;
+			}
+			depths[next.ordinal()].dec();
+			waiting[next.ordinal()].poll().countDown();
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package gg.championmastery.highscoresService.api;
+
+import io.prometheus.client.Counter;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls with the same key. The first caller for a key runs the call on its own thread, and any
+ * callers that arrive before it finishes wait for it and receive the same result (or exception) instead of repeating
+ * the call. Results are not cached: once a call finishes, the next caller for the key runs it again.
+ *
+ * @param <K> The type of the keys. Keys must implement {@link Object#equals(Object)} and {@link Object#hashCode()}.
+ * @param <V> The type of the results.
+ */
+public class SingleFlight<K, V> {
+
+	private static final Counter requests = Counter.build()
+			.name("single_flight_requests_total")
+			.help("Calls made through single-flight groups. Hits waited for a call that was already in flight, misses ran the call themselves.")
+			.labelNames("group", "outcome")
+			.register();
+
+	private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+	private final Counter.Child hits;
+	private final Counter.Child misses;
+
+	/**
+	 * @param name The name of the group, used to label its metrics.
+	 */
+	public SingleFlight(String name) {
+		hits = requests.labels(name, "hit");
+		misses = requests.labels(name, "miss");
+	}
+
+	/**
+	 * Runs {@code call}, or waits for the result of a call that is already in flight for the same key.
+	 *
+	 * @param key The key identifying the call.
+	 * @param call The call to run if one is not already in flight.
+	 * @return The result of the call (which may be {@code null}).
+	 * @throws RuntimeException thrown if the call threw an exception. Every caller that shared the call receives the
+	 * 		same exception.
+	 */
+	public V execute(K key, Supplier<V> call) {
+		CompletableFuture<V> future = new CompletableFuture<>();
+		CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+		if (existing != null) {
+			hits.inc();
+			try {
+				return existing.join();
+			} catch (CompletionException ex) {
+				if (ex.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) ex.getCause();
+				}
+				throw ex;
+			}
+		}
+
+		misses.inc();
+		try {
+			V result = call.get();
+			future.complete(result);
+			return result;
+		} catch (Throwable ex) {
+			future.completeExceptionally(ex);
+			throw ex;
+		} finally {
+			inFlight.remove(key, future);
+		}
+	}
+}
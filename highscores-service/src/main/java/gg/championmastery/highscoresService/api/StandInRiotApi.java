@@ -0,0 +1,170 @@
+package gg.championmastery.highscoresService.api;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.merakianalytics.orianna.datapipeline.riotapi.exceptions.BadRequestException;
+import com.merakianalytics.orianna.datapipeline.riotapi.exceptions.ForbiddenException;
+import com.merakianalytics.orianna.datapipeline.riotapi.exceptions.InternalServerErrorException;
+import com.merakianalytics.orianna.datapipeline.riotapi.exceptions.RateLimitExceededException;
+import com.merakianalytics.orianna.datapipeline.riotapi.exceptions.ServiceUnavailableException;
+import com.merakianalytics.orianna.datapipeline.riotapi.exceptions.UnauthorizedException;
+import com.merakianalytics.orianna.datapipeline.riotapi.exceptions.UnsupportedMediaTypeException;
+import com.merakianalytics.orianna.types.common.OriannaException;
+import com.merakianalytics.orianna.types.common.Platform;
+import com.merakianalytics.orianna.types.dto.account.Account;
+import com.merakianalytics.orianna.types.dto.championmastery.ChampionMasteries;
+import com.merakianalytics.orianna.types.dto.summoner.Summoner;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Sends requests to a local stand-in for the Riot Games API instead of through the Orianna pipeline, so that the
+ * service can be load tested without using a real API key. Orianna's RiotAPI element builds the host of each request
+ * from its platform, so it can't be pointed at a different server.
+ * <p>
+ * The stand-in must serve the Riot Games API paths used by this service, prefixed with the platform tag (e.g.
+ * {@code /NA1/lol/summoner/v4/summoners/by-puuid/{puuid}}). Errors are handled the same way that {@code orianna.json}
+ * configures the RiotAPI element: 404s return {@code null}, 429s are retried after the {@code Retry-After} delay, and
+ * 500s, 503s and timeouts are retried with exponential backoff, for up to {@link #MAX_ATTEMPTS} attempts.
+ */
+final class StandInRiotApi {
+
+	private static final int MAX_ATTEMPTS = 4;
+	private static final Duration INITIAL_BACKOFF = Duration.ofSeconds(1);
+	private static final Duration TIMEOUT = Duration.ofSeconds(3);
+
+	private final String baseUrl;
+	private final HttpClient client = HttpClient.newBuilder().connectTimeout(TIMEOUT).build();
+	private final ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+	/**
+	 * @param baseUrl The URL of the stand-in, without a trailing slash.
+	 */
+	StandInRiotApi(String baseUrl) {
+		this.baseUrl = baseUrl;
+	}
+
+	/**
+	 * Retrieves an object from the stand-in. Only the types and queries used by this service are supported.
+	 *
+	 * @param type The type of object to retrieve.
+	 * @param platform The platform that the request is for.
+	 * @param query The query that would have been passed to the Orianna pipeline.
+	 * @return The object, or {@code null} if it does not exist.
+	 * @throws OriannaException thrown if the stand-in returns an error.
+	 */
+	<T> T get(Class<T> type, Platform platform, Map<String, Object> query) throws OriannaException {
+		String path;
+		if (type == Account.class && query.containsKey("gameName")) {
+			path = "/riot/account/v1/accounts/by-riot-id/" + encode(query.get("gameName")) + "/" + encode(query.get("tagLine"));
+		} else if (type == Account.class) {
+			path = "/riot/account/v1/accounts/by-puuid/" + encode(query.get("puuid"));
+		} else if (type == Summoner.class) {
+			path = "/lol/summoner/v4/summoners/by-puuid/" + encode(query.get("puuid"));
+		} else if (type == ChampionMasteries.class) {
+			path = "/lol/champion-mastery/v4/champion-masteries/by-puuid/" + encode(query.get("puuid"));
+		} else {
+			throw new IllegalArgumentException("Unsupported type " + type.getName());
+		}
+
+		URI uri = URI.create(baseUrl + "/" + platform.getTag() + path);
+		JsonNode body = send(uri);
+		if (body == null) {
+			return null;
+		}
+
+		// Orianna sets the platform of the objects it returns, since the Riot Games API doesn't include it.
+		if (body.isObject()) {
+			((ObjectNode) body).put("platform", platform.getTag());
+		} else {
+			for (JsonNode element : body) {
+				((ObjectNode) element).put("platform", platform.getTag());
+			}
+		}
+		return mapper.convertValue(body, type);
+	}
+
+	private JsonNode send(URI uri) throws OriannaException {
+		HttpRequest request = HttpRequest.newBuilder(uri).timeout(TIMEOUT).GET().build();
+		Duration backoff = INITIAL_BACKOFF;
+		for (int attempt = 1; ; attempt++) {
+			boolean lastAttempt = attempt >= MAX_ATTEMPTS;
+			HttpResponse<byte[]> response;
+			try {
+				response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+			} catch (HttpTimeoutException ex) {
+				if (lastAttempt) {
+					throw new OriannaException(String.format("Request to %s timed out", uri));
+				}
+				sleep(backoff);
+				backoff = backoff.multipliedBy(2);
+				continue;
+			} catch (IOException ex) {
+				throw new OriannaException(String.format("Error sending request to %s: %s", uri, ex));
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new OriannaException(String.format("Interrupted while sending request to %s", uri));
+			}
+
+			switch (response.statusCode()) {
+				case 200:
+					try {
+						return mapper.readTree(response.body());
+					} catch (IOException ex) {
+						throw new OriannaException(String.format("Invalid response from %s: %s", uri, ex));
+					}
+				case 404:
+					return null;
+				case 429:
+					if (lastAttempt) {
+						throw new RateLimitExceededException(String.format("Rate limit exceeded for %s", uri));
+					}
+					sleep(Duration.ofSeconds(response.headers().firstValueAsLong("Retry-After").orElse(1)));
+					continue;
+				case 500:
+				case 503:
+					if (lastAttempt) {
+						String message = String.format("Stand-in returned %d for %s", response.statusCode(), uri);
+						throw response.statusCode() == 500 ? new InternalServerErrorException(message) : new ServiceUnavailableException(message);
+					}
+					sleep(backoff);
+					backoff = backoff.multipliedBy(2);
+					continue;
+				case 400:
+					throw new BadRequestException(String.format("Bad request to %s", uri));
+				case 401:
+					throw new UnauthorizedException(String.format("Unauthorized request to %s", uri));
+				case 403:
+					throw new ForbiddenException(String.format("Forbidden request to %s", uri));
+				case 415:
+					throw new UnsupportedMediaTypeException(String.format("Unsupported media type for %s", uri));
+				default:
+					throw new OriannaException(String.format("Stand-in returned %d for %s", response.statusCode(), uri));
+			}
+		}
+	}
+
+	private static void sleep(Duration duration) throws OriannaException {
+		try {
+			Thread.sleep(duration.toMillis());
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new OriannaException("Interrupted while waiting to retry a request");
+		}
+	}
+
+	private static String encode(Object value) {
+		return URLEncoder.encode(String.valueOf(value), StandardCharsets.UTF_8).replace("+", "%20");
+	}
+}
@@ -0,0 +1,26 @@
+package gg.championmastery.highscoresService.api;
+
+/**
+ * An immutable value paired with the version of the data it was read from. Versions only ever increase, so a cached
+ * result derived from the value can be reused for as long as the version hasn't changed.
+ *
+ * @param <T> The type of value.
+ */
+public final class Versioned<T> {
+
+	private final long version;
+	private final T value;
+
+	public Versioned(long version, T value) {
+		this.version = version;
+		this.value = value;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public T getValue() {
+		return value;
+	}
+}
@@ -2,25 +2,43 @@ package gg.championmastery.highscoresService.api.http;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.merakianalytics.orianna.types.common.Platform;
 import gg.championmastery.highscoresService.HighscoresService;
-import gg.championmastery.highscoresService.persistence.MasteryScoreEntity;
+import gg.championmastery.highscoresService.api.Versioned;
+import gg.championmastery.highscoresService.leaderboard.LeaderboardEntry;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.AbstractHandler;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Returns the top 50 players for a champion, either globally or on the platform specified by the {@code platform}
+ * parameter.
+ */
 public class ChampionHighscoresHandler extends AbstractHandler {
 
-	private final ObjectMapper mapper;
+	private final Map<WireFormat, ObjectMapper> mappers;
+	/** Encoded responses for each champion, mapped by champion ID. */
+	private final ConcurrentHashMap<Short, EncodedResponse> cachedResponses = new ConcurrentHashMap<>();
+	/** Encoded responses for each champion on each platform, mapped by platform and champion ID. */
+	private final Map<Platform, ConcurrentHashMap<Short, EncodedResponse>> regionalResponses = new EnumMap<>(Platform.class);
+	private final EncodedResponse emptyResponse;
 
 	public ChampionHighscoresHandler() {
 		SimpleModule module = new SimpleModule();
-		module.addSerializer(new MasteryScoreEntitySerializer());
-		mapper = new ObjectMapper();
-		mapper.registerModule(module);
+		module.addSerializer(new LeaderboardEntrySerializer());
+		mappers = WireFormat.createMappers(module);
+		emptyResponse = EncodedResponse.of(mappers, Collections.emptyList(), 0);
+		for (Platform platform : Platform.values()) {
+			regionalResponses.put(platform, new ConcurrentHashMap<>());
+		}
 	}
 
 	@Override
@@ -37,11 +55,31 @@ public class ChampionHighscoresHandler extends AbstractHandler {
 			return;
 		}
 
-		List<MasteryScoreEntity> championHighscores = HighscoresService.getApi().getChampionHighscores(championId);
+		Platform platform = null;
+		if (request.getParameter("platform") != null) {
+			platform = Platform.withTag(request.getParameter("platform"));
+			if (platform == null) {
+				response.setStatus(400);
+				response.setContentType("text/plain");
+				response.getWriter().write(String.format("Invalid platform '%s'", request.getParameter("platform")));
+				return;
+			}
+		}
 
+		Versioned<List<LeaderboardEntry>> championHighscores = platform == null ? HighscoresService.getApi().getChampionHighscores(championId)
+				: HighscoresService.getApi().getChampionHighscores(platform.getTag(), championId);
+		// Don't cache responses for champions without scores, since any short is accepted as a champion ID.
+		if (championHighscores.getValue().isEmpty()) {
+			emptyResponse.send(request, response);
+			return;
+		}
 
-		response.setStatus(200);
-		response.setContentType("text/json");
-		mapper.writeValue(response.getWriter(), championHighscores);
+		ConcurrentHashMap<Short, EncodedResponse> responses = platform == null ? cachedResponses : regionalResponses.get(platform);
+		EncodedResponse encodedResponse = responses.get(championId);
+		if (encodedResponse == null || encodedResponse.getVersion() != championHighscores.getVersion()) {
+			encodedResponse = EncodedResponse.of(mappers, championHighscores.getValue(), championHighscores.getVersion());
+			responses.put(championId, encodedResponse);
+		}
+		encodedResponse.send(request, response);
 	}
 }
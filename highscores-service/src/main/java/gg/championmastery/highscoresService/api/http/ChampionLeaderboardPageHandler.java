@@ -0,0 +1,82 @@
+package gg.championmastery.highscoresService.api.http;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import gg.championmastery.highscoresService.Config;
+import gg.championmastery.highscoresService.HighscoresService;
+import gg.championmastery.highscoresService.leaderboard.LeaderboardCursor;
+import gg.championmastery.highscoresService.leaderboard.LeaderboardPage;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Returns a page of the highest scores for a champion, read from the database (see
+ * {@link gg.championmastery.highscoresService.api.HighscoresApi#getChampionHighscoresPage}). The first page is returned
+ * unless a {@code cursor} from a previous page is specified.
+ */
+public class ChampionLeaderboardPageHandler extends AbstractHandler {
+
+	private final Map<WireFormat, ObjectMapper> mappers;
+
+	public ChampionLeaderboardPageHandler() {
+		SimpleModule module = new SimpleModule();
+		module.addSerializer(new LeaderboardEntrySerializer());
+		module.addSerializer(new LeaderboardPageSerializer());
+		mappers = WireFormat.createMappers(module);
+	}
+
+	@Override
+	public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException {
+		baseRequest.setHandled(true);
+
+		short championId;
+		try {
+			championId = Short.parseShort(request.getParameter("championId"));
+		} catch (NumberFormatException ex) {
+			response.setStatus(400);
+			response.setContentType("text/plain");
+			response.getWriter().write("Invalid champion ID");
+			return;
+		}
+
+		int pageSize = Config.LEADERBOARD_PAGE_SIZE;
+		if (request.getParameter("pageSize") != null) {
+			try {
+				pageSize = Integer.parseInt(request.getParameter("pageSize"));
+			} catch (NumberFormatException ex) {
+				pageSize = 0;
+			}
+			if (pageSize < 1 || pageSize > Config.LEADERBOARD_PAGE_SIZE) {
+				response.setStatus(400);
+				response.setContentType("text/plain");
+				response.getWriter().write(String.format("Page size must be between 1 and %d", Config.LEADERBOARD_PAGE_SIZE));
+				return;
+			}
+		}
+
+		LeaderboardCursor cursor = null;
+		if (request.getParameter("cursor") != null) {
+			try {
+				cursor = LeaderboardCursor.decode(championId, request.getParameter("cursor"));
+			} catch (IllegalArgumentException ex) {
+				response.setStatus(400);
+				response.setContentType("text/plain");
+				response.getWriter().write("Invalid cursor");
+				return;
+			}
+		}
+
+		LeaderboardPage page = HighscoresService.getApi().getChampionHighscoresPage(championId, cursor, pageSize);
+
+		WireFormat format = WireFormat.negotiate(request);
+		response.setStatus(200);
+		response.setContentType(format.getContentType());
+		response.setHeader("Vary", "Accept");
+		mappers.get(format).writeValue(response.getOutputStream(), page);
+	}
+}
@@ -0,0 +1,32 @@
+package gg.championmastery.highscoresService.api.http;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.merakianalytics.orianna.types.dto.championmastery.ChampionMastery;
+
+import java.io.IOException;
+
+/**
+ * Writes the fields of a champion mastery that are shown by the webserver, using the same names as the Riot Games API.
+ */
+public class ChampionMasterySerializer extends StdSerializer<ChampionMastery> {
+
+	protected ChampionMasterySerializer() {
+		super(ChampionMastery.class);
+	}
+
+	@Override
+	public void serialize(ChampionMastery mastery, JsonGenerator gen, SerializerProvider provider) throws IOException {
+		gen.writeStartObject();
+		gen.writeNumberField("championId", mastery.getChampionId());
+		gen.writeNumberField("championLevel", mastery.getChampionLevel());
+		gen.writeNumberField("championPoints", mastery.getChampionPoints());
+		gen.writeNumberField("championPointsSinceLastLevel", mastery.getChampionPointsSinceLastLevel());
+		gen.writeNumberField("championPointsUntilNextLevel", mastery.getChampionPointsUntilNextLevel());
+		gen.writeBooleanField("chestGranted", mastery.isChestGranted());
+		gen.writeNumberField("lastPlayTime", mastery.getLastPlayTime());
+		gen.writeNumberField("tokensEarned", mastery.getTokensEarned());
+		gen.writeEndObject();
+	}
+}
@@ -0,0 +1,186 @@
+package gg.championmastery.highscoresService.api.http;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import gg.championmastery.highscoresService.Config;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A response that is serialized (and gzipped) once for each {@link WireFormat}, so that it can be sent any number of
+ * times without serializing it again. Each format is only encoded the first time it is requested. Responses include a
+ * strong ETag derived from their content, and requests with a matching {@code If-None-Match} header receive a 304
+ * response with no body.
+ */
+public final class EncodedResponse {
+
+	private final Map<WireFormat, ObjectMapper> mappers;
+	private final Object value;
+	private final long version;
+	/** The encoded representations, indexed by format ordinal. */
+	private final AtomicReferenceArray<Representation> representations = new AtomicReferenceArray<>(WireFormat.values().length);
+
+	private EncodedResponse(Map<WireFormat, ObjectMapper> mappers, Object value, long version) {
+		this.mappers = mappers;
+		this.value = value;
+		this.version = version;
+	}
+
+	/**
+	 * Creates a response for a value, which is serialized the first time it is sent in each format.
+	 *
+	 * @param mappers The ObjectMappers used to serialize the value, mapped by format (see
+	 * 		{@link WireFormat#createMappers}).
+	 * @param value The value to serialize. It must not be modified after this is called.
+	 * @param version The version of the data that the value was read from.
+	 * @return The response.
+	 */
+	public static EncodedResponse of(Map<WireFormat, ObjectMapper> mappers, Object value, long version) {
+		return new EncodedResponse(mappers, value, version);
+	}
+
+	/**
+	 * Returns the version of the data that this response was encoded from.
+	 *
+	 * @return The version of the data that this response was encoded from.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Sends this response in the format negotiated with the client, using gzip if the client accepts it, or sends a 304
+	 * response if the client already has the current version.
+	 *
+	 * @param request The request being responded to.
+	 * @param response The response to send the body through.
+	 * @throws IOException Thrown if an error occurs while encoding or writing the response.
+	 */
+	public void send(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		WireFormat format = WireFormat.negotiate(request);
+		Representation representation = getRepresentation(format);
+		boolean gzip = acceptsGzip(request.getHeader("Accept-Encoding"));
+		response.setHeader("ETag", gzip ? representation.gzipETag : representation.identityETag);
+		response.setHeader("Cache-Control", String.format("max-age=%d", Config.RESPONSE_MAX_AGE));
+		response.setHeader("Vary", "Accept, Accept-Encoding");
+
+		if (representation.isNotModified(request.getHeader("If-None-Match"))) {
+			response.setStatus(304);
+			return;
+		}
+
+		byte[] body = gzip ? representation.gzipBody : representation.identityBody;
+		response.setStatus(200);
+		response.setContentType(format.getContentType());
+		if (gzip) {
+			response.setHeader("Content-Encoding", "gzip");
+		}
+		response.setContentLength(body.length);
+		response.getOutputStream().write(body);
+	}
+
+	/**
+	 * Returns the representation of this response in a format, encoding it if it hasn't been requested before. If
+	 * two threads request a new format at once, both encode it, but they produce identical representations.
+	 */
+	private Representation getRepresentation(WireFormat format) throws IOException {
+		Representation representation = representations.get(format.ordinal());
+		if (representation == null) {
+			representation = Representation.encode(mappers.get(format), value);
+			representations.compareAndSet(format.ordinal(), null, representation);
+		}
+		return representation;
+	}
+
+	/**
+	 * Checks if an {@code Accept-Encoding} header allows gzip.
+	 *
+	 * @param acceptEncoding The value of the header (or {@code null} if it was not sent).
+	 * @return {@code true} if the response can be gzipped.
+	 */
+	private static boolean acceptsGzip(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return false;
+		}
+
+		for (String coding : acceptEncoding.split(",")) {
+			String[] parts = coding.split(";");
+			if (parts[0].trim().equalsIgnoreCase("gzip")) {
+				for (int i = 1; i < parts.length; i++) {
+					String parameter = parts[i].trim();
+					if (parameter.startsWith("q=")) {
+						try {
+							return Double.parseDouble(parameter.substring(2)) > 0;
+						} catch (NumberFormatException ex) {
+							return false;
+						}
+					}
+				}
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** The body of a response in a single format, with and without gzip. */
+	private static final class Representation {
+		private final byte[] identityBody;
+		private final byte[] gzipBody;
+		private final String identityETag;
+		private final String gzipETag;
+
+		private Representation(byte[] identityBody, byte[] gzipBody, String hash) {
+			this.identityBody = identityBody;
+			this.gzipBody = gzipBody;
+			// Each format and content encoding is a different representation, so they need different strong ETags. The
+			// hash covers the encoded body, so formats never share a tag.
+			this.identityETag = "\"" + hash + "\"";
+			this.gzipETag = "\"" + hash + "-gzip\"";
+		}
+
+		/**
+		 * Serializes a value, and compresses the result.
+		 */
+		private static Representation encode(ObjectMapper mapper, Object value) throws IOException {
+			byte[] identityBody = mapper.writeValueAsBytes(value);
+
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream(identityBody.length / 4 + 64);
+			try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+				gzip.write(identityBody);
+			}
+
+			String hash = Hashing.sha256().hashBytes(identityBody).toString().substring(0, 32);
+			return new Representation(identityBody, compressed.toByteArray(), hash);
+		}
+
+		/**
+		 * Checks if an {@code If-None-Match} header lists either version of this response.
+		 *
+		 * @param ifNoneMatch The value of the header (or {@code null} if it was not sent).
+		 * @return {@code true} if a 304 response should be sent.
+		 */
+		private boolean isNotModified(String ifNoneMatch) {
+			if (ifNoneMatch == null) {
+				return false;
+			}
+
+			for (String tag : ifNoneMatch.split(",")) {
+				tag = tag.trim();
+				// If-None-Match uses weak comparison, so weak versions of our tags also match.
+				if (tag.startsWith("W/")) {
+					tag = tag.substring(2);
+				}
+				if (tag.equals("*") || tag.equals(identityETag) || tag.equals(gzipETag)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
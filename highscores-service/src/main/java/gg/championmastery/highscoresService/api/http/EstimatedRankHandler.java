@@ -0,0 +1,63 @@
+package gg.championmastery.highscoresService.api.http;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gg.championmastery.highscoresService.HighscoresService;
+import gg.championmastery.highscoresService.leaderboard.RankEstimate;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+
+/** Estimates the rank of any score for a champion (see {@link gg.championmastery.highscoresService.leaderboard.RankEstimator}). */
+public class EstimatedRankHandler extends AbstractHandler {
+
+	private final Map<WireFormat, ObjectMapper> mappers = WireFormat.createMappers();
+
+	@Override
+	public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException {
+		baseRequest.setHandled(true);
+
+		short championId;
+		try {
+			championId = Short.parseShort(request.getParameter("championId"));
+		} catch (NumberFormatException ex) {
+			response.setStatus(400);
+			response.setContentType("text/plain");
+			response.getWriter().write("Invalid champion ID");
+			return;
+		}
+
+		int points;
+		try {
+			points = Integer.parseInt(request.getParameter("points"));
+		} catch (NumberFormatException ex) {
+			response.setStatus(400);
+			response.setContentType("text/plain");
+			response.getWriter().write("Invalid points");
+			return;
+		}
+		if (points < 0) {
+			response.setStatus(400);
+			response.setContentType("text/plain");
+			response.getWriter().write("Points must not be negative");
+			return;
+		}
+
+		RankEstimate estimate = HighscoresService.getApi().estimateRank(championId, points);
+		if (estimate == null) {
+			response.setStatus(404);
+			response.setContentType("text/plain");
+			response.getWriter().write("No estimate is available for this champion");
+			return;
+		}
+
+		WireFormat format = WireFormat.negotiate(request);
+		response.setStatus(200);
+		response.setContentType(format.getContentType());
+		response.setHeader("Vary", "Accept");
+		mappers.get(format).writeValue(response.getOutputStream(), estimate);
+	}
+}
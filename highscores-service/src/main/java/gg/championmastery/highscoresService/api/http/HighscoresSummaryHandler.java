@@ -2,36 +2,62 @@ package gg.championmastery.highscoresService.api.http;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.merakianalytics.orianna.types.common.Platform;
 import gg.championmastery.highscoresService.HighscoresService;
-import gg.championmastery.highscoresService.persistence.MasteryScoreEntity;
+import gg.championmastery.highscoresService.leaderboard.HighscoresSummary;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.AbstractHandler;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Returns the top 3 players for every champion, either globally or on the platform specified by the {@code platform}
+ * parameter.
+ */
 public class HighscoresSummaryHandler extends AbstractHandler {
 
-	private final ObjectMapper mapper;
+	private final Map<WireFormat, ObjectMapper> mappers;
+	private volatile EncodedResponse cachedResponse;
+	/** Encoded responses for each platform. */
+	private final ConcurrentHashMap<Platform, EncodedResponse> regionalResponses = new ConcurrentHashMap<>();
 
 	public HighscoresSummaryHandler() {
 		SimpleModule module = new SimpleModule();
-		module.addSerializer(new MasteryScoreEntitySerializer());
-		mapper = new ObjectMapper();
-		mapper.registerModule(module);
+		module.addSerializer(new LeaderboardEntrySerializer());
+		mappers = WireFormat.createMappers(module);
 	}
 
 	@Override
 	public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException {
 		baseRequest.setHandled(true);
 
-		Map<Short, List<MasteryScoreEntity>> highscoresSummary = HighscoresService.getApi().getHighscoresSummary();
-
-		response.setStatus(200);
-		response.setContentType("text/json");
-		mapper.writeValue(response.getWriter(), highscoresSummary);
+		Platform platform = null;
+		if (request.getParameter("platform") != null) {
+			platform = Platform.withTag(request.getParameter("platform"));
+			if (platform == null) {
+				response.setStatus(400);
+				response.setContentType("text/plain");
+				response.getWriter().write(String.format("Invalid platform '%s'", request.getParameter("platform")));
+				return;
+			}
+		}
+
+		HighscoresSummary highscoresSummary = platform == null ? HighscoresService.getApi().getHighscoresSummary()
+				: HighscoresService.getApi().getHighscoresSummary(platform.getTag());
+
+		EncodedResponse encodedResponse = platform == null ? cachedResponse : regionalResponses.get(platform);
+		if (encodedResponse == null || encodedResponse.getVersion() != highscoresSummary.getVersion()) {
+			encodedResponse = EncodedResponse.of(mappers, highscoresSummary.getHighscores(), highscoresSummary.getVersion());
+			if (platform == null) {
+				cachedResponse = encodedResponse;
+			} else {
+				regionalResponses.put(platform, encodedResponse);
+			}
+		}
+		encodedResponse.send(request, response);
 	}
 }
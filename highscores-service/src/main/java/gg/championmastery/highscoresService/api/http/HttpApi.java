@@ -9,6 +9,8 @@ import com.merakianalytics.orianna.datapipeline.riotapi.exceptions.ServiceUnavai
 import com.merakianalytics.orianna.datapipeline.riotapi.exceptions.UnauthorizedException;
 import com.merakianalytics.orianna.datapipeline.riotapi.exceptions.UnsupportedMediaTypeException;
 import com.merakianalytics.orianna.types.common.OriannaException;
+import gg.championmastery.highscoresService.Config;
+import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.handler.ContextHandler;
 import org.eclipse.jetty.server.handler.HandlerCollection;
@@ -27,30 +29,61 @@ public class HttpApi {
 	public HttpApi(int port) throws Exception {
 		jettyServer = new Server(port);
 
-		ContextHandler summonerScoresHandler = new ContextHandler("/summonerInfo");
-		summonerScoresHandler.setHandler(new PlayerScoresHandler());
-
-		ContextHandler highscoresSummaryHandler = new ContextHandler("/highscoresSummary");
-		highscoresSummaryHandler.setHandler(new HighscoresSummaryHandler());
-
-		ContextHandler championHighscoresHandler = new ContextHandler("/championHighscores");
-		championHighscoresHandler.setHandler(new ChampionHighscoresHandler());
-
-		ContextHandler playerRefreshHandler = new ContextHandler("/refreshPlayer");
-		playerRefreshHandler.setHandler(new PlayerRefreshHandler());
-
-		ContextHandler rankThresholdsHandler = new ContextHandler("/rankThresholds");
-		rankThresholdsHandler.setHandler(new RankThresholdsHandler());
-
-
 		HandlerCollection handlers = new HandlerCollection(
-				summonerScoresHandler, highscoresSummaryHandler, championHighscoresHandler, playerRefreshHandler, rankThresholdsHandler
+				route("/summonerInfo", new PlayerScoresHandler()),
+				route("/highscoresSummary", new HighscoresSummaryHandler()),
+				route("/championHighscores", new ChampionHighscoresHandler()),
+				route("/championLeaderboard", new ChampionLeaderboardPageHandler()),
+				route("/refreshPlayer", new PlayerRefreshHandler()),
+				route("/refreshPlayers", new PlayerBatchRefreshHandler()),
+				route("/rankThresholds", new RankThresholdsHandler()),
+				route("/estimatedRank", new EstimatedRankHandler()),
+				route("/playerRanks", new PlayerRanksHandler())
 		);
 
-		jettyServer.setHandler(handlers);
+		switch (Config.HTTP_EXECUTOR) {
+			case THREAD_POOL:
+				jettyServer.setHandler(handlers);
+				break;
+			case VIRTUAL_THREADS:
+				VirtualThreadHandler virtualThreadHandler = new VirtualThreadHandler();
+				virtualThreadHandler.setHandler(handlers);
+				jettyServer.setHandler(virtualThreadHandler);
+				break;
+			default:
+				throw new IllegalStateException("Unknown HTTP executor " + Config.HTTP_EXECUTOR);
+		}
 		jettyServer.start();
 	}
 
+	/**
+	 * Creates a handler for a route, which records the duration of each request (see {@link RouteMetricsHandler}).
+	 *
+	 * @param path The path of the route.
+	 * @param handler The handler for requests to the route.
+	 * @return The handler for the route.
+	 */
+	private static ContextHandler route(String path, Handler handler) {
+		ContextHandler contextHandler = new ContextHandler(path);
+		contextHandler.setHandler(new RouteMetricsHandler(path, handler));
+		return contextHandler;
+	}
+
+	/**
+	 * Which threads requests are handled on.
+	 */
+	public enum Executor {
+		/** Handle requests on Jetty's thread pool. */
+		THREAD_POOL,
+		/**
+		 * Handle each request on its own virtual thread (see {@link VirtualThreadHandler}). Hibernate, c3p0 and
+		 * Connector/J hold monitors during blocking JDBC I/O, which pins a virtual thread to its carrier thread. Database
+		 * work that runs on request threads (including tasks run by the {@code CALLER_RUNS} persistence rejection policy)
+		 * can therefore occupy every carrier thread and stall all requests.
+		 */
+		VIRTUAL_THREADS
+	}
+
 	private static final Map<Class<? extends OriannaException>, Integer> errorCodes = new HashMap<Class<? extends OriannaException>, Integer>() {{
 		put(BadRequestException.class, 400);
 		put(ForbiddenException.class, 403);
@@ -0,0 +1,36 @@
+package gg.championmastery.highscoresService.api.http;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.merakianalytics.orianna.types.common.Platform;
+import gg.championmastery.highscoresService.leaderboard.LeaderboardEntry;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+public class LeaderboardEntrySerializer extends StdSerializer<LeaderboardEntry> {
+
+	/** Region tags by platform tag, so that platforms don't need to be looked up for every entry. */
+	private static final Map<String, String> regions = new HashMap<>();
+
+	static {
+		for (Platform platform : Platform.values()) {
+			regions.put(platform.getTag(), platform.getRegion().getTag());
+		}
+	}
+
+	protected LeaderboardEntrySerializer() {
+		super(LeaderboardEntry.class);
+	}
+
+	@Override
+	public void serialize(LeaderboardEntry entry, JsonGenerator gen, SerializerProvider provider) throws IOException {
+		gen.writeStartObject();
+		gen.writeStringField("name", entry.getDisplayName());
+		gen.writeStringField("region", regions.get(entry.getPlatform()));
+		gen.writeNumberField("points", entry.getPoints());
+		gen.writeEndObject();
+	}
+}
@@ -0,0 +1,35 @@
+package gg.championmastery.highscoresService.api.http;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import gg.championmastery.highscoresService.leaderboard.LeaderboardEntry;
+import gg.championmastery.highscoresService.leaderboard.LeaderboardPage;
+
+import java.io.IOException;
+
+/** Serializes a page of a champion leaderboard. Entries are written with {@link LeaderboardEntrySerializer}. */
+public class LeaderboardPageSerializer extends StdSerializer<LeaderboardPage> {
+
+	protected LeaderboardPageSerializer() {
+		super(LeaderboardPage.class);
+	}
+
+	@Override
+	public void serialize(LeaderboardPage page, JsonGenerator gen, SerializerProvider provider) throws IOException {
+		gen.writeStartObject();
+		gen.writeNumberField("championId", page.getChampionId());
+		gen.writeNumberField("firstRank", page.getFirstRank());
+		gen.writeArrayFieldStart("entries");
+		for (LeaderboardEntry entry : page.getEntries()) {
+			provider.defaultSerializeValue(entry, gen);
+		}
+		gen.writeEndArray();
+		if (page.getNext() == null) {
+			gen.writeNullField("next");
+		} else {
+			gen.writeStringField("next", page.getNext().encode());
+		}
+		gen.writeEndObject();
+	}
+}
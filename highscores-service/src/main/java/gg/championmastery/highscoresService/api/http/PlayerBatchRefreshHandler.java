@@ -0,0 +1,168 @@
+package gg.championmastery.highscoresService.api.http;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.merakianalytics.orianna.types.common.Platform;
+import gg.championmastery.highscoresService.Config;
+import gg.championmastery.highscoresService.HighscoresService;
+import gg.championmastery.highscoresService.api.PlayerRefresh;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Refreshes a batch of players by their PUUIDs. The request body is newline-delimited JSON with one
+ * {@code {"platform": "NA1", "puuid": "..."}} object per line, and the response is newline-delimited JSON with one
+ * result per player, written as soon as that player has been refreshed (so results are not in the same order as the
+ * request). Clients that accept {@code application/cbor-seq} receive a CBOR sequence of the same results instead
+ * (see {@link WireFormat}).
+ * <p>
+ * Players are refreshed with at most {@link Config#REFRESH_BATCH_CONCURRENCY} refreshes at once on each platform. The
+ * request body is only read as fast as players are refreshed, so memory use doesn't depend on the size of the batch.
+ */
+public class PlayerBatchRefreshHandler extends AbstractHandler {
+
+	private static final Logger logger = LoggerFactory.getLogger(PlayerBatchRefreshHandler.class);
+
+	private final Map<WireFormat, ObjectMapper> mappers = WireFormat.createMappers();
+	private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("batch-refresh-", 0).factory());
+
+	@Override
+	public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException {
+		baseRequest.setHandled(true);
+		if (!"POST".equals(request.getMethod())) {
+			response.setStatus(405);
+			response.setContentType("text/plain");
+			response.getWriter().write("Players must be sent in the body of a POST request");
+			return;
+		}
+
+		WireFormat format = WireFormat.negotiate(request);
+		response.setStatus(200);
+		response.setContentType(format.getSequenceContentType());
+		response.setHeader("Vary", "Accept");
+		ResultWriter writer = new ResultWriter(format, response.getOutputStream());
+		Map<Platform, Semaphore> permits = new EnumMap<>(Platform.class);
+		for (Platform platform : Platform.values()) {
+			permits.put(platform, new Semaphore(Config.REFRESH_BATCH_CONCURRENCY));
+		}
+
+		BufferedReader reader = request.getReader();
+		String line;
+		try {
+			while ((line = reader.readLine()) != null && !writer.failed) {
+				if (line.isBlank()) {
+					continue;
+				}
+
+				String platformTag = null;
+				String puuid = null;
+				try {
+					JsonNode player = mappers.get(WireFormat.JSON).readTree(line);
+					platformTag = player.path("platform").asText(null);
+					puuid = player.path("puuid").asText(null);
+				} catch (IOException ignored) {
+				}
+				Platform platform = platformTag == null ? null : Platform.withTag(platformTag);
+				if (platform == null || puuid == null) {
+					writer.write(platformTag, puuid, "invalid", null);
+					continue;
+				}
+
+				Semaphore platformPermits = permits.get(platform);
+				platformPermits.acquire();
+				String playerPuuid = puuid;
+				executor.execute(() -> {
+					try {
+						refresh(writer, platform, playerPuuid);
+					} finally {
+						platformPermits.release();
+					}
+				});
+			}
+
+			// Wait for every refresh to finish before the response is completed.
+			for (Semaphore platformPermits : permits.values()) {
+				platformPermits.acquire(Config.REFRESH_BATCH_CONCURRENCY);
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void refresh(ResultWriter writer, Platform platform, String puuid) {
+		PlayerRefresh refresh;
+		try {
+			refresh = HighscoresService.getApi().refreshPlayer(platform, puuid);
+		} catch (Exception ex) {
+			logger.warn(String.format("Error refreshing summoner '%s' (%s)", puuid, platform.getTag()), ex);
+			writer.write(platform.getTag(), puuid, "error", null);
+			return;
+		}
+		writer.write(platform.getTag(), puuid, refresh.getOutcome().name().toLowerCase(Locale.ROOT), refresh.getRiotId());
+	}
+
+	/** Writes results to the response, which is shared by every refresh in the batch. */
+	private final class ResultWriter {
+		private final WireFormat format;
+		private final ObjectMapper mapper;
+		private final OutputStream out;
+		/** Set once writing to the response has failed (normally because the client disconnected). */
+		private volatile boolean failed;
+
+		private ResultWriter(WireFormat format, OutputStream out) {
+			this.format = format;
+			this.mapper = mappers.get(format);
+			this.out = out;
+		}
+
+		/**
+		 * Writes a result and flushes it, so that the client receives it immediately.
+		 */
+		private void write(String platform, String puuid, String outcome, String riotId) {
+			ObjectNode result = mapper.createObjectNode()
+					.put("platform", platform)
+					.put("puuid", puuid)
+					.put("outcome", outcome);
+			if (riotId != null) {
+				result.put("riotId", riotId);
+			}
+
+			byte[] encoded;
+			try {
+				encoded = mapper.writeValueAsBytes(result);
+			} catch (IOException ex) {
+				throw new IllegalStateException(ex);
+			}
+			synchronized (this) {
+				if (failed) {
+					return;
+				}
+				try {
+					out.write(encoded);
+					// CBOR items are self-delimiting, so only JSON needs a separator.
+					if (format == WireFormat.JSON) {
+						out.write('\n');
+					}
+					out.flush();
+				} catch (IOException ex) {
+					failed = true;
+				}
+			}
+		}
+	}
+}
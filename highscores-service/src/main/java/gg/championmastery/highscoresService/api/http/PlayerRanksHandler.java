@@ -0,0 +1,62 @@
+package gg.championmastery.highscoresService.api.http;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.merakianalytics.orianna.types.common.Platform;
+import gg.championmastery.highscoresService.HighscoresService;
+import gg.championmastery.highscoresService.leaderboard.PlayerRank;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/** Returns the exact global and regional rank of each of a player's saved scores. */
+public class PlayerRanksHandler extends AbstractHandler {
+
+	private final Map<WireFormat, ObjectMapper> mappers = WireFormat.createMappers();
+
+	@Override
+	public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException {
+		baseRequest.setHandled(true);
+		String puuid = request.getParameter("puuid");
+		if (puuid == null) {
+			response.setStatus(400);
+			response.setContentType("text/plain");
+			response.getWriter().write("puuid parameter not specified");
+			return;
+		}
+
+		Platform platform = Platform.withTag(request.getParameter("platform"));
+		if (platform == null) {
+			response.setStatus(400);
+			response.setContentType("text/plain");
+			response.getWriter().write(String.format("Invalid platform '%s'", request.getParameter("platform")));
+			return;
+		}
+
+		List<PlayerRank> ranks;
+		try {
+			ranks = HighscoresService.getApi().getPlayerRanks(platform.getTag(), puuid);
+		} catch (IllegalStateException ex) {
+			response.setStatus(503);
+			response.setContentType("text/plain");
+			response.getWriter().write("Player ranks are not available yet");
+			return;
+		}
+		if (ranks == null) {
+			response.setStatus(404);
+			response.setContentType("text/plain");
+			response.getWriter().write("Summoner does not exist");
+			return;
+		}
+
+		WireFormat format = WireFormat.negotiate(request);
+		response.setStatus(200);
+		response.setContentType(format.getContentType());
+		response.setHeader("Vary", "Accept");
+		mappers.get(format).writeValue(response.getOutputStream(), ranks);
+	}
+}
@@ -1,33 +1,31 @@
 package gg.championmastery.highscoresService.api.http;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.google.common.collect.ImmutableMap;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.merakianalytics.orianna.types.common.OriannaException;
 import com.merakianalytics.orianna.types.common.Platform;
-import com.merakianalytics.orianna.types.dto.account.Account;
 import com.merakianalytics.orianna.types.dto.championmastery.ChampionMasteries;
 import com.merakianalytics.orianna.types.dto.summoner.Summoner;
 import gg.championmastery.highscoresService.HighscoresService;
+import gg.championmastery.highscoresService.api.PlayerLookup;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.AbstractHandler;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URLDecoder;
+import java.util.Map;
 
 public class PlayerScoresHandler extends AbstractHandler {
-	private static final Logger logger = LoggerFactory.getLogger(PlayerScoresHandler.class);
-
-	private final ObjectMapper mapper;
-
-	public PlayerScoresHandler() {
-		mapper = new ObjectMapper();
-	}
+	/**
+	 * Mapped by format, and shared by every request, since mappers are thread-safe once configured and cache the
+	 * serializers they look up.
+	 */
+	private static final Map<WireFormat, ObjectMapper> mappers = createMappers();
 
 	@Override
 	public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException {
@@ -56,56 +54,63 @@ public class PlayerScoresHandler extends AbstractHandler {
 			response.getWriter().write(String.format("Invalid Riot ID '%s'", riotId));
 			return;
 		}
-		String gameName = splitRiotId[0];
-		String tagLine = splitRiotId[1];
-		Account account;
-		Summoner summoner;
+		PlayerLookup lookup;
 		try {
-			account = HighscoresService.getOriannaPipeline().get(Account.class, ImmutableMap.of(
-					"platform", platform,
-					"gameName", gameName,
-					"tagLine", tagLine
-			));
-			if (account == null) {
-				response.setStatus(404);
-				response.setContentType("text/plain");
-				response.getWriter().write("Account does not exist");
-				return;
-			}
-
-			summoner = HighscoresService.getOriannaPipeline().get(Summoner.class, ImmutableMap.of(
-					"platform", platform,
-					"puuid", account.getPuuid()
-			));
+			lookup = HighscoresService.getApi().lookupPlayer(platform, splitRiotId[0], splitRiotId[1]);
 		} catch (OriannaException ex) {
 			HttpApi.sendOriannaError(ex, response);
 			return;
 		}
 
-		if (summoner == null) {
+		if (lookup.getAccount() == null) {
 			response.setStatus(404);
 			response.setContentType("text/plain");
-			logger.error("Summoner does not exist for PUUID '{}'", account.getPuuid());
-			response.getWriter().write("Summoner does not exist");
+			response.getWriter().write("Account does not exist");
 			return;
 		}
-
-		riotId = account.getGameName() + " #" + account.getTagLine();
-		ChampionMasteries summonerScores;
-		try {
-			summonerScores = HighscoresService.getApi().getSummonerScores(summoner, riotId);
-		} catch (OriannaException ex) {
-			HttpApi.sendOriannaError(ex, response);
+		if (lookup.getSummoner() == null) {
+			response.setStatus(404);
+			response.setContentType("text/plain");
+			response.getWriter().write("Summoner does not exist");
 			return;
 		}
 
-		ObjectNode node = mapper.createObjectNode();
-		node.setAll(mapper.convertValue(summoner, ObjectNode.class));
-		node.set("scores", mapper.convertValue(summonerScores, JsonNode.class));
-		node.set("riotId", mapper.convertValue(riotId, JsonNode.class));
-
+		WireFormat format = WireFormat.negotiate(request);
 		response.setStatus(200);
-		response.setContentType("text/json");
-		mapper.writeValue(response.getWriter(), node);
+		response.setContentType(format.getContentType());
+		response.setHeader("Vary", "Accept");
+		writeResponse(format, response.getOutputStream(), lookup.getSummoner(), lookup.getMasteries(), lookup.getAccount().getRiotId());
+	}
+
+	/**
+	 * Writes the response for a player who was found directly to {@code out} in the specified format, without building
+	 * it in memory first. Only the fields used by the webserver are included.
+	 */
+	void writeResponse(WireFormat format, OutputStream out, Summoner summoner, ChampionMasteries masteries, String riotId) throws IOException {
+		ObjectMapper mapper = mappers.get(format);
+		try (JsonGenerator gen = mapper.getFactory().createGenerator(out)) {
+			gen.writeStartObject();
+			gen.writeStringField("puuid", summoner.getPuuid());
+			gen.writeNumberField("profileIconId", summoner.getProfileIconId());
+			gen.writeNumberField("summonerLevel", summoner.getSummonerLevel());
+			gen.writeStringField("riotId", riotId);
+			gen.writeFieldName("scores");
+			// The masteries are written with ChampionMasterySerializer.
+			mapper.writeValue(gen, masteries);
+			gen.writeEndObject();
+		}
+	}
+
+	private static Map<WireFormat, ObjectMapper> createMappers() {
+		SimpleModule module = new SimpleModule();
+		module.addSerializer(new ChampionMasterySerializer());
+		Map<WireFormat, ObjectMapper> mappers = WireFormat.createMappers(module);
+		for (ObjectMapper mapper : mappers.values()) {
+			// Closing the generator must not close the response, which Jetty completes itself, and writing the masteries
+			// must not flush the response before the rest of it has been written.
+			mapper.getFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+			mapper.disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+		}
+		return mappers;
 	}
 }
@@ -3,6 +3,7 @@ package gg.championmastery.highscoresService.api.http;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import gg.championmastery.highscoresService.HighscoresService;
+import gg.championmastery.highscoresService.api.Versioned;
 import gg.championmastery.highscoresService.persistence.RankThresholdEntity;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.AbstractHandler;
@@ -11,24 +12,29 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
 public class RankThresholdsHandler extends AbstractHandler {
 
-	private final ObjectMapper mapper;
+	private final Map<WireFormat, ObjectMapper> mappers;
+	private volatile EncodedResponse cachedResponse;
 
 	public RankThresholdsHandler() {
 		SimpleModule module = new SimpleModule();
 		module.addSerializer(new RankThresholdEntitySerializer());
-		mapper = new ObjectMapper();
-		mapper.registerModule(module);
+		mappers = WireFormat.createMappers(module);
 	}
 
 	@Override
 	public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException {
 		baseRequest.setHandled(true);
-		List<RankThresholdEntity> thresholds = HighscoresService.getApi().getRankThresholds();
-		response.setStatus(200);
-		response.setContentType("text/json");
-		mapper.writeValue(response.getWriter(), thresholds);
+		Versioned<List<RankThresholdEntity>> thresholds = HighscoresService.getApi().getRankThresholds();
+
+		EncodedResponse encodedResponse = cachedResponse;
+		if (encodedResponse == null || encodedResponse.getVersion() != thresholds.getVersion()) {
+			encodedResponse = EncodedResponse.of(mappers, thresholds.getValue(), thresholds.getVersion());
+			cachedResponse = encodedResponse;
+		}
+		encodedResponse.send(request, response);
 	}
 }
@@ -0,0 +1,51 @@
+package gg.championmastery.highscoresService.api.http;
+
+import io.prometheus.client.Histogram;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Records how long the wrapped handler takes to handle each request for a route, labelled by the status of the
+ * response. The time is measured on the thread that runs the handler, so with {@link HttpApi.Executor#VIRTUAL_THREADS}
+ * it doesn't include the time taken to start the virtual thread.
+ */
+public final class RouteMetricsHandler extends HandlerWrapper {
+
+	private static final Histogram requestDuration = Histogram.build()
+			.name("http_request_duration_seconds")
+			.help("Time taken to handle HTTP requests, by route and status.")
+			.labelNames("route", "status")
+			.buckets(0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30)
+			.register();
+
+	private final String route;
+
+	/**
+	 * @param route The route that the handler serves, used as the {@code route} label.
+	 * @param handler The handler to measure.
+	 */
+	public RouteMetricsHandler(String route, Handler handler) {
+		this.route = route;
+		setHandler(handler);
+	}
+
+	@Override
+	public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			super.handle(target, baseRequest, request, response);
+			failed = false;
+		} finally {
+			// Exceptions are turned into 500s by Jetty (or VirtualThreadHandler), after the response status has been read.
+			String status = failed ? "500" : Integer.toString(response.getStatus());
+			requestDuration.labels(route, status).observe((System.nanoTime() - start) / 1e9);
+		}
+	}
+}
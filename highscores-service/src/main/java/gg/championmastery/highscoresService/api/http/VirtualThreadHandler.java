@@ -0,0 +1,57 @@
+package gg.championmastery.highscoresService.api.http;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the wrapped handler on a new virtual thread for each request. The request is put into async mode so that the
+ * Jetty thread that received it is released immediately, and the virtual thread completes the request once the wrapped
+ * handler returns. This allows handlers to block (e.g. while waiting for the Riot API) without tying up a thread from
+ * Jetty's pool.
+ */
+public class VirtualThreadHandler extends HandlerWrapper {
+	private static final Logger logger = LoggerFactory.getLogger(VirtualThreadHandler.class);
+
+	private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("http-", 0).factory());
+
+	@Override
+	public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) {
+		// Jetty's thread is done with the request once it has been dispatched.
+		baseRequest.setHandled(true);
+		AsyncContext asyncContext = request.startAsync();
+		// Handlers may wait on Riot API rate limits for an unbounded amount of time, the same as they could when they ran on Jetty's pool.
+		asyncContext.setTimeout(0);
+		executor.execute(() -> {
+			try {
+				baseRequest.setHandled(false);
+				super.handle(target, baseRequest, request, response);
+				if (!baseRequest.isHandled() && !response.isCommitted()) {
+					response.sendError(404);
+				}
+			} catch (Exception ex) {
+				logger.error(String.format("Error handling request for '%s'", target), ex);
+				if (!response.isCommitted()) {
+					response.setStatus(500);
+				}
+			} finally {
+				asyncContext.complete();
+			}
+		});
+	}
+
+	@Override
+	protected void doStop() throws Exception {
+		super.doStop();
+		executor.shutdown();
+		executor.awaitTermination(30, TimeUnit.SECONDS);
+	}
+}
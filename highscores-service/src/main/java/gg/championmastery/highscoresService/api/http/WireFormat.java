@@ -0,0 +1,111 @@
+package gg.championmastery.highscoresService.api.http;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The formats that responses can be encoded in, chosen by the {@code Accept} header of each request.
+ * <p>
+ * Responses in every format have the same structure: CBOR (RFC 8949) responses contain exactly the same maps, arrays,
+ * strings, numbers and booleans as the JSON responses, with the same field names, so the documented JSON schema of
+ * each endpoint also describes its CBOR responses. Integers are encoded in the smallest CBOR integer type that fits
+ * them, which decoders return as ordinary numbers. Errors are always sent as plain text.
+ */
+public enum WireFormat {
+	JSON("text/json; charset=utf-8", "application/x-ndjson", new JsonFactory()),
+	CBOR("application/cbor", "application/cbor-seq", new CBORFactory());
+
+	private final String contentType;
+	private final String sequenceContentType;
+	private final JsonFactory factory;
+
+	WireFormat(String contentType, String sequenceContentType, JsonFactory factory) {
+		this.contentType = contentType;
+		this.sequenceContentType = sequenceContentType;
+		this.factory = factory;
+	}
+
+	/**
+	 * Returns the content type of a single value in this format.
+	 *
+	 * @return The content type of a single value in this format.
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * Returns the content type of a stream of values in this format (newline-delimited JSON, or a CBOR sequence as
+	 * defined by RFC 8742).
+	 *
+	 * @return The content type of a stream of values in this format.
+	 */
+	public String getSequenceContentType() {
+		return sequenceContentType;
+	}
+
+	/**
+	 * Creates a mapper for each format, with the specified modules registered.
+	 *
+	 * @param modules The modules to register with each mapper.
+	 * @return The mappers, mapped by format.
+	 */
+	public static Map<WireFormat, ObjectMapper> createMappers(Module... modules) {
+		Map<WireFormat, ObjectMapper> mappers = new EnumMap<>(WireFormat.class);
+		for (WireFormat format : values()) {
+			// Each mapper needs its own factory, since mappers configure the factory they are created with.
+			ObjectMapper mapper = new ObjectMapper(format.factory.copy());
+			mapper.registerModules(modules);
+			mappers.put(format, mapper);
+		}
+		return Collections.unmodifiableMap(mappers);
+	}
+
+	/**
+	 * Chooses the format to respond to a request with. CBOR is only used if the {@code Accept} header lists
+	 * {@code application/cbor} with a quality at least as high as any JSON type it lists, so clients that don't ask for
+	 * CBOR (including those that accept {@code *}{@code /*}) receive JSON.
+	 *
+	 * @param request The request being responded to.
+	 * @return The format to respond with.
+	 */
+	public static WireFormat negotiate(HttpServletRequest request) {
+		String accept = request.getHeader("Accept");
+		if (accept == null) {
+			return JSON;
+		}
+
+		double cborQuality = 0;
+		double jsonQuality = 0;
+		for (String range : accept.split(",")) {
+			String[] parts = range.split(";");
+			String type = parts[0].trim().toLowerCase(Locale.ROOT);
+			double quality = 1;
+			for (int i = 1; i < parts.length; i++) {
+				String parameter = parts[i].trim();
+				if (parameter.startsWith("q=")) {
+					try {
+						quality = Double.parseDouble(parameter.substring(2));
+					} catch (NumberFormatException ex) {
+						quality = 0;
+					}
+				}
+			}
+
+			if (type.equals("application/cbor") || type.equals("application/cbor-seq")) {
+				cborQuality = Math.max(cborQuality, quality);
+			} else if (type.equals("text/json") || type.equals("application/json") || type.equals("application/x-ndjson")) {
+				jsonQuality = Math.max(jsonQuality, quality);
+			}
+		}
+		return cborQuality > 0 && cborQuality >= jsonQuality ? CBOR : JSON;
+	}
+}
@@ -0,0 +1,146 @@
+package gg.championmastery.highscoresService.leaderboard;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The highest scores for a single champion (or total points/level), kept in memory.
+ * <p>
+ * Readers always see an immutable snapshot of the leaderboard. Writers are serialized by synchronizing on the
+ * leaderboard, and publish a new snapshot after every change, so reads never block.
+ */
+public class ChampionLeaderboard {
+
+	private final short championId;
+	private final int capacity;
+	/** The version counter of the {@link LeaderboardIndex} that this leaderboard belongs to. */
+	private final AtomicLong indexVersion;
+	/** Entries sorted by {@link LeaderboardEntry#ORDER}. This list is never modified, only replaced. */
+	private volatile List<LeaderboardEntry> entries = Collections.emptyList();
+	private volatile long version;
+
+	/**
+	 * @param championId The ID of the champion (or -1 for total points, or -2 for total level).
+	 * @param capacity The maximum number of entries to keep.
+	 * @param indexVersion The version counter of the index that this leaderboard belongs to, which will be incremented
+	 * 		every time this leaderboard changes.
+	 */
+	ChampionLeaderboard(short championId, int capacity, AtomicLong indexVersion) {
+		this.championId = championId;
+		this.capacity = capacity;
+		this.indexVersion = indexVersion;
+		this.version = indexVersion.get();
+	}
+
+	public short getChampionId() {
+		return championId;
+	}
+
+	/**
+	 * Returns the version of the {@link LeaderboardIndex} when this leaderboard last changed. Versions only ever
+	 * increase, so this can be used to detect changes.
+	 *
+	 * @return The version of this leaderboard.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns a snapshot of every entry on this leaderboard.
+	 *
+	 * @return An immutable list of entries in descending order.
+	 */
+	public List<LeaderboardEntry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * Returns a snapshot of the highest entries on this leaderboard.
+	 *
+	 * @param count The maximum number of entries to return.
+	 * @return An immutable list of at most {@code count} entries in descending order.
+	 */
+	public List<LeaderboardEntry> getTop(int count) {
+		List<LeaderboardEntry> snapshot = entries;
+		return snapshot.size() <= count ? snapshot : snapshot.subList(0, count);
+	}
+
+	/**
+	 * Adds an entry to the leaderboard (replacing the player's existing entry if they already have one), or does
+	 * nothing if the leaderboard is full and the entry isn't high enough to be on it.
+	 *
+	 * @param entry The entry to add.
+	 */
+	synchronized void offer(LeaderboardEntry entry) {
+		List<LeaderboardEntry> current = entries;
+		int existingIndex = indexOf(current, entry.getPlayerId());
+		if (existingIndex == -1) {
+			if (current.size() >= capacity && LeaderboardEntry.ORDER.compare(entry, current.get(current.size() - 1)) > 0) {
+				return;
+			}
+		} else if (current.get(existingIndex).equals(entry)) {
+			return;
+		}
+
+		ArrayList<LeaderboardEntry> updated = new ArrayList<>(current);
+		if (existingIndex != -1) {
+			updated.remove(existingIndex);
+		}
+		int insertionPoint = Collections.binarySearch(updated, entry, LeaderboardEntry.ORDER);
+		updated.add(insertionPoint < 0 ? -insertionPoint - 1 : insertionPoint, entry);
+		if (updated.size() > capacity) {
+			updated.subList(capacity, updated.size()).clear();
+		}
+		publish(updated);
+	}
+
+	/**
+	 * Removes a player from the leaderboard if they are on it.
+	 *
+	 * @param playerId The ID of the player to remove.
+	 */
+	synchronized void remove(long playerId) {
+		List<LeaderboardEntry> current = entries;
+		int index = indexOf(current, playerId);
+		if (index != -1) {
+			ArrayList<LeaderboardEntry> updated = new ArrayList<>(current);
+			updated.remove(index);
+			publish(updated);
+		}
+	}
+
+	/**
+	 * Replaces every entry on the leaderboard.
+	 *
+	 * @param newEntries The new entries (in any order). Only the highest entries will be kept if there are more than
+	 * 		the leaderboard's capacity.
+	 */
+	synchronized void replaceAll(Collection<LeaderboardEntry> newEntries) {
+		ArrayList<LeaderboardEntry> updated = new ArrayList<>(newEntries);
+		updated.sort(LeaderboardEntry.ORDER);
+		if (updated.size() > capacity) {
+			updated.subList(capacity, updated.size()).clear();
+		}
+		if (!updated.equals(entries)) {
+			publish(updated);
+		}
+	}
+
+	private void publish(List<LeaderboardEntry> updated) {
+		entries = Collections.unmodifiableList(updated);
+		version = indexVersion.incrementAndGet();
+	}
+
+	private static int indexOf(List<LeaderboardEntry> entries, long playerId) {
+		for (int i = 0; i < entries.size(); i++) {
+			if (entries.get(i).getPlayerId() == playerId) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
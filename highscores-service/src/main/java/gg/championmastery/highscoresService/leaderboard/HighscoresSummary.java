@@ -0,0 +1,47 @@
+package gg.championmastery.highscoresService.leaderboard;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of the highest scores for every champion.
+ */
+public final class HighscoresSummary {
+
+	private final long version;
+	private final int length;
+	private final Map<Short, List<LeaderboardEntry>> highscores;
+
+	/**
+	 * @param version The version of the {@link LeaderboardIndex} that this summary was built from.
+	 * @param length The maximum number of scores listed for each champion.
+	 * @param highscores Immutable lists of scores in descending order, mapped by champion ID.
+	 */
+	HighscoresSummary(long version, int length, Map<Short, List<LeaderboardEntry>> highscores) {
+		this.version = version;
+		this.length = length;
+		this.highscores = highscores;
+	}
+
+	/**
+	 * Returns the version of the {@link LeaderboardIndex} that this summary was built from.
+	 *
+	 * @return The version of the {@link LeaderboardIndex} that this summary was built from.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Returns the highest scores for every champion.
+	 *
+	 * @return Immutable lists of scores in descending order, mapped by champion ID.
+	 */
+	public Map<Short, List<LeaderboardEntry>> getHighscores() {
+		return highscores;
+	}
+}
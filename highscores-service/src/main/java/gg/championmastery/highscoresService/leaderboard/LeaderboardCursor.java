@@ -0,0 +1,99 @@
+package gg.championmastery.highscoresService.leaderboard;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * The position after the last entry of a page of a champion leaderboard, from which the next page starts. Pages are
+ * read by seeking to the cursor in {@code IX_mastery_points} (keyset pagination), so every page costs the same no
+ * matter how deep it is.
+ * <p>
+ * Cursors are sent to clients as opaque tokens (see {@link #encode()}), which are only valid for the champion they
+ * were created for.
+ */
+public final class LeaderboardCursor {
+
+	/** Changed whenever the token format changes, so that old tokens are rejected rather than misread. */
+	private static final byte TOKEN_VERSION = 1;
+	private static final int TOKEN_LENGTH = 1 + Short.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+	private final short championId;
+	private final int points;
+	private final long playerId;
+	private final int position;
+
+	/**
+	 * @param championId The ID of the champion (or -1 for total points, or -2 for total level).
+	 * @param points The points of the last entry before the cursor.
+	 * @param playerId The player ID of the last entry before the cursor.
+	 * @param position The number of entries before the cursor.
+	 */
+	LeaderboardCursor(short championId, int points, long playerId, int position) {
+		this.championId = championId;
+		this.points = points;
+		this.playerId = playerId;
+		this.position = position;
+	}
+
+	/**
+	 * Decodes a token created by {@link #encode()}.
+	 *
+	 * @param championId The ID of the champion that the token is being used for.
+	 * @param token The token.
+	 * @return The cursor.
+	 * @throws IllegalArgumentException thrown if the token is invalid or was created for a different champion.
+	 */
+	public static LeaderboardCursor decode(short championId, String token) {
+		byte[] bytes = Base64.getUrlDecoder().decode(token);
+		if (bytes.length != TOKEN_LENGTH || bytes[0] != TOKEN_VERSION) {
+			throw new IllegalArgumentException("Invalid cursor");
+		}
+
+		ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, TOKEN_LENGTH - 1);
+		LeaderboardCursor cursor = new LeaderboardCursor(buffer.getShort(), buffer.getInt(), buffer.getLong(), buffer.getInt());
+		if (cursor.championId != championId) {
+			throw new IllegalArgumentException("Cursor is for a different champion");
+		}
+		if (cursor.points < 0 || cursor.position < 0) {
+			throw new IllegalArgumentException("Invalid cursor");
+		}
+		return cursor;
+	}
+
+	/**
+	 * Encodes this cursor as a URL-safe token.
+	 *
+	 * @return The token.
+	 */
+	public String encode() {
+		ByteBuffer buffer = ByteBuffer.allocate(TOKEN_LENGTH)
+				.put(TOKEN_VERSION)
+				.putShort(championId)
+				.putInt(points)
+				.putLong(playerId)
+				.putInt(position);
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+	}
+
+	public short getChampionId() {
+		return championId;
+	}
+
+	public int getPoints() {
+		return points;
+	}
+
+	public long getPlayerId() {
+		return playerId;
+	}
+
+	/**
+	 * Returns the number of entries before this cursor. Entries can move between pages while a client is paginating, so
+	 * this is only used to number entries and to limit how deep pages can go.
+	 *
+	 * @return The number of entries before this cursor.
+	 */
+	public int getPosition() {
+		return position;
+	}
+}
@@ -0,0 +1,76 @@
+package gg.championmastery.highscoresService.leaderboard;
+
+import java.util.Comparator;
+import java.util.Objects;
+
+/**
+ * An immutable entry in a {@link ChampionLeaderboard}.
+ */
+public final class LeaderboardEntry {
+
+	/**
+	 * Orders entries by mastery points (descending), then by player ID (ascending) so that ties are always ordered the
+	 * same way.
+	 */
+	public static final Comparator<LeaderboardEntry> ORDER = Comparator
+			.comparingInt(LeaderboardEntry::getPoints).reversed()
+			.thenComparingLong(LeaderboardEntry::getPlayerId);
+
+	private final long playerId;
+	private final String platform;
+	private final String displayName;
+	private final int points;
+
+	/**
+	 * @param playerId The player's ID (the {@code player_id} column of the {@code summoners} table).
+	 * @param platform The tag of the player's platform.
+	 * @param displayName The name that should be displayed for the player, or {@code null} if their name should be
+	 * 		hidden.
+	 * @param points The player's mastery points (or total points/level) for the champion.
+	 */
+	public LeaderboardEntry(long playerId, String platform, String displayName, int points) {
+		this.playerId = playerId;
+		this.platform = platform;
+		this.displayName = displayName;
+		this.points = points;
+	}
+
+	public long getPlayerId() {
+		return playerId;
+	}
+
+	public String getPlatform() {
+		return platform;
+	}
+
+	public String getDisplayName() {
+		return displayName;
+	}
+
+	public int getPoints() {
+		return points;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		LeaderboardEntry that = (LeaderboardEntry) o;
+		return playerId == that.playerId && points == that.points && platform.equals(that.platform) && Objects.equals(displayName, that.displayName);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(playerId, platform, displayName, points);
+	}
+
+	@Override
+	public String toString() {
+		return "LeaderboardEntry{" +
+				"playerId=" + playerId +
+				", platform='" + platform + '\'' +
+				", displayName='" + displayName + '\'' +
+				", points=" + points +
+				'}';
+	}
+}
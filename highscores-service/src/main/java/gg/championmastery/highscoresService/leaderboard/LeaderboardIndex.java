@@ -0,0 +1,216 @@
+package gg.championmastery.highscoresService.leaderboard;
+
+import gg.championmastery.highscoresService.persistence.SavedScores;
+import gg.championmastery.highscoresService.persistence.SummonerEntity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * In-memory leaderboards for every champion (including total points and total level), used to serve highscores without
+ * querying the database.
+ * <p>
+ * Leaderboards are stored in an array indexed by champion ID, so looking up a leaderboard never boxes the ID. Players
+ * with a {@link SummonerEntity.Status#TRANSFERRED} status are never listed.
+ * <p>
+ * Every change to a leaderboard increments the index's version, which is used to tell when cached data built from the
+ * index (such as a {@link HighscoresSummary}) is out of date.
+ */
+public class LeaderboardIndex {
+
+	private final int capacity;
+	/** Leaderboards indexed by champion ID (treated as an unsigned short, so -1 and -2 are stored at the end). */
+	private final AtomicReferenceArray<ChampionLeaderboard> leaderboards = new AtomicReferenceArray<>(1 << 16);
+	/** The IDs of every champion with a leaderboard, in ascending order. This array is never modified, only replaced. */
+	private volatile short[] championIds = new short[0];
+	private final AtomicLong version = new AtomicLong();
+	private volatile HighscoresSummary summary;
+	/**
+	 * Changes made while the index is being reloaded, which are re-applied once the reload finishes so that they aren't
+	 * overwritten by older data. This is {@code null} when no reload is in progress. Guarded by {@code this}.
+	 */
+	private List<Runnable> pendingChanges;
+
+	/**
+	 * @param capacity The maximum number of entries to keep for each champion.
+	 */
+	public LeaderboardIndex(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Returns the leaderboard for the specified champion.
+	 *
+	 * @param championId The ID of the champion (or -1 for total points, or -2 for total level).
+	 * @return The leaderboard for the champion, or {@code null} if no scores have been recorded for it.
+	 */
+	public ChampionLeaderboard getLeaderboard(short championId) {
+		return leaderboards.get(Short.toUnsignedInt(championId));
+	}
+
+	/**
+	 * Returns the highest scores for the specified champion.
+	 *
+	 * @param championId The ID of the champion (or -1 for total points, or -2 for total level).
+	 * @param count The maximum number of scores to return.
+	 * @return An immutable list of at most {@code count} entries in descending order (which will be empty if no scores
+	 * 		have been recorded for the champion).
+	 */
+	public List<LeaderboardEntry> getHighscores(short championId, int count) {
+		ChampionLeaderboard leaderboard = getLeaderboard(championId);
+		return leaderboard == null ? Collections.emptyList() : leaderboard.getTop(count);
+	}
+
+	/**
+	 * Returns the lowest score that is currently in the top {@code length} scores for the specified champion.
+	 *
+	 * @param championId The ID of the champion (or -1 for total points, or -2 for total level).
+	 * @param length The number of scores that are shown.
+	 * @return The lowest score shown, or 0 if fewer than {@code length} scores have been recorded for the champion.
+	 */
+	public int getCutoff(short championId, int length) {
+		List<LeaderboardEntry> entries = getHighscores(championId, length);
+		return entries.size() < length ? 0 : entries.get(length - 1).getPoints();
+	}
+
+	/**
+	 * Returns the current version of the index. Versions only ever increase, and the version changes every time any
+	 * leaderboard changes.
+	 *
+	 * @return The current version of the index.
+	 */
+	public long getVersion() {
+		return version.get();
+	}
+
+	/**
+	 * Returns the highest scores for every champion. The summary is cached until the index changes.
+	 *
+	 * @param length The maximum number of scores to include for each champion.
+	 * @return A snapshot of the highest scores for every champion.
+	 */
+	public HighscoresSummary getSummary(int length) {
+		HighscoresSummary cached = summary;
+		if (cached != null && cached.getVersion() == version.get() && cached.getLength() == length) {
+			return cached;
+		}
+
+		// Read the version before the leaderboards, so the summary can only be newer than its version (not older).
+		long currentVersion = version.get();
+		LinkedHashMap<Short, List<LeaderboardEntry>> highscores = new LinkedHashMap<>();
+		for (short championId : championIds) {
+			highscores.put(championId, getLeaderboard(championId).getTop(length));
+		}
+		HighscoresSummary newSummary = new HighscoresSummary(currentVersion, length, Collections.unmodifiableMap(highscores));
+		summary = newSummary;
+		return newSummary;
+	}
+
+	/**
+	 * Updates every leaderboard that the summoner's scores qualify for. This should be called after the scores have
+	 * been committed to the database.
+	 *
+	 * @param saved The summoner and scores that were saved.
+	 */
+	public synchronized void update(SavedScores saved) {
+		if (saved.getStatus() == SummonerEntity.Status.TRANSFERRED) {
+			removePlayer(saved.getPlayerId());
+			return;
+		}
+
+		for (Map.Entry<Short, Integer> score : saved.getScores().getScores().entrySet()) {
+			short championId = score.getKey();
+			LeaderboardEntry entry = new LeaderboardEntry(saved.getPlayerId(), saved.getScores().getPlatform(), saved.getDisplayName(), score.getValue());
+			getOrCreateLeaderboard(championId).offer(entry);
+			if (pendingChanges != null) {
+				pendingChanges.add(() -> getOrCreateLeaderboard(championId).offer(entry));
+			}
+		}
+	}
+
+	/**
+	 * Removes a player from every leaderboard.
+	 *
+	 * @param playerId The ID of the player to remove.
+	 */
+	public synchronized void removePlayer(long playerId) {
+		for (short championId : championIds) {
+			getLeaderboard(championId).remove(playerId);
+		}
+		if (pendingChanges != null) {
+			pendingChanges.add(() -> {
+				for (short championId : championIds) {
+					getLeaderboard(championId).remove(playerId);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Starts reloading the index. This must be called before reading the data that will be passed to
+	 * {@link #finishReload(Map)}, so that any changes made in the meantime can be re-applied afterwards.
+	 */
+	public synchronized void beginReload() {
+		pendingChanges = new ArrayList<>();
+	}
+
+	/**
+	 * Replaces every leaderboard with the specified entries, then re-applies any changes that were made since
+	 * {@link #beginReload()} was called. Leaderboards for champions that aren't included will be emptied.
+	 *
+	 * @param entries The new entries for each leaderboard, mapped by champion ID.
+	 */
+	public synchronized void finishReload(Map<Short, ? extends Collection<LeaderboardEntry>> entries) {
+		for (short championId : championIds) {
+			if (!entries.containsKey(championId)) {
+				getLeaderboard(championId).replaceAll(Collections.emptyList());
+			}
+		}
+		for (Map.Entry<Short, ? extends Collection<LeaderboardEntry>> championEntries : entries.entrySet()) {
+			getOrCreateLeaderboard(championEntries.getKey()).replaceAll(championEntries.getValue());
+		}
+
+		if (pendingChanges != null) {
+			for (Runnable change : pendingChanges) {
+				change.run();
+			}
+			pendingChanges = null;
+		}
+	}
+
+	/**
+	 * Stops reloading the index without changing any leaderboards (e.g. if the new data could not be loaded).
+	 */
+	public synchronized void cancelReload() {
+		pendingChanges = null;
+	}
+
+	private ChampionLeaderboard getOrCreateLeaderboard(short championId) {
+		ChampionLeaderboard leaderboard = getLeaderboard(championId);
+		if (leaderboard != null) {
+			return leaderboard;
+		}
+
+		synchronized (this) {
+			int index = Short.toUnsignedInt(championId);
+			leaderboard = leaderboards.get(index);
+			if (leaderboard == null) {
+				leaderboard = new ChampionLeaderboard(championId, capacity, version);
+				leaderboards.set(index, leaderboard);
+
+				short[] ids = Arrays.copyOf(championIds, championIds.length + 1);
+				ids[ids.length - 1] = championId;
+				Arrays.sort(ids);
+				championIds = ids;
+			}
+			return leaderboard;
+		}
+	}
+}
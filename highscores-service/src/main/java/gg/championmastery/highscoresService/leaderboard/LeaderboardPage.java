@@ -0,0 +1,69 @@
+package gg.championmastery.highscoresService.leaderboard;
+
+import java.util.List;
+
+/**
+ * A page of a champion leaderboard.
+ */
+public final class LeaderboardPage {
+
+	private final short championId;
+	private final int firstRank;
+	private final List<LeaderboardEntry> entries;
+	private final LeaderboardCursor next;
+
+	/**
+	 * @param championId The ID of the champion (or -1 for total points, or -2 for total level).
+	 * @param firstRank The rank of the first entry on the page.
+	 * @param entries The entries on the page, sorted by {@link LeaderboardEntry#ORDER}.
+	 * @param next The cursor for the next page, or {@code null} if this is the last page.
+	 */
+	public LeaderboardPage(short championId, int firstRank, List<LeaderboardEntry> entries, LeaderboardCursor next) {
+		this.championId = championId;
+		this.firstRank = firstRank;
+		this.entries = entries;
+		this.next = next;
+	}
+
+	/**
+	 * Creates a page from entries that were read starting at a cursor.
+	 *
+	 * @param championId The ID of the champion (or -1 for total points, or -2 for total level).
+	 * @param after The cursor that the page was read from, or {@code null} for the first page.
+	 * @param entries The entries on the page, sorted by {@link LeaderboardEntry#ORDER}.
+	 * @param hasMore Whether there are more entries after the page.
+	 * @param maxDepth The number of entries that can be browsed, after which there are no more pages.
+	 * @return The page.
+	 */
+	public static LeaderboardPage of(short championId, LeaderboardCursor after, List<LeaderboardEntry> entries, boolean hasMore, int maxDepth) {
+		int position = after == null ? 0 : after.getPosition();
+		int end = position + entries.size();
+		LeaderboardCursor next = null;
+		if (hasMore && !entries.isEmpty() && end < maxDepth) {
+			LeaderboardEntry last = entries.get(entries.size() - 1);
+			next = new LeaderboardCursor(championId, last.getPoints(), last.getPlayerId(), end);
+		}
+		return new LeaderboardPage(championId, position + 1, entries, next);
+	}
+
+	public short getChampionId() {
+		return championId;
+	}
+
+	public int getFirstRank() {
+		return firstRank;
+	}
+
+	public List<LeaderboardEntry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * Returns the cursor for the next page.
+	 *
+	 * @return The cursor for the next page, or {@code null} if this is the last page.
+	 */
+	public LeaderboardCursor getNext() {
+		return next;
+	}
+}
@@ -0,0 +1,41 @@
+package gg.championmastery.highscoresService.leaderboard;
+
+/**
+ * The exact rank of one of a player's scores, globally and on the player's platform. Tied scores share the same rank.
+ */
+public final class PlayerRank {
+
+	private final short championId;
+	private final int points;
+	private final long globalRank;
+	private final long regionalRank;
+
+	/**
+	 * @param championId The ID of the champion (or -1 for total points, or -2 for total level).
+	 * @param points The player's score.
+	 * @param globalRank The rank of the score among every saved score for the champion.
+	 * @param regionalRank The rank of the score among saved scores for the champion on the player's platform.
+	 */
+	public PlayerRank(short championId, int points, long globalRank, long regionalRank) {
+		this.championId = championId;
+		this.points = points;
+		this.globalRank = globalRank;
+		this.regionalRank = regionalRank;
+	}
+
+	public short getChampionId() {
+		return championId;
+	}
+
+	public int getPoints() {
+		return points;
+	}
+
+	public long getGlobalRank() {
+		return globalRank;
+	}
+
+	public long getRegionalRank() {
+		return regionalRank;
+	}
+}
@@ -0,0 +1,223 @@
+package gg.championmastery.highscoresService.leaderboard;
+
+import gg.championmastery.highscoresService.persistence.SavedScores;
+import gg.championmastery.highscoresService.persistence.SummonerEntity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Every saved score for every champion (including total points and total level), both globally and for each platform,
+ * used to find exact ranks without querying the database. Players with a {@link SummonerEntity.Status#TRANSFERRED}
+ * status are not counted.
+ * <p>
+ * Indexes are built once from the database (see {@link #beginBuild()}), and are then kept up to date with
+ * {@link #update(SavedScores)}.
+ */
+public class PlayerRankIndex {
+
+	/** Global indexes, indexed by champion ID (treated as an unsigned short, so -1 and -2 are stored at the end). */
+	private volatile AtomicReferenceArray<SortedScoreIndex> global = new AtomicReferenceArray<>(1 << 16);
+	/** Indexes for each platform, mapped by platform tag and then indexed by champion ID. */
+	private volatile Map<String, AtomicReferenceArray<SortedScoreIndex>> regional = new ConcurrentHashMap<>();
+	private volatile boolean ready;
+	/**
+	 * Updates made while the indexes are being built, which are applied once the build finishes. This is {@code null}
+	 * when no build is in progress. Guarded by {@code this}.
+	 */
+	private List<SavedScores> pendingUpdates;
+
+	/**
+	 * Returns whether the indexes have been built.
+	 *
+	 * @return {@code true} if ranks are available.
+	 */
+	public boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * Finds the global rank of a score. Tied scores share the same rank.
+	 *
+	 * @param championId The ID of the champion (or -1 for total points, or -2 for total level).
+	 * @param points The number of points (or levels, for total level).
+	 * @return The rank of the score (where 1 is the highest).
+	 */
+	public long getGlobalRank(short championId, int points) {
+		return getRank(global, championId, points);
+	}
+
+	/**
+	 * Finds the rank of a score among scores on the same platform. Tied scores share the same rank.
+	 *
+	 * @param platform The tag of the platform.
+	 * @param championId The ID of the champion (or -1 for total points, or -2 for total level).
+	 * @param points The number of points (or levels, for total level).
+	 * @return The rank of the score (where 1 is the highest).
+	 */
+	public long getRegionalRank(String platform, short championId, int points) {
+		AtomicReferenceArray<SortedScoreIndex> indexes = regional.get(platform);
+		return indexes == null ? 1 : getRank(indexes, championId, points);
+	}
+
+	/**
+	 * Updates the indexes with a summoner's new scores. This should be called after the scores have been committed to
+	 * the database.
+	 *
+	 * @param saved The summoner and scores that were saved.
+	 */
+	public synchronized void update(SavedScores saved) {
+		if (pendingUpdates != null) {
+			pendingUpdates.add(saved);
+		}
+		apply(global, regional, saved);
+	}
+
+	/**
+	 * Starts building the indexes. Scores must then be passed to the returned builder, followed by
+	 * {@link Builder#finish()}. Updates made in the meantime are applied once the build finishes.
+	 *
+	 * @return The builder.
+	 */
+	public synchronized Builder beginBuild() {
+		pendingUpdates = new ArrayList<>();
+		return new Builder();
+	}
+
+	private static long getRank(AtomicReferenceArray<SortedScoreIndex> indexes, short championId, int points) {
+		SortedScoreIndex index = indexes.get(Short.toUnsignedInt(championId));
+		return index == null ? 1 : index.countAbove(points) + 1;
+	}
+
+	private static void apply(AtomicReferenceArray<SortedScoreIndex> global, Map<String, AtomicReferenceArray<SortedScoreIndex>> regional, SavedScores saved) {
+		AtomicReferenceArray<SortedScoreIndex> platformIndexes = regional.computeIfAbsent(saved.getScores().getPlatform(), platform -> new AtomicReferenceArray<>(1 << 16));
+		// Scores of transferred players were never counted, so there's nothing to replace.
+		Map<Short, Integer> previousScores = saved.wasListed() ? saved.getPreviousScores() : Collections.<Short, Integer>emptyMap();
+		if (saved.getStatus() == SummonerEntity.Status.TRANSFERRED) {
+			for (Map.Entry<Short, Integer> score : previousScores.entrySet()) {
+				getOrCreateIndex(global, score.getKey()).remove(score.getValue());
+				getOrCreateIndex(platformIndexes, score.getKey()).remove(score.getValue());
+			}
+			return;
+		}
+
+		for (Map.Entry<Short, Integer> score : saved.getScores().getScores().entrySet()) {
+			Integer previous = previousScores.get(score.getKey());
+			for (SortedScoreIndex index : new SortedScoreIndex[]{getOrCreateIndex(global, score.getKey()), getOrCreateIndex(platformIndexes, score.getKey())}) {
+				if (previous != null) {
+					index.remove(previous);
+				}
+				index.add(score.getValue());
+			}
+		}
+	}
+
+	private static SortedScoreIndex getOrCreateIndex(AtomicReferenceArray<SortedScoreIndex> indexes, short championId) {
+		int i = Short.toUnsignedInt(championId);
+		SortedScoreIndex index = indexes.get(i);
+		if (index == null) {
+			indexes.compareAndSet(i, null, SortedScoreIndex.empty());
+			index = indexes.get(i);
+		}
+		return index;
+	}
+
+	/**
+	 * Builds new indexes from the database. Global and regional scores are each added in descending order of points
+	 * for each champion, so that they can be written straight into the indexes without sorting.
+	 */
+	public class Builder {
+		private final AtomicReferenceArray<SortedScoreIndex> newGlobal = new AtomicReferenceArray<>(1 << 16);
+		private final Map<String, AtomicReferenceArray<SortedScoreIndex>> newRegional = new ConcurrentHashMap<>();
+		private final Map<Short, SortedScoreIndex.Builder> globalBuilders = new HashMap<>();
+		private final Map<String, Map<Short, SortedScoreIndex.Builder>> regionalBuilders = new HashMap<>();
+		private final List<ExcludedScore> excluded = new ArrayList<>();
+
+		private Builder() {
+		}
+
+		/**
+		 * Adds a score to the global index for a champion. Scores for each champion must be added in descending order.
+		 */
+		public void addGlobal(short championId, int points) {
+			globalBuilders.computeIfAbsent(championId, id -> new SortedScoreIndex.Builder()).add(points);
+		}
+
+		/**
+		 * Adds a score to a platform's index for a champion. Scores for each platform and champion must be added in
+		 * descending order.
+		 */
+		public void addRegional(String platform, short championId, int points) {
+			regionalBuilders.computeIfAbsent(platform, tag -> new HashMap<>())
+					.computeIfAbsent(championId, id -> new SortedScoreIndex.Builder())
+					.add(points);
+		}
+
+		/**
+		 * Removes a score that was added with {@link #addGlobal(short, int)} and
+		 * {@link #addRegional(String, short, int)} (e.g. because it belongs to a transferred player).
+		 */
+		public void exclude(String platform, short championId, int points) {
+			excluded.add(new ExcludedScore(platform, championId, points));
+		}
+
+		/**
+		 * Replaces the current indexes with the new ones, after applying any updates that were made during the build.
+		 */
+		public void finish() {
+			for (Map.Entry<Short, SortedScoreIndex.Builder> builder : globalBuilders.entrySet()) {
+				newGlobal.set(Short.toUnsignedInt(builder.getKey()), builder.getValue().build());
+			}
+			for (Map.Entry<String, Map<Short, SortedScoreIndex.Builder>> platformBuilders : regionalBuilders.entrySet()) {
+				AtomicReferenceArray<SortedScoreIndex> indexes = new AtomicReferenceArray<>(1 << 16);
+				for (Map.Entry<Short, SortedScoreIndex.Builder> builder : platformBuilders.getValue().entrySet()) {
+					indexes.set(Short.toUnsignedInt(builder.getKey()), builder.getValue().build());
+				}
+				newRegional.put(platformBuilders.getKey(), indexes);
+			}
+			for (ExcludedScore score : excluded) {
+				getOrCreateIndex(newGlobal, score.championId).remove(score.points);
+				AtomicReferenceArray<SortedScoreIndex> platformIndexes = newRegional.computeIfAbsent(score.platform, platform -> new AtomicReferenceArray<>(1 << 16));
+				getOrCreateIndex(platformIndexes, score.championId).remove(score.points);
+			}
+
+			synchronized (PlayerRankIndex.this) {
+				// An update that was committed just before the scores were read may be counted twice. This only affects
+				// the few players who were saved while the indexes were being built.
+				for (SavedScores saved : pendingUpdates) {
+					apply(newGlobal, newRegional, saved);
+				}
+				pendingUpdates = null;
+				global = newGlobal;
+				regional = newRegional;
+				ready = true;
+			}
+		}
+
+		/**
+		 * Stops building without changing the current indexes (e.g. if the scores could not be loaded).
+		 */
+		public void cancel() {
+			synchronized (PlayerRankIndex.this) {
+				pendingUpdates = null;
+			}
+		}
+	}
+
+	private static final class ExcludedScore {
+		private final String platform;
+		private final short championId;
+		private final int points;
+
+		private ExcludedScore(String platform, short championId, int points) {
+			this.platform = platform;
+			this.championId = championId;
+			this.points = points;
+		}
+	}
+}
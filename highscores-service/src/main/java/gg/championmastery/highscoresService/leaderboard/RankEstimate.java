@@ -0,0 +1,53 @@
+package gg.championmastery.highscoresService.leaderboard;
+
+/**
+ * The estimated rank of a score, among every score that has been saved for the champion.
+ */
+public final class RankEstimate {
+
+	private final short championId;
+	private final int points;
+	private final long rank;
+	private final long total;
+
+	/**
+	 * @param championId The ID of the champion (or -1 for total points, or -2 for total level).
+	 * @param points The score that was ranked.
+	 * @param rank The estimated rank of the score (where 1 is the highest).
+	 * @param total The number of scores that have been saved for the champion.
+	 */
+	RankEstimate(short championId, int points, long rank, long total) {
+		this.championId = championId;
+		this.points = points;
+		this.rank = rank;
+		this.total = total;
+	}
+
+	public short getChampionId() {
+		return championId;
+	}
+
+	public int getPoints() {
+		return points;
+	}
+
+	public long getRank() {
+		return rank;
+	}
+
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * Returns the percentage of saved scores that are lower than or equal to this score.
+	 *
+	 * @return A percentage between 0 and 100.
+	 */
+	public double getPercentile() {
+		if (total == 0) {
+			return 0;
+		}
+		return 100.0 * (total - rank + 1) / total;
+	}
+}
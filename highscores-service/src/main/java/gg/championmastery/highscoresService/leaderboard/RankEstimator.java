@@ -0,0 +1,163 @@
+package gg.championmastery.highscoresService.leaderboard;
+
+import gg.championmastery.highscoresService.persistence.SavedScores;
+import gg.championmastery.highscoresService.persistence.SummonerEntity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Estimates the rank of any score for every champion (including total points and total level), using a
+ * {@link ScoreSketch} of every score in {@code mastery_scores}. Only scores that are high enough to be saved are
+ * counted, and players with a {@link SummonerEntity.Status#TRANSFERRED} status are not counted.
+ * <p>
+ * Sketches are built once by streaming every score from the database (see {@link #beginBuild()}), and are then kept
+ * up to date with {@link #update(SavedScores)}.
+ */
+public class RankEstimator {
+
+	/** Sketches indexed by champion ID (treated as an unsigned short, so -1 and -2 are stored at the end). */
+	private volatile AtomicReferenceArray<ScoreSketch> sketches = new AtomicReferenceArray<>(1 << 16);
+	private volatile boolean ready;
+	/**
+	 * Updates made while the sketches are being built, which are applied once the build finishes. This is {@code null}
+	 * when no build is in progress. Guarded by {@code this}.
+	 */
+	private List<SavedScores> pendingUpdates;
+
+	/**
+	 * Estimates the rank of a score.
+	 *
+	 * @param championId The ID of the champion (or -1 for total points, or -2 for total level).
+	 * @param points The number of points (or levels, for total level).
+	 * @return The estimated rank, or {@code null} if the sketches haven't been built yet or no scores have been recorded
+	 * 		for the champion.
+	 */
+	public RankEstimate estimate(short championId, int points) {
+		if (!ready) {
+			return null;
+		}
+		ScoreSketch sketch = sketches.get(Short.toUnsignedInt(championId));
+		if (sketch == null) {
+			return null;
+		}
+
+		long total = sketch.getTotal();
+		long rank = Math.round(sketch.countAbove(points)) + 1;
+		return new RankEstimate(championId, points, Math.min(rank, total + 1), total);
+	}
+
+	/**
+	 * Returns whether the sketches have been built.
+	 *
+	 * @return {@code true} if estimates are available.
+	 */
+	public boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * Updates the sketches with a summoner's new scores. This should be called after the scores have been committed to
+	 * the database.
+	 *
+	 * @param saved The summoner and scores that were saved.
+	 */
+	public synchronized void update(SavedScores saved) {
+		if (pendingUpdates != null) {
+			pendingUpdates.add(saved);
+		}
+		apply(sketches, saved);
+	}
+
+	/**
+	 * Starts building the sketches. Every score must then be passed to the returned builder, followed by
+	 * {@link Builder#finish()}. Updates made in the meantime are applied once the build finishes.
+	 *
+	 * @return The builder.
+	 */
+	public synchronized Builder beginBuild() {
+		pendingUpdates = new ArrayList<>();
+		return new Builder();
+	}
+
+	private static void apply(AtomicReferenceArray<ScoreSketch> sketches, SavedScores saved) {
+		// Scores of transferred players were never counted, so there's nothing to replace.
+		Map<Short, Integer> previousScores = saved.wasListed() ? saved.getPreviousScores() : Collections.<Short, Integer>emptyMap();
+		if (saved.getStatus() == SummonerEntity.Status.TRANSFERRED) {
+			for (Map.Entry<Short, Integer> score : previousScores.entrySet()) {
+				ScoreSketch sketch = sketches.get(Short.toUnsignedInt(score.getKey()));
+				if (sketch != null) {
+					sketch.remove(score.getValue());
+				}
+			}
+			return;
+		}
+
+		for (Map.Entry<Short, Integer> score : saved.getScores().getScores().entrySet()) {
+			ScoreSketch sketch = getOrCreateSketch(sketches, score.getKey());
+			Integer previous = previousScores.get(score.getKey());
+			if (previous != null) {
+				sketch.remove(previous);
+			}
+			sketch.add(score.getValue());
+		}
+	}
+
+	private static ScoreSketch getOrCreateSketch(AtomicReferenceArray<ScoreSketch> sketches, short championId) {
+		int index = Short.toUnsignedInt(championId);
+		ScoreSketch sketch = sketches.get(index);
+		if (sketch == null) {
+			sketches.compareAndSet(index, null, new ScoreSketch());
+			sketch = sketches.get(index);
+		}
+		return sketch;
+	}
+
+	/**
+	 * Builds new sketches from every score in the database.
+	 */
+	public class Builder {
+		private final AtomicReferenceArray<ScoreSketch> newSketches = new AtomicReferenceArray<>(1 << 16);
+
+		private Builder() {
+		}
+
+		/**
+		 * Records a score.
+		 *
+		 * @param championId The ID of the champion (or -1 for total points, or -2 for total level).
+		 * @param points The number of points (or levels, for total level).
+		 */
+		public void add(short championId, int points) {
+			getOrCreateSketch(newSketches, championId).add(points);
+		}
+
+		/**
+		 * Replaces the current sketches with the new ones, after applying any updates that were made during the build.
+		 */
+		public void finish() {
+			synchronized (RankEstimator.this) {
+				// An update that was committed just before the scores were read may be counted twice, which is an
+				// acceptable error for an estimate.
+				for (SavedScores saved : pendingUpdates) {
+					apply(newSketches, saved);
+				}
+				pendingUpdates = null;
+				sketches = newSketches;
+				ready = true;
+			}
+		}
+
+		/**
+		 * Stops building without changing the current sketches (e.g. if the scores could not be loaded).
+		 */
+		public void cancel() {
+			synchronized (RankEstimator.this) {
+				pendingUpdates = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package gg.championmastery.highscoresService.leaderboard;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * An approximate distribution of the scores for a single champion, used to estimate the rank of any score.
+ * <p>
+ * Scores are counted in log-linear buckets: scores below 128 each have their own bucket, and every power of two above
+ * that is split into 128 equally sized buckets. Each bucket is therefore at most 1/128th (under 0.8%) as wide as the
+ * scores it contains, and every non-negative {@code int} fits into {@value #BUCKET_COUNT} buckets. Bucket counts are
+ * stored in a Fenwick tree, so both updates and rank queries take {@code O(log(buckets))} time.
+ */
+public class ScoreSketch {
+
+	/** The number of bits of each score (after the leading bit) that are used to choose its bucket. */
+	private static final int PRECISION = 7;
+	private static final int SUB_BUCKETS = 1 << PRECISION;
+	/** 128 exact buckets, plus 128 buckets for each power of two from 2^7 to 2^30. */
+	static final int BUCKET_COUNT = SUB_BUCKETS + (31 - PRECISION) * SUB_BUCKETS;
+
+	private final StampedLock lock = new StampedLock();
+	/** A Fenwick tree of bucket counts, indexed from 1. Guarded by {@link #lock}. */
+	private final long[] tree = new long[BUCKET_COUNT + 1];
+	/** The number of scores in each bucket. Guarded by {@link #lock}. */
+	private final long[] counts = new long[BUCKET_COUNT];
+	/** Guarded by {@link #lock}. */
+	private long total;
+
+	/**
+	 * Records a score.
+	 *
+	 * @param points The number of points (which must not be negative).
+	 */
+	public void add(int points) {
+		update(points, 1);
+	}
+
+	/**
+	 * Removes a score that was previously recorded.
+	 *
+	 * @param points The number of points (which must not be negative).
+	 */
+	public void remove(int points) {
+		update(points, -1);
+	}
+
+	/**
+	 * Returns the number of scores that have been recorded.
+	 *
+	 * @return The number of scores that have been recorded.
+	 */
+	public long getTotal() {
+		long stamp = lock.tryOptimisticRead();
+		long result = total;
+		if (!lock.validate(stamp)) {
+			stamp = lock.readLock();
+			try {
+				result = total;
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Estimates how many recorded scores are higher than {@code points}. Scores are assumed to be evenly spread within
+	 * each bucket.
+	 *
+	 * @param points The number of points.
+	 * @return The estimated number of higher scores.
+	 */
+	public double countAbove(int points) {
+		long stamp = lock.tryOptimisticRead();
+		double result = countAboveUnlocked(points);
+		if (!lock.validate(stamp)) {
+			stamp = lock.readLock();
+			try {
+				result = countAboveUnlocked(points);
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+		return result;
+	}
+
+	private double countAboveUnlocked(int points) {
+		if (points < 0) {
+			return total;
+		}
+
+		int bucket = getBucket(points);
+		long lower = getLowerBound(bucket);
+		long width = getWidth(bucket);
+		// Scores in higher buckets, plus the fraction of this bucket's scores that are above the points.
+		double above = total - prefixSum(bucket + 1);
+		above += counts[bucket] * (double) (lower + width - 1 - points) / width;
+		return above;
+	}
+
+	private void update(int points, int delta) {
+		if (points < 0) {
+			throw new IllegalArgumentException("Scores must not be negative (got " + points + ")");
+		}
+
+		int bucket = getBucket(points);
+		long stamp = lock.writeLock();
+		try {
+			counts[bucket] += delta;
+			total += delta;
+			for (int i = bucket + 1; i <= BUCKET_COUNT; i += i & -i) {
+				tree[i] += delta;
+			}
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Returns the number of scores in the first {@code buckets} buckets.
+	 */
+	private long prefixSum(int buckets) {
+		long sum = 0;
+		for (int i = buckets; i > 0; i -= i & -i) {
+			sum += tree[i];
+		}
+		return sum;
+	}
+
+	static int getBucket(int points) {
+		if (points < SUB_BUCKETS) {
+			return points;
+		}
+		int exponent = 31 - Integer.numberOfLeadingZeros(points);
+		int subBucket = (points >>> (exponent - PRECISION)) & (SUB_BUCKETS - 1);
+		return SUB_BUCKETS + (exponent - PRECISION) * SUB_BUCKETS + subBucket;
+	}
+
+	static long getLowerBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+		int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+		return (long) (SUB_BUCKETS + subBucket) << shift;
+	}
+
+	static long getWidth(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return 1;
+		}
+		return 1L << ((bucket - SUB_BUCKETS) / SUB_BUCKETS);
+	}
+}
@@ -0,0 +1,344 @@
+package gg.championmastery.highscoresService.leaderboard;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Every score for a single champion (and optionally a single platform), used to find the exact rank of a score.
+ * <p>
+ * Scores are stored in descending order in a direct buffer, so large indexes live outside of the Java heap and don't
+ * add to garbage collection work. Changes are recorded in two small sorted arrays of added and removed scores, which
+ * are merged into a new buffer on a background thread once they grow too large, so that writers never wait for a
+ * rebuild. Readers never lock: they read an immutable snapshot of the buffer and both arrays, and find a score's rank
+ * with three binary searches.
+ */
+public class SortedScoreIndex {
+
+	/** The number of pending changes that causes the buffer to be rebuilt. */
+	private static final int MAX_CHANGES = 4096;
+	/** Rebuilds buffers, one at a time, for every index. */
+	private static final ExecutorService merger = Executors.newSingleThreadExecutor(
+			new ThreadFactoryBuilder().setNameFormat("score-index-merger-%d").setDaemon(true).build());
+
+	private volatile Snapshot snapshot;
+	/** Whether a rebuild of the buffer has been started and not yet published. Guarded by {@code this}. */
+	private boolean merging;
+
+	private SortedScoreIndex(IntBuffer scores) {
+		snapshot = new Snapshot(scores, new int[0], new int[0]);
+	}
+
+	/**
+	 * Creates an empty index.
+	 *
+	 * @return The index.
+	 */
+	public static SortedScoreIndex empty() {
+		return new SortedScoreIndex(allocate(0));
+	}
+
+	/**
+	 * Returns the number of scores in the index that are higher than {@code points}. The rank of a score is one more
+	 * than this (so tied scores share the same rank).
+	 *
+	 * @param points The number of points.
+	 * @return The number of higher scores.
+	 */
+	public long countAbove(int points) {
+		Snapshot current = snapshot;
+		return countAbove(current.scores, points) + countAbove(current.added, points) - countAbove(current.removed, points);
+	}
+
+	/**
+	 * Returns the number of scores in the index.
+	 *
+	 * @return The number of scores in the index.
+	 */
+	public long size() {
+		Snapshot current = snapshot;
+		return (long) current.scores.limit() + current.added.length - current.removed.length;
+	}
+
+	/**
+	 * Returns the number of added and removed scores that haven't been merged into the buffer yet.
+	 *
+	 * @return The number of pending changes.
+	 */
+	int getPendingChanges() {
+		Snapshot current = snapshot;
+		return current.added.length + current.removed.length;
+	}
+
+	/**
+	 * Adds a score to the index.
+	 *
+	 * @param points The number of points.
+	 */
+	public synchronized void add(int points) {
+		Snapshot current = snapshot;
+		int removedIndex = indexOf(current.removed, points);
+		if (removedIndex >= 0) {
+			publish(current.scores, current.added, without(current.removed, removedIndex));
+		} else {
+			publish(current.scores, with(current.added, points), current.removed);
+		}
+	}
+
+	/**
+	 * Removes a score from the index. Nothing happens if the index does not contain the score.
+	 *
+	 * @param points The number of points.
+	 */
+	public synchronized void remove(int points) {
+		Snapshot current = snapshot;
+		int addedIndex = indexOf(current.added, points);
+		if (addedIndex >= 0) {
+			publish(current.scores, without(current.added, addedIndex), current.removed);
+			return;
+		}
+
+		long stored = countAbove(current.scores, points - 1L) - countAbove(current.scores, points);
+		long removed = countAbove(current.removed, points - 1L) - countAbove(current.removed, points);
+		if (stored > removed) {
+			publish(current.scores, current.added, with(current.removed, points));
+		}
+	}
+
+	/** Must be called while synchronized on {@code this}. */
+	private void publish(IntBuffer scores, int[] added, int[] removed) {
+		Snapshot published = new Snapshot(scores, added, removed);
+		snapshot = published;
+		if (added.length + removed.length > MAX_CHANGES && !merging) {
+			merging = true;
+			merger.execute(() -> finishMerge(published, merge(published.scores, published.added, published.removed)));
+		}
+	}
+
+	/**
+	 * Replaces the buffer with one that was merged from an earlier snapshot. Changes made since that snapshot are kept
+	 * as the new snapshot's added and removed scores.
+	 *
+	 * @param merged The snapshot that was merged.
+	 * @param scores The merged buffer.
+	 */
+	private synchronized void finishMerge(Snapshot merged, IntBuffer scores) {
+		merging = false;
+		Snapshot current = snapshot;
+		// The current snapshot counts current.added - current.removed on top of the old buffer, and the merged buffer
+		// already includes merged.added - merged.removed, so only the (signed) difference between them is still pending.
+		// Scores can be in merged.added but not current.added (or vice versa) if they were removed (or re-added) since.
+		int[] plus = union(current.added, merged.removed);
+		int[] minus = union(current.removed, merged.added);
+		publish(scores, difference(plus, minus), difference(minus, plus));
+	}
+
+	/**
+	 * Creates a new buffer containing every score in {@code scores} and {@code added}, except those in {@code removed}.
+	 * Every score in {@code removed} must be in {@code scores}. Runs of unchanged scores are copied in bulk.
+	 */
+	private static IntBuffer merge(IntBuffer scores, int[] added, int[] removed) {
+		IntBuffer merged = allocate(scores.limit() + added.length - removed.length);
+		int copied = 0;
+		int addedIndex = 0;
+		int removedIndex = 0;
+		while (addedIndex < added.length || removedIndex < removed.length) {
+			int addAt = addedIndex < added.length ? Math.max((int) countAbove(scores, added[addedIndex]), copied) : Integer.MAX_VALUE;
+			int removeAt = removedIndex < removed.length ? Math.max((int) countAbove(scores, removed[removedIndex]), copied) : Integer.MAX_VALUE;
+			if (addAt <= removeAt) {
+				copy(scores, copied, addAt, merged);
+				copied = addAt;
+				merged.put(added[addedIndex++]);
+			} else {
+				copy(scores, copied, removeAt, merged);
+				copied = removeAt + 1;
+				removedIndex++;
+			}
+		}
+		copy(scores, copied, scores.limit(), merged);
+		merged.flip();
+		return merged;
+	}
+
+	/**
+	 * Copies the scores from {@code from} (inclusive) to {@code to} (exclusive) onto the end of {@code destination}.
+	 */
+	private static void copy(IntBuffer scores, int from, int to, IntBuffer destination) {
+		if (to > from) {
+			IntBuffer run = scores.duplicate();
+			run.limit(to).position(from);
+			destination.put(run);
+		}
+	}
+
+	/**
+	 * Counts the scores in a descending buffer that are higher than {@code points}.
+	 */
+	private static long countAbove(IntBuffer scores, long points) {
+		int low = 0;
+		int high = scores.limit();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (scores.get(middle) > points) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Counts the scores in a descending array that are higher than {@code points}.
+	 */
+	private static long countAbove(int[] scores, long points) {
+		int low = 0;
+		int high = scores.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (scores[middle] > points) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Finds a score in a descending array.
+	 *
+	 * @return The index of the score, or -1 if the array does not contain it.
+	 */
+	private static int indexOf(int[] scores, int points) {
+		int index = (int) countAbove(scores, points);
+		return index < scores.length && scores[index] == points ? index : -1;
+	}
+
+	/**
+	 * Returns a copy of a descending array with a score inserted.
+	 */
+	private static int[] with(int[] scores, int points) {
+		int index = (int) countAbove(scores, points);
+		int[] result = new int[scores.length + 1];
+		System.arraycopy(scores, 0, result, 0, index);
+		result[index] = points;
+		System.arraycopy(scores, index, result, index + 1, scores.length - index);
+		return result;
+	}
+
+	/**
+	 * Merges two descending arrays, keeping duplicates.
+	 */
+	private static int[] union(int[] a, int[] b) {
+		int[] result = new int[a.length + b.length];
+		int i = 0;
+		int j = 0;
+		int k = 0;
+		while (i < a.length && j < b.length) {
+			result[k++] = a[i] >= b[j] ? a[i++] : b[j++];
+		}
+		System.arraycopy(a, i, result, k, a.length - i);
+		System.arraycopy(b, j, result, k + a.length - i, b.length - j);
+		return result;
+	}
+
+	/**
+	 * Returns the scores in a descending array that aren't matched by a score in another descending array (counting
+	 * duplicates, so each score in {@code b} cancels out at most one score in {@code a}).
+	 */
+	private static int[] difference(int[] a, int[] b) {
+		int[] result = new int[a.length];
+		int i = 0;
+		int j = 0;
+		int k = 0;
+		while (i < a.length) {
+			if (j == b.length || a[i] > b[j]) {
+				result[k++] = a[i++];
+			} else if (a[i] < b[j]) {
+				j++;
+			} else {
+				i++;
+				j++;
+			}
+		}
+		return k == result.length ? result : Arrays.copyOf(result, k);
+	}
+
+	/**
+	 * Returns a copy of an array with the element at {@code index} removed.
+	 */
+	private static int[] without(int[] scores, int index) {
+		int[] result = Arrays.copyOf(scores, scores.length - 1);
+		System.arraycopy(scores, index + 1, result, index, scores.length - index - 1);
+		return result;
+	}
+
+	private static IntBuffer allocate(int capacity) {
+		return ByteBuffer.allocateDirect(capacity * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+	}
+
+	/**
+	 * Creates an index from scores that are already in descending order, without copying them into an intermediate
+	 * array.
+	 */
+	public static class Builder {
+		private IntBuffer scores = allocate(1024);
+
+		/**
+		 * Appends a score.
+		 *
+		 * @param points The number of points, which must not be higher than the previous score.
+		 * @throws IllegalArgumentException thrown if the score is higher than the previous score.
+		 */
+		public void add(int points) {
+			int position = scores.position();
+			if (position > 0 && scores.get(position - 1) < points) {
+				throw new IllegalArgumentException("Scores must be added in descending order");
+			}
+			if (!scores.hasRemaining()) {
+				IntBuffer larger = allocate(scores.capacity() * 2);
+				scores.flip();
+				larger.put(scores);
+				scores = larger;
+			}
+			scores.put(points);
+		}
+
+		/**
+		 * Creates the index. The builder must not be used afterwards.
+		 *
+		 * @return The index.
+		 */
+		public SortedScoreIndex build() {
+			// Copy into a buffer of the exact size, so the unused capacity can be freed.
+			IntBuffer exact = allocate(scores.position());
+			scores.flip();
+			exact.put(scores);
+			exact.flip();
+			scores = null;
+			return new SortedScoreIndex(exact);
+		}
+	}
+
+	/** An immutable view of the index. */
+	private static final class Snapshot {
+		/** Scores in descending order. Only absolute reads are used, so the buffer can be shared between threads. */
+		private final IntBuffer scores;
+		/** Scores added since the buffer was created, in descending order. */
+		private final int[] added;
+		/** Scores in the buffer that have since been removed, in descending order. */
+		private final int[] removed;
+
+		private Snapshot(IntBuffer scores, int[] added, int[] removed) {
+			this.scores = scores;
+			this.added = added;
+			this.removed = removed;
+		}
+	}
+}
@@ -0,0 +1,322 @@
+package gg.championmastery.highscoresService.persistence;
+
+import gg.championmastery.highscoresService.HighscoresService;
+import io.prometheus.client.Histogram;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Saves each summoner asynchronously on the executor passed to the constructor, without a transaction. Each statement is
+ * committed on its own, so a row is only locked while a single statement writes it, and concurrent refreshes of the same
+ * summoner never wait for each other's remaining statements:
+ * <ul>
+ *     <li>Each score that increased is written with a compare-and-set on the value that was read, and re-read and
+ *     compared again if another write changed it first. Every change is made by exactly one write, which reports the
+ *     exact value it replaced, so the in-memory indexes are never updated twice for the same change.</li>
+ *     <li>The summoner is then updated with a single guarded statement. The Riot ID, scores digest and lookup times are
+ *     only replaced by values from a lookup that is at least as recent as the one that is stored, so a slow write can't
+ *     overwrite a newer one. Revision dates are saved with {@code GREATEST}, since they never decrease (and a cached
+ *     summoner's may be older than the stored one).</li>
+ *     <li>The scores digest is calculated from the scores that end up stored, so it never describes scores that weren't
+ *     saved.</li>
+ * </ul>
+ * If a write fails part way through, the scores it changed stay saved (and are still passed to the listener), but the
+ * summoner's digest and lookup time are not updated, so their next lookup writes the rest of their scores and the
+ * {@link gg.championmastery.highscoresService.api.RefreshScheduler} still considers them stale. New summoners are
+ * inserted with the default lookup times before their scores are written, for the same reason. Transfers are detected
+ * after the summoner has been updated.
+ */
+public class OptimisticScoreWriter implements ScoreWriter {
+
+	private static final Logger logger = LoggerFactory.getLogger(OptimisticScoreWriter.class);
+	/** The MySQL error code for a duplicate key. */
+	private static final int ER_DUP_ENTRY = 1062;
+
+	private final Consumer<SavedScores> onSaved;
+	private final Executor executor;
+
+	/**
+	 * @param onSaved Called after a summoner's scores have been committed to the database.
+	 * @param executor The executor that writes will run on.
+	 */
+	public OptimisticScoreWriter(Consumer<SavedScores> onSaved, Executor executor) {
+		this.onSaved = onSaved;
+		this.executor = executor;
+	}
+
+	@Override
+	public void write(SummonerScores summonerScores) {
+		CompletableFuture.runAsync(() -> {
+			List<SavedScores> savedScores = new ArrayList<>();
+			try (Session session = HighscoresService.getHibernateSessionFactory().openSession()) {
+				session.doWork(connection -> {
+					Histogram.Timer timer = ScoreWriterMetrics.transactionDuration.labels("optimistic").startTimer();
+					save(connection, summonerScores, savedScores);
+					timer.observeDuration();
+					ScoreWriterMetrics.observeLag("optimistic", summonerScores);
+				});
+			} catch (Exception ex) {
+				logger.error(String.format("Error updating mastery scores for summoner '%s' (%s)", summonerScores.getRiotId(), summonerScores.getPlatform()), ex);
+			}
+
+			// Scores that were written before an error are still reported, since they have already been committed.
+			for (SavedScores saved : savedScores) {
+				onSaved.accept(saved);
+			}
+		}, executor);
+	}
+
+	private static void save(Connection connection, SummonerScores summonerScores, List<SavedScores> savedScores) throws SQLException {
+		StoredSummoner summoner = selectSummoner(connection, summonerScores);
+		if (summoner != null && summonerScores.isUnchangedFrom(summoner.riotId, summoner.revisionDate, summoner.digest)) {
+			touchSummoner(connection, summonerScores);
+			ScoreWriterMetrics.changeDetection.labels("optimistic", "skipped").inc();
+			return;
+		}
+		ScoreWriterMetrics.changeDetection.labels("optimistic", "applied").inc();
+
+		if (summoner == null) {
+			insertSummoner(connection, summonerScores);
+			summoner = selectSummoner(connection, summonerScores);
+			if (summoner == null) {
+				throw new IllegalStateException("Summoner was not saved");
+			}
+		}
+
+		// The scores that are stored once this write's scores have been applied, and the scores they replaced.
+		Map<Short, Integer> storedScores = new HashMap<>();
+		Map<Short, Integer> replacedScores = new HashMap<>();
+		try {
+			Histogram.Timer timer = ScoreWriterMetrics.lockWaitDuration.labels("optimistic").startTimer();
+			try {
+				writeScores(connection, summoner.playerId, summonerScores, storedScores, replacedScores);
+			} finally {
+				timer.observeDuration();
+			}
+
+			SummonerScores saved = withScores(summonerScores, storedScores);
+			timer = ScoreWriterMetrics.lockWaitDuration.labels("optimistic").startTimer();
+			try {
+				// The digest matches the lookup's unless a stored score was higher, in which case the next identical
+				// lookup isn't skipped.
+				updateSummoner(connection, summoner.playerId, saved);
+			} finally {
+				timer.observeDuration();
+			}
+
+			TransferDetector.Result transfers = TransferDetector.detect(connection, Collections.singleton(summonerScores.getKey()));
+			savedScores.add(new SavedScores(summoner.playerId, transfers.getStatus(summonerScores.getKey(), summoner.status), saved,
+					transfers.getPreviousStatus(summonerScores.getKey(), summoner.status), Collections.unmodifiableMap(replacedScores)));
+			savedScores.addAll(transfers.getOtherChanges());
+		} catch (SQLException | RuntimeException ex) {
+			// The scores that were written are committed, so the indexes still need to include them.
+			if (!storedScores.isEmpty()) {
+				savedScores.add(new SavedScores(summoner.playerId, summoner.status, withScores(summonerScores, storedScores),
+						summoner.status, Collections.unmodifiableMap(replacedScores)));
+			}
+			throw ex;
+		}
+	}
+
+	private static SummonerScores withScores(SummonerScores summonerScores, Map<Short, Integer> scores) {
+		return new SummonerScores(summonerScores.getPlatform(), summonerScores.getPuuid(), summonerScores.getRiotId(), summonerScores.getRiotIdLookupTime(),
+				summonerScores.getRevisionDate(), summonerScores.getLookupTime(), Collections.unmodifiableMap(new HashMap<>(scores)));
+	}
+
+	/**
+	 * Reads the stored summoner without locking it.
+	 *
+	 * @return The summoner, or {@code null} if they haven't been saved.
+	 */
+	private static StoredSummoner selectSummoner(Connection connection, SummonerScores summonerScores) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement("SELECT player_id, summoner_status, riot_id, revision_date, scores_digest " +
+				"FROM summoners WHERE platform = ? AND encrypted_puuid = ?")) {
+			statement.setString(1, summonerScores.getPlatform());
+			statement.setString(2, summonerScores.getPuuid());
+			try (ResultSet results = statement.executeQuery()) {
+				if (!results.next()) {
+					return null;
+				}
+				StoredSummoner summoner = new StoredSummoner();
+				summoner.playerId = results.getLong(1);
+				summoner.status = SummonerEntity.Status.values()[results.getInt(2)];
+				summoner.riotId = results.getString(3);
+				summoner.revisionDate = results.getTimestamp(4).toInstant();
+				long digest = results.getLong(5);
+				summoner.digest = results.wasNull() ? null : digest;
+				return summoner;
+			}
+		}
+	}
+
+	/**
+	 * Inserts a summoner with the default lookup times, unless they have been inserted by another write.
+	 */
+	private static void insertSummoner(Connection connection, SummonerScores scores) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement("INSERT INTO summoners (platform, encrypted_puuid, revision_date) VALUES (?, ?, ?)")) {
+			statement.setString(1, scores.getPlatform());
+			statement.setString(2, scores.getPuuid());
+			statement.setTimestamp(3, Timestamp.from(scores.getRevisionDate()));
+			statement.executeUpdate();
+		} catch (SQLIntegrityConstraintViolationException ex) {
+			if (ex.getErrorCode() != ER_DUP_ENTRY) {
+				throw ex;
+			}
+		}
+	}
+
+	/**
+	 * Writes every score that is higher than the stored score, and fills {@code storedScores} with the scores that are
+	 * stored afterwards, and {@code replacedScores} with the stored scores they replaced. Scores that weren't changed are
+	 * included in both maps.
+	 */
+	private static void writeScores(Connection connection, long playerId, SummonerScores scores, Map<Short, Integer> storedScores,
+			Map<Short, Integer> replacedScores) throws SQLException {
+		if (scores.getScores().isEmpty()) {
+			return;
+		}
+
+		Map<Short, Integer> currentScores = selectScores(connection, playerId);
+		for (Map.Entry<Short, Integer> score : scores.getScores().entrySet()) {
+			short championId = score.getKey();
+			int points = score.getValue();
+			Integer current = currentScores.get(championId);
+			while (true) {
+				// Scores from a stale lookup don't replace higher stored scores, so report what is actually stored.
+				if (current != null && current >= points) {
+					storedScores.put(championId, current);
+					replacedScores.put(championId, current);
+					break;
+				}
+				if (current == null ? insertScore(connection, playerId, scores.getPlatform(), championId, points) : updateScore(connection, playerId, championId, current, points)) {
+					storedScores.put(championId, points);
+					if (current != null) {
+						replacedScores.put(championId, current);
+					}
+					break;
+				}
+				// Another write changed the score after it was read, so compare against its score instead.
+				current = selectScore(connection, playerId, championId);
+			}
+		}
+	}
+
+	private static Map<Short, Integer> selectScores(Connection connection, long playerId) throws SQLException {
+		Map<Short, Integer> scores = new HashMap<>();
+		try (PreparedStatement statement = connection.prepareStatement("SELECT champion_id, mastery_points FROM mastery_scores WHERE player_id = ?")) {
+			statement.setLong(1, playerId);
+			try (ResultSet results = statement.executeQuery()) {
+				while (results.next()) {
+					scores.put(results.getShort(1), results.getInt(2));
+				}
+			}
+		}
+		return scores;
+	}
+
+	private static Integer selectScore(Connection connection, long playerId, short championId) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement("SELECT mastery_points FROM mastery_scores WHERE player_id = ? AND champion_id = ?")) {
+			statement.setLong(1, playerId);
+			statement.setShort(2, championId);
+			try (ResultSet results = statement.executeQuery()) {
+				return results.next() ? results.getInt(1) : null;
+			}
+		}
+	}
+
+	/**
+	 * Inserts a score.
+	 *
+	 * @return {@code true} if the score was inserted, or {@code false} if another write inserted it first.
+	 */
+	private static boolean insertScore(Connection connection, long playerId, String platform, short championId, int points) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement("INSERT INTO mastery_scores (platform, player_id, champion_id, mastery_points) VALUES (?, ?, ?, ?)")) {
+			statement.setString(1, platform);
+			statement.setLong(2, playerId);
+			statement.setShort(3, championId);
+			statement.setInt(4, points);
+			statement.executeUpdate();
+			return true;
+		} catch (SQLIntegrityConstraintViolationException ex) {
+			if (ex.getErrorCode() != ER_DUP_ENTRY) {
+				throw ex;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Replaces a score, if it hasn't changed since it was read.
+	 *
+	 * @return {@code true} if the score was replaced, or {@code false} if another write changed it first.
+	 */
+	private static boolean updateScore(Connection connection, long playerId, short championId, int expected, int points) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement("UPDATE mastery_scores SET mastery_points = ? WHERE player_id = ? AND champion_id = ? AND mastery_points = ?")) {
+			statement.setInt(1, points);
+			statement.setLong(2, playerId);
+			statement.setShort(3, championId);
+			statement.setInt(4, expected);
+			return statement.executeUpdate() > 0;
+		}
+	}
+
+	private static void touchSummoner(Connection connection, SummonerScores scores) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement("UPDATE summoners SET name_last_updated = GREATEST(name_last_updated, ?), " +
+				"masteries_last_updated = GREATEST(masteries_last_updated, ?) WHERE platform = ? AND encrypted_puuid = ?")) {
+			statement.setTimestamp(1, Timestamp.from(scores.getRiotIdLookupTime()));
+			statement.setTimestamp(2, Timestamp.from(scores.getLookupTime()));
+			statement.setString(3, scores.getPlatform());
+			statement.setString(4, scores.getPuuid());
+			statement.executeUpdate();
+		}
+	}
+
+	private static void updateSummoner(Connection connection, long playerId, SummonerScores scores) throws SQLException {
+		// Assignments are applied in order, so each guarded column must be assigned before the timestamp it's compared to.
+		String sql = "UPDATE summoners SET " +
+				"riot_id = IF(? >= name_last_updated, ?, riot_id), " +
+				"name_last_updated = GREATEST(name_last_updated, ?), " +
+				"revision_date = GREATEST(revision_date, ?), " +
+				"scores_digest = IF(? >= masteries_last_updated, ?, scores_digest), " +
+				"masteries_last_updated = GREATEST(masteries_last_updated, ?) " +
+				"WHERE player_id = ?";
+		try (PreparedStatement statement = connection.prepareStatement(sql)) {
+			Timestamp riotIdLookupTime = Timestamp.from(scores.getRiotIdLookupTime());
+			Timestamp lookupTime = Timestamp.from(scores.getLookupTime());
+			statement.setTimestamp(1, riotIdLookupTime);
+			statement.setString(2, scores.getRiotId());
+			statement.setTimestamp(3, riotIdLookupTime);
+			statement.setTimestamp(4, Timestamp.from(scores.getRevisionDate()));
+			statement.setTimestamp(5, lookupTime);
+			statement.setLong(6, scores.getScoresDigest());
+			statement.setTimestamp(7, lookupTime);
+			statement.setLong(8, playerId);
+			statement.executeUpdate();
+		}
+	}
+
+	private static final class StoredSummoner {
+		private long playerId;
+		private SummonerEntity.Status status;
+		private String riotId;
+		private Instant revisionDate;
+		private Long digest;
+	}
+}
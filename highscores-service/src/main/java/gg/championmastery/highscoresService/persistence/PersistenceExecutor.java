@@ -0,0 +1,149 @@
+package gg.championmastery.highscoresService.persistence;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.prometheus.client.Collector;
+import io.prometheus.client.Counter;
+import io.prometheus.client.GaugeMetricFamily;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed-size thread pool with a bounded queue, used for blocking database work so that it never runs on (and starves)
+ * the common fork-join pool. What happens when the queue is full is decided by a {@link RejectionPolicy}.
+ */
+public final class PersistenceExecutor implements Executor {
+
+	private static final Logger logger = LoggerFactory.getLogger(PersistenceExecutor.class);
+
+	private static final Counter rejectedTasks = Counter.build()
+			.name("persistence_executor_rejected_tasks_total")
+			.help("Tasks that could not be queued because the executor's queue was full.")
+			.labelNames("executor", "policy")
+			.register();
+	private static final Counter discardedTasks = Counter.build()
+			.name("persistence_executor_discarded_tasks_total")
+			.help("Tasks that were discarded without being run.")
+			.labelNames("executor")
+			.register();
+	/** Every executor that has been created, so that they can all be reported by a single collector. */
+	private static final List<PersistenceExecutor> executors = new CopyOnWriteArrayList<>();
+
+	static {
+		new MetricsCollector().register();
+	}
+
+	private final String name;
+	private final RejectionPolicy rejectionPolicy;
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * @param name The name of the executor, used to name its threads and label its metrics.
+	 * @param threads The number of threads that will run tasks.
+	 * @param queueCapacity The maximum number of tasks that can be waiting to run.
+	 * @param rejectionPolicy What to do with tasks that are submitted while the queue is full.
+	 */
+	public PersistenceExecutor(String name, int threads, int queueCapacity, RejectionPolicy rejectionPolicy) {
+		this.name = name;
+		this.rejectionPolicy = rejectionPolicy;
+		executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+				new ThreadFactoryBuilder().setNameFormat(name + "-%d").build(), new RejectionHandler());
+		executors.add(this);
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		executor.execute(task);
+	}
+
+	/**
+	 * Stops accepting new tasks, and waits for queued tasks to finish.
+	 *
+	 * @param timeout The maximum number of seconds to wait.
+	 * @throws InterruptedException Thrown if the thread is interrupted while waiting.
+	 */
+	public void shutdown(long timeout) throws InterruptedException {
+		executor.shutdown();
+		if (!executor.awaitTermination(timeout, TimeUnit.SECONDS)) {
+			logger.warn(String.format("Executor '%s' did not finish %d queued tasks before shutting down", name, executor.getQueue().size()));
+		}
+	}
+
+	/**
+	 * What to do with tasks that are submitted while the queue is full.
+	 */
+	public enum RejectionPolicy {
+		/** Discard (and log) the task that has been waiting the longest, and queue the new task. */
+		DROP_OLDEST,
+		/** Run the new task on the thread that submitted it, slowing down the submitter until the queue drains. */
+		CALLER_RUNS,
+		/** Discard (and log) the new task. */
+		SHED
+	}
+
+	private class RejectionHandler implements RejectedExecutionHandler {
+		@Override
+		public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+			if (executor.isShutdown()) {
+				discard("executor is shut down");
+				return;
+			}
+
+			rejectedTasks.labels(name, rejectionPolicy.name().toLowerCase(Locale.ROOT)).inc();
+			switch (rejectionPolicy) {
+				case DROP_OLDEST:
+					if (executor.getQueue().poll() != null) {
+						discard("queue is full");
+					}
+					executor.execute(task);
+					break;
+				case CALLER_RUNS:
+					task.run();
+					break;
+				case SHED:
+					discard("queue is full");
+					break;
+			}
+		}
+
+		/**
+		 * Counts and logs a task that is being discarded without being run.
+		 *
+		 * @param reason Why the task is being discarded.
+		 */
+		private void discard(String reason) {
+			discardedTasks.labels(name).inc();
+			logger.warn(String.format("Executor '%s' discarded a task because its %s", name, reason));
+		}
+	}
+
+	/** Reports the state of every executor whenever metrics are scraped. */
+	private static class MetricsCollector extends Collector {
+		@Override
+		public List<MetricFamilySamples> collect() {
+			List<String> labelNames = Collections.singletonList("executor");
+			GaugeMetricFamily activeTasks = new GaugeMetricFamily("persistence_executor_active_tasks", "Tasks that are currently running.", labelNames);
+			GaugeMetricFamily queuedTasks = new GaugeMetricFamily("persistence_executor_queued_tasks", "Tasks that are waiting to run.", labelNames);
+			for (PersistenceExecutor persistenceExecutor : executors) {
+				List<String> labels = Collections.singletonList(persistenceExecutor.name);
+				activeTasks.addMetric(labels, persistenceExecutor.executor.getActiveCount());
+				queuedTasks.addMetric(labels, persistenceExecutor.executor.getQueue().size());
+			}
+
+			List<MetricFamilySamples> samples = new ArrayList<>();
+			samples.add(activeTasks);
+			samples.add(queuedTasks);
+			return samples;
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package gg.championmastery.highscoresService.persistence;
+
+import java.util.Map;
+
+/**
+ * A summoner's scores after they have been committed to the database.
+ */
+public final class SavedScores {
+
+	private final long playerId;
+	private final SummonerEntity.Status status;
+	private final SummonerScores scores;
+	private final SummonerEntity.Status previousStatus;
+	private final Map<Short, Integer> previousScores;
+
+	/**
+	 * @param playerId The summoner's ID (the {@code player_id} column of the {@code summoners} table).
+	 * @param status The summoner's status.
+	 * @param scores The scores that were saved.
+	 * @param previousStatus The summoner's status before these scores were saved ({@link SummonerEntity.Status#NORMAL}
+	 * 		for new summoners).
+	 * @param previousScores The scores that were stored for the summoner before these scores were saved, mapped by
+	 * 		champion ID.
+	 */
+	public SavedScores(long playerId, SummonerEntity.Status status, SummonerScores scores, SummonerEntity.Status previousStatus, Map<Short, Integer> previousScores) {
+		this.playerId = playerId;
+		this.status = status;
+		this.scores = scores;
+		this.previousStatus = previousStatus;
+		this.previousScores = previousScores;
+	}
+
+	public long getPlayerId() {
+		return playerId;
+	}
+
+	public SummonerEntity.Status getStatus() {
+		return status;
+	}
+
+	public SummonerScores getScores() {
+		return scores;
+	}
+
+	public SummonerEntity.Status getPreviousStatus() {
+		return previousStatus;
+	}
+
+	/**
+	 * Returns whether the summoner's previous scores were counted on the highscores (i.e. they weren't marked as
+	 * transferred).
+	 *
+	 * @return {@code true} if the previous scores should be replaced by the new scores.
+	 */
+	public boolean wasListed() {
+		return previousStatus != SummonerEntity.Status.TRANSFERRED;
+	}
+
+	/**
+	 * Returns the scores that were stored for the summoner before these scores were saved. Scores for champions that
+	 * aren't included in {@link #getScores()} were not changed.
+	 *
+	 * @return An immutable map of mastery points, mapped by champion ID (which is empty for new summoners).
+	 */
+	public Map<Short, Integer> getPreviousScores() {
+		return previousScores;
+	}
+
+	/**
+	 * Returns the name that should be displayed for the summoner on the highscores.
+	 *
+	 * @return The summoner's Riot ID, or {@code null} if their name should be hidden.
+	 */
+	public String getDisplayName() {
+		return SummonerEntity.getDisplayName(scores.getRiotId(), status);
+	}
+}
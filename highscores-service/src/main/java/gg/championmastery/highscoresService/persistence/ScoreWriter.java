@@ -0,0 +1,26 @@
+package gg.championmastery.highscoresService.persistence;
+
+/**
+ * Saves summoners and their mastery scores to the database.
+ */
+public interface ScoreWriter {
+
+	/**
+	 * Saves a summoner and their scores. Implementations may save the scores asynchronously.
+	 *
+	 * @param scores The summoner and scores to save.
+	 */
+	void write(SummonerScores scores);
+
+	/**
+	 * The ways that scores can be written to the database.
+	 */
+	enum Mode {
+		/** Each lookup is saved in its own transaction, using {@link TransactionalScoreWriter}. */
+		TRANSACTIONAL,
+		/** Lookups are queued and saved in batches, using {@link WriteBehindScoreWriter}. */
+		WRITE_BEHIND,
+		/** Each lookup is saved with compare-and-set statements outside of a transaction, using {@link OptimisticScoreWriter}. */
+		OPTIMISTIC
+	}
+}
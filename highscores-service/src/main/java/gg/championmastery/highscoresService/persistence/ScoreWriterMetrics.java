@@ -0,0 +1,51 @@
+package gg.championmastery.highscoresService.persistence;
+
+import io.prometheus.client.Counter;
+import io.prometheus.client.Histogram;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Metrics shared by every {@link ScoreWriter}, labelled by write mode so that the modes can be compared.
+ */
+final class ScoreWriterMetrics {
+
+	static final Histogram lockWaitDuration = Histogram.build()
+			.name("score_write_lock_wait_seconds")
+			.help("Time spent in statements that lock summoner or score rows while saving a summoner, by write mode.")
+			.labelNames("mode")
+			.buckets(0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 50)
+			.register();
+	static final Counter changeDetection = Counter.build()
+			.name("score_write_changes_total")
+			.help("Summoners saved, by write mode and whether their scores were written (applied) or only their lookup time was updated (skipped).")
+			.labelNames("mode", "outcome")
+			.register();
+
+	static final Histogram transactionDuration = Histogram.build()
+			.name("score_write_transaction_seconds")
+			.help("Time taken to save a summoner (or a batch of summoners, in write-behind mode) from the first statement to the commit (or the last statement, in optimistic mode), by write mode.")
+			.labelNames("mode")
+			.buckets(0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30)
+			.register();
+	static final Histogram persistenceLag = Histogram.build()
+			.name("score_write_lag_seconds")
+			.help("Time between a summoner's scores being retrieved from the Riot Games API and being committed to the database, by write mode.")
+			.labelNames("mode")
+			.buckets(0.01, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 300)
+			.register();
+
+	private ScoreWriterMetrics() {
+	}
+
+	/**
+	 * Records the persistence lag of a summoner whose scores have just been committed.
+	 *
+	 * @param mode The label of the write mode.
+	 * @param scores The summoner's scores.
+	 */
+	static void observeLag(String mode, SummonerScores scores) {
+		persistenceLag.labels(mode).observe(Duration.between(scores.getLookupTime(), Instant.now()).toMillis() / 1000.0);
+	}
+}
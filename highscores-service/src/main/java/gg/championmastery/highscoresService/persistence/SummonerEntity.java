@@ -39,6 +39,7 @@ public class SummonerEntity implements HibernateEntity<SummonerEntity.Key>, Seri
 	private Instant nameLastUpdatedInstant = DEFAULT_INSTANT;
 	private Instant masteriesLastUpdatedInstant = DEFAULT_INSTANT;
 	private Status status = Status.NORMAL;
+	private Long scoresDigest;
 	private List<MasteryScoreEntity> masteryScores;
 
 	@Column(nullable = false)
@@ -118,6 +119,21 @@ public class SummonerEntity implements HibernateEntity<SummonerEntity.Key>, Seri
 		this.status = status;
 	}
 
+	/**
+	 * Returns the {@link SummonerScores#getScoresDigest() digest} of the scores that were last saved, or {@code null} if
+	 * the summoner was saved before digests were recorded.
+	 *
+	 * @return The digest of the summoner's scores.
+	 */
+	@Column(name = "scores_digest", nullable = true)
+	public Long getScoresDigest() {
+		return scoresDigest;
+	}
+
+	public void setScoresDigest(Long scoresDigest) {
+		this.scoresDigest = scoresDigest;
+	}
+
 	@JoinColumn(name = "player_id", referencedColumnName = "player_id")
 	@OneToMany(fetch = FetchType.LAZY)
 	@Transient
@@ -138,10 +154,21 @@ public class SummonerEntity implements HibernateEntity<SummonerEntity.Key>, Seri
 	 */
 	@Transient
 	public String getDisplayName() {
-		if (getStatus() == Status.FORGOTTEN || getStatus() == Status.REQUESTED_REMOVAL) {
+		return getDisplayName(getRiotId(), getStatus());
+	}
+
+	/**
+	 * Returns the name that should be shown for a player with the specified Riot ID and status.
+	 *
+	 * @param riotId The player's Riot ID.
+	 * @param status The player's status.
+	 * @return {@code riotId}, or {@code null} if the player has requested not to have their name shown on the site.
+	 */
+	public static String getDisplayName(String riotId, Status status) {
+		if (status == Status.FORGOTTEN || status == Status.REQUESTED_REMOVAL) {
 			return null;
 		} else {
-			return getRiotId();
+			return riotId;
 		}
 	}
 
@@ -0,0 +1,113 @@
+package gg.championmastery.highscoresService.persistence;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * The result of looking up a summoner's mastery scores, which needs to be saved to the database.
+ */
+public final class SummonerScores {
+
+	private final String platform;
+	private final String puuid;
+	private final String riotId;
+	private final Instant riotIdLookupTime;
+	private final Instant revisionDate;
+	private final Instant lookupTime;
+	private final Map<Short, Integer> scores;
+
+	/**
+	 * @param platform The tag of the summoner's platform.
+	 * @param puuid The summoner's encrypted PUUID.
+	 * @param riotId The summoner's Riot ID.
+	 * @param riotIdLookupTime When the summoner's Riot ID was retrieved from the Riot Games API (which may be earlier
+	 * 		than {@code lookupTime} if it was cached).
+	 * @param revisionDate The {@code revisionDate} of the summoner from the Summoner-v4 API. This may be older than the
+	 * 		saved revision date if the summoner was cached, so it never replaces a newer saved one.
+	 * @param lookupTime When the summoner's scores were retrieved from the Riot Games API.
+	 * @param scores The scores that are high enough to be saved (including total points/level), mapped by champion ID.
+	 */
+	public SummonerScores(String platform, String puuid, String riotId, Instant riotIdLookupTime, Instant revisionDate, Instant lookupTime, Map<Short, Integer> scores) {
+		this.platform = platform;
+		this.puuid = puuid;
+		this.riotId = riotId;
+		this.riotIdLookupTime = riotIdLookupTime;
+		this.revisionDate = revisionDate;
+		this.lookupTime = lookupTime;
+		this.scores = scores;
+	}
+
+	public SummonerEntity.Key getKey() {
+		return new SummonerEntity.Key(platform, puuid);
+	}
+
+	public String getPlatform() {
+		return platform;
+	}
+
+	public String getPuuid() {
+		return puuid;
+	}
+
+	public String getRiotId() {
+		return riotId;
+	}
+
+	public Instant getRiotIdLookupTime() {
+		return riotIdLookupTime;
+	}
+
+	public Instant getRevisionDate() {
+		return revisionDate;
+	}
+
+	public Instant getLookupTime() {
+		return lookupTime;
+	}
+
+	/**
+	 * Returns the scores that are high enough to be saved (including total points/level).
+	 *
+	 * @return An immutable map of mastery points, mapped by champion ID.
+	 */
+	public Map<Short, Integer> getScores() {
+		return scores;
+	}
+
+	/**
+	 * Returns a fingerprint of {@link #getScores()}, which is stored with the summoner so that lookups that didn't change
+	 * any scores can be detected without reading the scores.
+	 *
+	 * @return A 64-bit fingerprint, which is stable across versions of the service.
+	 */
+	public long getScoresDigest() {
+		Hasher hasher = Hashing.farmHashFingerprint64().newHasher();
+		for (Map.Entry<Short, Integer> score : new TreeMap<>(scores).entrySet()) {
+			hasher.putShort(score.getKey()).putInt(score.getValue());
+		}
+		return hasher.hash().asLong();
+	}
+
+	/**
+	 * Checks whether this lookup matches what is already saved for the summoner, in which case only the lookup times
+	 * need to be written.
+	 *
+	 * @param savedRiotId The saved Riot ID.
+	 * @param savedRevisionDate The saved revision date.
+	 * @param savedScoresDigest The saved {@link #getScoresDigest() digest}, or {@code null} if none was saved.
+	 * @return {@code true} if neither the summoner nor their scores have changed.
+	 */
+	public boolean isUnchangedFrom(String savedRiotId, Instant savedRevisionDate, Long savedScoresDigest) {
+		// Revision dates are saved with second precision, and MySQL rounds (rather than truncates) fractional seconds. A
+		// revision date older than the saved one comes from a cached summoner, and isn't a change.
+		return savedScoresDigest != null && savedScoresDigest == getScoresDigest()
+				&& Objects.equals(savedRiotId, riotId)
+				&& Duration.between(savedRevisionDate, revisionDate).toMillis() < 1000;
+	}
+}
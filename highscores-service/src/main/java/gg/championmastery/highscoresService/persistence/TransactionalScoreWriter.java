@@ -0,0 +1,152 @@
+package gg.championmastery.highscoresService.persistence;
+
+import gg.championmastery.highscoresService.HighscoresService;
+import io.prometheus.client.Histogram;
+import org.hibernate.LockMode;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.LockModeType;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Saves each summoner asynchronously in its own transaction, on the executor passed to the constructor. The summoner's
+ * row and all of their scores are locked while they are being updated.
+ */
+public class TransactionalScoreWriter implements ScoreWriter {
+
+	private static final Logger logger = LoggerFactory.getLogger(TransactionalScoreWriter.class);
+
+	private final Consumer<SavedScores> onSaved;
+	private final Executor executor;
+
+	/**
+	 * @param onSaved Called after a summoner's scores have been committed to the database.
+	 * @param executor The executor that transactions will run on.
+	 */
+	public TransactionalScoreWriter(Consumer<SavedScores> onSaved, Executor executor) {
+		this.onSaved = onSaved;
+		this.executor = executor;
+	}
+
+	@Override
+	public void write(SummonerScores summonerScores) {
+		// Asynchronously check if the summoner is in the database, and add them if they're not.
+		CompletableFuture.runAsync(() -> {
+			Transaction tx = null;
+			SummonerEntity.Key summonerKey = summonerScores.getKey();
+			try (Session session = HighscoresService.getHibernateSessionFactory().openSession()) {
+				tx = session.beginTransaction();
+				Histogram.Timer transactionTimer = ScoreWriterMetrics.transactionDuration.labels("transactional").startTimer();
+				Histogram.Timer timer = ScoreWriterMetrics.lockWaitDuration.labels("transactional").startTimer();
+				SummonerEntity summonerEntity = session.get(SummonerEntity.class, summonerKey, LockMode.PESSIMISTIC_WRITE);
+				timer.observeDuration();
+				// If the summoner doesn't already exist in the database, create a new entity.
+				if (summonerEntity == null) {
+					summonerEntity = SummonerEntity.getInstantiator().acquireEntity(session, summonerKey);
+					// If the summoner has already been instantiated by another thread, abort.
+					if (summonerEntity == null) {
+						return;
+					}
+				}
+
+				// If nothing that's shown in the highscores has changed, only record when the summoner was looked up.
+				if (summonerScores.isUnchangedFrom(summonerEntity.getRiotId(), summonerEntity.getRevisionDateInstant(), summonerEntity.getScoresDigest())) {
+					summonerEntity.setNameLastUpdatedInstant(summonerScores.getRiotIdLookupTime());
+					summonerEntity.setMasteriesLastUpdatedInstant(summonerScores.getLookupTime());
+					tx.commit();
+					transactionTimer.observeDuration();
+					ScoreWriterMetrics.observeLag("transactional", summonerScores);
+					ScoreWriterMetrics.changeDetection.labels("transactional", "skipped").inc();
+					return;
+				}
+
+				// Update the summoner entity.
+				summonerEntity.setScoresDigest(summonerScores.getScoresDigest());
+				summonerEntity.setRiotId(summonerScores.getRiotId());
+				summonerEntity.setEncryptedPuuid(summonerScores.getPuuid());
+				summonerEntity.setNameLastUpdatedInstant(summonerScores.getRiotIdLookupTime());
+				// Summoners can be cached (see IdentityCache), so a lookup's revision date may be older than the stored one.
+				if (summonerEntity.getRevisionDateInstant() == null || summonerScores.getRevisionDate().isAfter(summonerEntity.getRevisionDateInstant())) {
+					summonerEntity.setRevisionDateInstant(summonerScores.getRevisionDate());
+				}
+				summonerEntity.setMasteriesLastUpdatedInstant(summonerScores.getLookupTime());
+				session.saveOrUpdate(summonerEntity);
+
+				// Update the summoner's mastery scores.
+				timer = ScoreWriterMetrics.lockWaitDuration.labels("transactional").startTimer();
+				List<MasteryScoreEntity> results = session
+						.createQuery("FROM MasteryScoreEntity WHERE platform=:platform AND summoner=:id", MasteryScoreEntity.class)
+						.setParameter("platform", summonerEntity.getPlatform())
+						.setParameter("id", summonerEntity)
+						.setLockMode(LockModeType.PESSIMISTIC_WRITE)
+						.getResultList();
+				timer.observeDuration();
+				Map<Short, MasteryScoreEntity> scores = results.stream().collect(Collectors.toMap(MasteryScoreEntity::getChampionId, Function.identity()));
+				Map<Short, Integer> previousScores = results.stream().collect(Collectors.toMap(MasteryScoreEntity::getChampionId, MasteryScoreEntity::getMasteryPoints));
+
+				for (Map.Entry<Short, Integer> score : summonerScores.getScores().entrySet()) {
+					session.saveOrUpdate(getMasteryScoreEntity(scores, summonerEntity, score.getKey(), score.getValue()));
+				}
+
+				// Check if the summoner has transferred to (or from) another platform.
+				session.flush();
+				TransferDetector.Result transfers = session.doReturningWork(connection -> TransferDetector.detect(connection, Collections.singleton(summonerKey)));
+				SummonerEntity.Status previousStatus = transfers.getPreviousStatus(summonerKey, summonerEntity.getStatus());
+				// Keep the entity in sync with the row, so that it isn't overwritten when the transaction is committed.
+				summonerEntity.setStatus(transfers.getStatus(summonerKey, summonerEntity.getStatus()));
+
+				tx.commit();
+				transactionTimer.observeDuration();
+				ScoreWriterMetrics.observeLag("transactional", summonerScores);
+				ScoreWriterMetrics.changeDetection.labels("transactional", "applied").inc();
+				onSaved.accept(new SavedScores(summonerEntity.getPlayerId(), summonerEntity.getStatus(), summonerScores, previousStatus, Collections.unmodifiableMap(previousScores)));
+				for (SavedScores otherChange : transfers.getOtherChanges()) {
+					onSaved.accept(otherChange);
+				}
+			} catch (Exception ex) {
+				if (tx != null && tx.isActive()) {
+					tx.setRollbackOnly();
+				}
+
+				logger.error(String.format("Error updating mastery scores for summoner '%s' (%s)", summonerScores.getRiotId(), summonerScores.getPlatform()), ex);
+			} finally {
+				// Release the entity if it was claimed by this thread.
+				SummonerEntity.getInstantiator().persistEntity(summonerKey);
+			}
+		}, executor);
+	}
+
+	/**
+	 * Retrieves the {@link MasteryScoreEntity} for the specified summoner and champion from {@code scores} if it already
+	 * contains it, or creates a new one if it does not.
+	 *
+	 * @param scores MasteryScoreEntities for this summoner that have already been persisted to the database, mapped by
+	 * 		champion ID.
+	 * @param summonerEntity The SummonerEntity who the score belongs to.
+	 * @param championId The ID of the champion this score if for.
+	 * @param points The points or level the summoner has on this champion.
+	 */
+	private static MasteryScoreEntity getMasteryScoreEntity(Map<Short, MasteryScoreEntity> scores, SummonerEntity summonerEntity, short championId, int points) {
+		MasteryScoreEntity scoreEntity = scores.get(championId);
+		if (scoreEntity == null) {
+			// There's no need to use an EntityInstantiator since the SummonerEntity row will be locked, ensuring that only 1 thread can access this summoner's scores.
+			scoreEntity = new MasteryScoreEntity();
+			scoreEntity.setPlatform(summonerEntity.getPlatform());
+			scoreEntity.setSummoner(summonerEntity);
+			scoreEntity.setChampionId(championId);
+		}
+
+		scoreEntity.setMasteryPoints(points);
+		return scoreEntity;
+	}
+}
@@ -0,0 +1,210 @@
+package gg.championmastery.highscoresService.persistence;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Marks summoners as transferred when the same PUUID exists on more than one platform. For each PUUID, the summoners
+ * with the most recent revision date are current (and have their {@link SummonerEntity.Status#TRANSFERRED} status
+ * cleared), and every other summoner is marked as transferred. Only the rows for the specified PUUIDs are read, and only
+ * rows whose status changes are updated.
+ */
+public final class TransferDetector {
+
+	private TransferDetector() {
+	}
+
+	/**
+	 * Updates the status of every summoner with one of the specified PUUIDs. This should be called after the summoners
+	 * have been saved, in the same transaction if they were saved in one. Rows on other platforms are not locked, since
+	 * that could deadlock with a concurrent save of the same player on another platform; if two saves race, the next save
+	 * (or {@link TransferReconciler}) corrects the statuses.
+	 *
+	 * @param connection The connection to use.
+	 * @param written The summoners that were just saved. Their PUUIDs are checked on every platform.
+	 * @return The previous and current status of every summoner that was checked, and changes to any other summoners.
+	 * @throws SQLException Thrown if a query fails.
+	 */
+	public static Result detect(Connection connection, Collection<SummonerEntity.Key> written) throws SQLException {
+		Set<String> puuids = new LinkedHashSet<>();
+		for (SummonerEntity.Key key : written) {
+			puuids.add(key.getEncryptedPuuid());
+		}
+		Result result = new Result();
+		if (puuids.isEmpty()) {
+			return result;
+		}
+
+		List<StoredSummoner> summoners = selectSummoners(connection, puuids);
+		Map<String, Timestamp> latestRevisions = new HashMap<>();
+		for (StoredSummoner summoner : summoners) {
+			latestRevisions.merge(summoner.key.getEncryptedPuuid(), summoner.revisionDate, (a, b) -> a.after(b) ? a : b);
+		}
+
+		List<StoredSummoner> changed = new ArrayList<>();
+		for (StoredSummoner summoner : summoners) {
+			SummonerEntity.Status newStatus;
+			if (summoner.revisionDate.equals(latestRevisions.get(summoner.key.getEncryptedPuuid()))) {
+				newStatus = summoner.status == SummonerEntity.Status.TRANSFERRED ? SummonerEntity.Status.NORMAL : summoner.status;
+			} else {
+				newStatus = SummonerEntity.Status.TRANSFERRED;
+			}
+
+			result.previousStatuses.put(summoner.key, summoner.status);
+			result.statuses.put(summoner.key, newStatus);
+			if (newStatus != summoner.status) {
+				summoner.newStatus = newStatus;
+				changed.add(summoner);
+			}
+		}
+		if (changed.isEmpty()) {
+			return result;
+		}
+
+		updateStatuses(connection, changed);
+
+		// Summoners that weren't just saved need to be added to (or removed from) the highscores with their stored scores.
+		List<StoredSummoner> others = new ArrayList<>();
+		for (StoredSummoner summoner : changed) {
+			if (!written.contains(summoner.key)) {
+				others.add(summoner);
+			}
+		}
+		if (!others.isEmpty()) {
+			Map<Long, Map<Short, Integer>> scores = selectScores(connection, others);
+			for (StoredSummoner summoner : others) {
+				Map<Short, Integer> storedScores = Collections.unmodifiableMap(scores.getOrDefault(summoner.playerId, Collections.emptyMap()));
+				boolean transferred = summoner.newStatus == SummonerEntity.Status.TRANSFERRED;
+				SummonerScores summonerScores = new SummonerScores(summoner.key.getPlatform(), summoner.key.getEncryptedPuuid(), summoner.riotId,
+						summoner.nameLastUpdated.toInstant(), summoner.revisionDate.toInstant(), summoner.masteriesLastUpdated.toInstant(),
+						transferred ? Collections.emptyMap() : storedScores);
+				result.otherChanges.add(new SavedScores(summoner.playerId, summoner.newStatus, summonerScores, summoner.status,
+						transferred ? storedScores : Collections.emptyMap()));
+			}
+		}
+		return result;
+	}
+
+	private static List<StoredSummoner> selectSummoners(Connection connection, Collection<String> puuids) throws SQLException {
+		String sql = "SELECT platform, encrypted_puuid, player_id, riot_id, summoner_status, revision_date, name_last_updated, masteries_last_updated " +
+				"FROM summoners WHERE encrypted_puuid IN (" + String.join(", ", Collections.nCopies(puuids.size(), "?")) + ")";
+		try (PreparedStatement statement = connection.prepareStatement(sql)) {
+			int parameter = 1;
+			for (String puuid : puuids) {
+				statement.setString(parameter++, puuid);
+			}
+
+			List<StoredSummoner> summoners = new ArrayList<>();
+			try (ResultSet results = statement.executeQuery()) {
+				while (results.next()) {
+					StoredSummoner summoner = new StoredSummoner();
+					summoner.key = new SummonerEntity.Key(results.getString(1), results.getString(2));
+					summoner.playerId = results.getLong(3);
+					summoner.riotId = results.getString(4);
+					summoner.status = SummonerEntity.Status.values()[results.getInt(5)];
+					summoner.revisionDate = results.getTimestamp(6);
+					summoner.nameLastUpdated = results.getTimestamp(7);
+					summoner.masteriesLastUpdated = results.getTimestamp(8);
+					summoners.add(summoner);
+				}
+			}
+			return summoners;
+		}
+	}
+
+	private static void updateStatuses(Connection connection, List<StoredSummoner> changed) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement("UPDATE summoners SET summoner_status = ? WHERE player_id = ?")) {
+			for (StoredSummoner summoner : changed) {
+				statement.setInt(1, summoner.newStatus.ordinal());
+				statement.setLong(2, summoner.playerId);
+				statement.addBatch();
+			}
+			statement.executeBatch();
+		}
+	}
+
+	private static Map<Long, Map<Short, Integer>> selectScores(Connection connection, List<StoredSummoner> summoners) throws SQLException {
+		String sql = "SELECT player_id, champion_id, mastery_points FROM mastery_scores WHERE player_id IN (" +
+				String.join(", ", Collections.nCopies(summoners.size(), "?")) + ")";
+		try (PreparedStatement statement = connection.prepareStatement(sql)) {
+			int parameter = 1;
+			for (StoredSummoner summoner : summoners) {
+				statement.setLong(parameter++, summoner.playerId);
+			}
+
+			Map<Long, Map<Short, Integer>> scores = new HashMap<>();
+			try (ResultSet results = statement.executeQuery()) {
+				while (results.next()) {
+					scores.computeIfAbsent(results.getLong(1), playerId -> new HashMap<>()).put(results.getShort(2), results.getInt(3));
+				}
+			}
+			return scores;
+		}
+	}
+
+	/**
+	 * The outcome of {@link #detect(Connection, Collection)}.
+	 */
+	public static final class Result {
+		private final Map<SummonerEntity.Key, SummonerEntity.Status> previousStatuses = new HashMap<>();
+		private final Map<SummonerEntity.Key, SummonerEntity.Status> statuses = new HashMap<>();
+		private final List<SavedScores> otherChanges = new ArrayList<>();
+
+		private Result() {
+		}
+
+		/**
+		 * Returns the status a summoner had before it was checked.
+		 *
+		 * @param key The summoner.
+		 * @param defaultStatus The status to return if the summoner was not checked.
+		 * @return The summoner's previous status.
+		 */
+		public SummonerEntity.Status getPreviousStatus(SummonerEntity.Key key, SummonerEntity.Status defaultStatus) {
+			return previousStatuses.getOrDefault(key, defaultStatus);
+		}
+
+		/**
+		 * Returns the status a summoner has after it was checked.
+		 *
+		 * @param key The summoner.
+		 * @param defaultStatus The status to return if the summoner was not checked.
+		 * @return The summoner's current status.
+		 */
+		public SummonerEntity.Status getStatus(SummonerEntity.Key key, SummonerEntity.Status defaultStatus) {
+			return statuses.getOrDefault(key, defaultStatus);
+		}
+
+		/**
+		 * Returns changes to summoners that share a PUUID with one of the saved summoners, but weren't saved themselves.
+		 * These should be passed to the same listeners as the saved summoners once the transaction has been committed.
+		 *
+		 * @return The summoners whose status changed, with their stored scores.
+		 */
+		public List<SavedScores> getOtherChanges() {
+			return otherChanges;
+		}
+	}
+
+	private static final class StoredSummoner {
+		private SummonerEntity.Key key;
+		private long playerId;
+		private String riotId;
+		private SummonerEntity.Status status;
+		private SummonerEntity.Status newStatus;
+		private Timestamp revisionDate;
+		private Timestamp nameLastUpdated;
+		private Timestamp masteriesLastUpdated;
+	}
+}
@@ -0,0 +1,122 @@
+package gg.championmastery.highscoresService.persistence;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import gg.championmastery.highscoresService.HighscoresService;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Checks the status of every summoner whose PUUID exists on more than one platform. Transfers are normally detected
+ * when a summoner is saved (see {@link TransferDetector}), so this only needs to run once, to fix statuses that were
+ * set before that (or by a save that raced with another save of the same player).
+ * <p>
+ * PUUIDs are split into chunks, and each chunk is checked in its own transaction on a fixed pool of threads.
+ */
+public class TransferReconciler {
+
+	private static final Logger logger = LoggerFactory.getLogger(TransferReconciler.class);
+	/** The number of PUUIDs checked in each transaction. */
+	private static final int CHUNK_SIZE = 500;
+
+	private final Consumer<SavedScores> onSaved;
+	private final int threads;
+
+	/**
+	 * @param onSaved Called with every summoner whose status changed, after their transaction has been committed.
+	 * @param threads The number of chunks to check at once.
+	 */
+	public TransferReconciler(Consumer<SavedScores> onSaved, int threads) {
+		this.onSaved = onSaved;
+		this.threads = threads;
+	}
+
+	/**
+	 * Checks every summoner that shares a PUUID with another summoner. This blocks until every chunk has been checked.
+	 *
+	 * @return The number of summoners whose status was changed.
+	 * @throws InterruptedException Thrown if the thread is interrupted while waiting for the chunks to be checked.
+	 */
+	public int run() throws InterruptedException {
+		List<String> puuids = selectSharedPuuids();
+		logger.info(String.format("Checking %d PUUIDs that exist on multiple platforms", puuids.size()));
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads,
+				new ThreadFactoryBuilder().setNameFormat("transfer-reconciler-%d").setDaemon(true).build());
+		try {
+			List<Future<Integer>> chunks = new ArrayList<>();
+			for (int i = 0; i < puuids.size(); i += CHUNK_SIZE) {
+				List<String> chunk = puuids.subList(i, Math.min(i + CHUNK_SIZE, puuids.size()));
+				chunks.add(executor.submit(() -> reconcile(chunk)));
+			}
+
+			int changed = 0;
+			int failed = 0;
+			for (Future<Integer> chunk : chunks) {
+				try {
+					changed += chunk.get();
+				} catch (ExecutionException ex) {
+					failed++;
+					logger.error("Error checking transferred summoners", ex.getCause());
+				}
+			}
+			logger.info(String.format("Changed the status of %d summoners (%d of %d chunks failed)", changed, failed, chunks.size()));
+			return changed;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static List<String> selectSharedPuuids() {
+		List<String> puuids = new ArrayList<>();
+		try (Session session = HighscoresService.getHibernateSessionFactory().openSession()) {
+			session.doWork(connection -> {
+				try (PreparedStatement statement = connection.prepareStatement(
+						"SELECT encrypted_puuid FROM summoners WHERE encrypted_puuid IS NOT NULL GROUP BY encrypted_puuid HAVING COUNT(*) > 1");
+					 ResultSet results = statement.executeQuery()) {
+					while (results.next()) {
+						puuids.add(results.getString(1));
+					}
+				}
+			});
+		}
+		return puuids;
+	}
+
+	private int reconcile(List<String> puuids) {
+		// The detector only uses the PUUIDs, so any platform will do.
+		List<SummonerEntity.Key> keys = new ArrayList<>(puuids.size());
+		for (String puuid : puuids) {
+			keys.add(new SummonerEntity.Key("", puuid));
+		}
+
+		List<SavedScores> changes;
+		Transaction tx = null;
+		try (Session session = HighscoresService.getHibernateSessionFactory().openSession()) {
+			tx = session.beginTransaction();
+			changes = session.doReturningWork(connection -> TransferDetector.detect(connection, keys).getOtherChanges());
+			tx.commit();
+		} catch (RuntimeException ex) {
+			if (tx != null && tx.isActive()) {
+				tx.rollback();
+			}
+			throw ex;
+		}
+
+		for (SavedScores saved : changes) {
+			onSaved.accept(saved);
+		}
+		return changes.size();
+	}
+}
@@ -0,0 +1,435 @@
+package gg.championmastery.highscoresService.persistence;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import gg.championmastery.highscoresService.HighscoresService;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Queues summoners to be saved, and saves them in batches using multi-row upserts. If a summoner is written again
+ * before their previous write has been saved, the writes are coalesced and only the one from the most recent lookup is
+ * saved.
+ * <p>
+ * The queue is bounded, and writes for new summoners are dropped (and logged) while it is full. Batches are saved every
+ * {@code flushInterval} milliseconds, or as soon as a full batch is queued. If a batch can't be saved, its summoners are
+ * queued again and retried by the next flush, up to {@link #MAX_ATTEMPTS} times before they are dropped.
+ */
+public class WriteBehindScoreWriter implements ScoreWriter {
+
+	private static final Logger logger = LoggerFactory.getLogger(WriteBehindScoreWriter.class);
+	/** The maximum number of rows inserted by a single statement, to keep statements under MySQL's placeholder limit. */
+	private static final int MAX_ROWS_PER_STATEMENT = 1000;
+	/**
+	 * The largest batch size that can be used. Statements about summoners have a row (of up to 7 placeholders) for each
+	 * summoner in the batch, so this keeps them under MySQL's limit of 65535 placeholders.
+	 */
+	private static final int MAX_BATCH_SIZE = MAX_ROWS_PER_STATEMENT;
+	/** The number of times a summoner's write is attempted before it is dropped. */
+	private static final int MAX_ATTEMPTS = 3;
+
+	private static final Gauge queueDepth = Gauge.build()
+			.name("score_write_queue_depth")
+			.help("Summoners waiting to be saved to the database.")
+			.register();
+	private static final Counter writes = Counter.build()
+			.name("score_write_requests_total")
+			.help("Summoners submitted to the write-behind queue, by outcome.")
+			.labelNames("outcome")
+			.register();
+	private static final Histogram batchSizes = Histogram.build()
+			.name("score_write_batch_size")
+			.help("Summoners saved in each batch.")
+			.buckets(1, 5, 10, 25, 50, 100, 250, 500, 1000)
+			.register();
+	private static final Histogram flushDuration = Histogram.build()
+			.name("score_write_flush_duration_seconds")
+			.help("Time taken to save a batch of summoners to the database.")
+			.register();
+	private static final Counter flushFailures = Counter.build()
+			.name("score_write_flush_failures_total")
+			.help("Batches that could not be saved to the database.")
+			.register();
+	private static final Counter failedWrites = Counter.build()
+			.name("score_write_failed_summoners_total")
+			.help("Summoners in batches that could not be saved, by whether they were queued again or dropped.")
+			.labelNames("outcome")
+			.register();
+
+	private final Consumer<SavedScores> onSaved;
+	private final int capacity;
+	private final int batchSize;
+	/** Summoners waiting to be saved, in the order they were first queued. Guarded by {@code this}. */
+	private final LinkedHashMap<SummonerEntity.Key, SummonerScores> pending = new LinkedHashMap<>();
+	/** The number of failed attempts to save each queued summoner that has failed before. Guarded by {@code this}. */
+	private final Map<SummonerEntity.Key, Integer> failedAttempts = new HashMap<>();
+	private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(
+			new ThreadFactoryBuilder().setNameFormat("score-writer").build()
+	);
+	/** Whether a flush has been requested because a full batch is waiting. */
+	private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+	/**
+	 * @param onSaved Called after a summoner's scores have been committed to the database.
+	 * @param capacity The maximum number of summoners that can be waiting to be saved.
+	 * @param batchSize The maximum number of summoners saved in each transaction (which is capped at
+	 * 		{@link #MAX_BATCH_SIZE}).
+	 * @param flushInterval How often (in milliseconds) queued summoners are saved.
+	 */
+	public WriteBehindScoreWriter(Consumer<SavedScores> onSaved, int capacity, int batchSize, long flushInterval) {
+		this.onSaved = onSaved;
+		this.capacity = capacity;
+		if (batchSize > MAX_BATCH_SIZE) {
+			logger.warn(String.format("Write-behind batch size %d is too large, using %d instead", batchSize, MAX_BATCH_SIZE));
+		}
+		this.batchSize = Math.min(batchSize, MAX_BATCH_SIZE);
+
+		flusher.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+		// Save anything still queued when the service is stopped.
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			flusher.shutdown();
+			try {
+				flusher.awaitTermination(30, TimeUnit.SECONDS);
+			} catch (InterruptedException ignored) {
+			}
+			flush();
+		}, "score-writer-shutdown"));
+	}
+
+	@Override
+	public void write(SummonerScores scores) {
+		int depth;
+		synchronized (this) {
+			SummonerScores queued = pending.get(scores.getKey());
+			if (queued != null) {
+				// Replacing the value keeps the summoner's original position in the queue. Writes can be submitted out of
+				// order, so an older lookup never replaces a newer one.
+				if (!scores.getLookupTime().isBefore(queued.getLookupTime())) {
+					pending.put(scores.getKey(), scores);
+				}
+				writes.labels("coalesced").inc();
+				return;
+			}
+			if (pending.size() >= capacity) {
+				writes.labels("dropped").inc();
+				logger.warn(String.format("Write-behind queue is full, dropping scores for '%s' (%s)", scores.getRiotId(), scores.getPlatform()));
+				return;
+			}
+			pending.put(scores.getKey(), scores);
+			depth = pending.size();
+		}
+		writes.labels("queued").inc();
+		queueDepth.set(depth);
+
+		if (depth >= batchSize && flushRequested.compareAndSet(false, true)) {
+			flusher.execute(() -> {
+				flushRequested.set(false);
+				flush();
+			});
+		}
+	}
+
+	/**
+	 * Saves every queued summoner, one batch at a time. If a batch fails, it is queued again and the rest of the queue
+	 * is left for the next flush, so that a failing database isn't retried in a tight loop.
+	 */
+	private void flush() {
+		List<SummonerScores> batch;
+		while (!(batch = takeBatch()).isEmpty()) {
+			try {
+				saveBatch(batch);
+			} catch (Exception ex) {
+				flushFailures.inc();
+				logger.error(String.format("Error saving batch of %d summoners", batch.size()), ex);
+				requeue(batch);
+				return;
+			}
+			synchronized (this) {
+				for (SummonerScores scores : batch) {
+					failedAttempts.remove(scores.getKey());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Queues the summoners from a batch that couldn't be saved again, unless a newer lookup for them has been queued
+	 * since (which replaces them), or they have already been attempted {@link #MAX_ATTEMPTS} times. Requeued summoners
+	 * were already accepted, so they are queued even if the queue is full.
+	 */
+	private synchronized void requeue(List<SummonerScores> batch) {
+		for (SummonerScores scores : batch) {
+			int attempts = failedAttempts.merge(scores.getKey(), 1, Integer::sum);
+			SummonerScores queued = pending.get(scores.getKey());
+			if (queued != null && !queued.getLookupTime().isBefore(scores.getLookupTime())) {
+				continue;
+			}
+			if (attempts >= MAX_ATTEMPTS) {
+				failedAttempts.remove(scores.getKey());
+				failedWrites.labels("dropped").inc();
+				logger.warn(String.format("Dropping scores for '%s' (%s) after %d failed attempts to save them", scores.getRiotId(), scores.getPlatform(), attempts));
+				continue;
+			}
+			pending.put(scores.getKey(), scores);
+			failedWrites.labels("requeued").inc();
+		}
+		queueDepth.set(pending.size());
+	}
+
+	private synchronized List<SummonerScores> takeBatch() {
+		List<SummonerScores> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+		Iterator<SummonerScores> iterator = pending.values().iterator();
+		while (batch.size() < batchSize && iterator.hasNext()) {
+			batch.add(iterator.next());
+			iterator.remove();
+		}
+		queueDepth.set(pending.size());
+		return batch;
+	}
+
+	/**
+	 * Saves a batch of summoners and their scores in a single transaction, then passes the saved scores to
+	 * {@code onSaved}. Exceptions are only thrown if the batch was not committed, so that it can be retried.
+	 *
+	 * @param batch The summoners to save. Each summoner must only be included once.
+	 */
+	private void saveBatch(List<SummonerScores> batch) {
+		batchSizes.observe(batch.size());
+		Histogram.Timer timer = flushDuration.startTimer();
+		List<SavedScores> savedScores = new ArrayList<>(batch.size());
+		List<SummonerScores> unchanged = new ArrayList<>();
+		List<SummonerScores> changed = new ArrayList<>();
+		Transaction tx = null;
+		try (Session session = HighscoresService.getHibernateSessionFactory().openSession()) {
+			tx = session.beginTransaction();
+			Histogram.Timer transactionTimer = ScoreWriterMetrics.transactionDuration.labels("write_behind").startTimer();
+			session.doWork(connection -> {
+				// Summoners whose scores haven't changed only need their lookup times updated.
+				Set<SummonerEntity.Key> unchangedKeys = selectUnchanged(connection, batch);
+				for (SummonerScores scores : batch) {
+					(unchangedKeys.contains(scores.getKey()) ? unchanged : changed).add(scores);
+				}
+				touchSummoners(connection, unchanged);
+				if (changed.isEmpty()) {
+					return;
+				}
+
+				upsertSummoners(connection, changed);
+				List<SummonerEntity.Key> keys = new ArrayList<>(changed.size());
+				for (SummonerScores scores : changed) {
+					keys.add(scores.getKey());
+				}
+				TransferDetector.Result transfers = TransferDetector.detect(connection, keys);
+				Map<SummonerEntity.Key, SavedSummoner> summoners = selectSummoners(connection, changed);
+				Map<Long, Map<Short, Integer>> previousScores = selectScores(connection, summoners.values());
+				upsertScores(connection, changed, summoners);
+
+				for (SummonerScores scores : changed) {
+					SavedSummoner summoner = summoners.get(scores.getKey());
+					Map<Short, Integer> previous = previousScores.getOrDefault(summoner.playerId, Collections.emptyMap());
+					SummonerEntity.Status previousStatus = transfers.getPreviousStatus(scores.getKey(), summoner.status);
+					savedScores.add(new SavedScores(summoner.playerId, summoner.status, scores, previousStatus, Collections.unmodifiableMap(previous)));
+				}
+				savedScores.addAll(transfers.getOtherChanges());
+			});
+			tx.commit();
+			transactionTimer.observeDuration();
+			for (SummonerScores scores : batch) {
+				ScoreWriterMetrics.observeLag("write_behind", scores);
+			}
+			ScoreWriterMetrics.changeDetection.labels("write_behind", "skipped").inc(unchanged.size());
+			ScoreWriterMetrics.changeDetection.labels("write_behind", "applied").inc(changed.size());
+		} catch (RuntimeException ex) {
+			if (tx != null && tx.isActive()) {
+				tx.rollback();
+			}
+			throw ex;
+		} finally {
+			timer.observeDuration();
+		}
+
+		// The batch is committed, so a failing listener must not cause it to be requeued (and its changes applied again).
+		for (SavedScores saved : savedScores) {
+			try {
+				onSaved.accept(saved);
+			} catch (RuntimeException ex) {
+				logger.error(String.format("Error updating indexes after saving summoner %d (%s)", saved.getPlayerId(), saved.getScores().getPlatform()), ex);
+			}
+		}
+	}
+
+	/**
+	 * Finds the summoners in a batch whose saved Riot ID, revision date and scores match the batch.
+	 */
+	private static Set<SummonerEntity.Key> selectUnchanged(Connection connection, List<SummonerScores> batch) throws SQLException {
+		String sql = "SELECT platform, encrypted_puuid, riot_id, revision_date, scores_digest FROM summoners WHERE (platform, encrypted_puuid) IN (" +
+				String.join(", ", Collections.nCopies(batch.size(), "(?, ?)")) + ")";
+		Map<SummonerEntity.Key, SummonerScores> scoresByKey = new HashMap<>();
+		try (PreparedStatement statement = connection.prepareStatement(sql)) {
+			int parameter = 1;
+			for (SummonerScores scores : batch) {
+				statement.setString(parameter++, scores.getPlatform());
+				statement.setString(parameter++, scores.getPuuid());
+				scoresByKey.put(scores.getKey(), scores);
+			}
+
+			Set<SummonerEntity.Key> unchanged = new HashSet<>();
+			try (ResultSet results = statement.executeQuery()) {
+				while (results.next()) {
+					SummonerEntity.Key key = new SummonerEntity.Key(results.getString(1), results.getString(2));
+					long digest = results.getLong(5);
+					Long savedDigest = results.wasNull() ? null : digest;
+					if (scoresByKey.get(key).isUnchangedFrom(results.getString(3), results.getTimestamp(4).toInstant(), savedDigest)) {
+						unchanged.add(key);
+					}
+				}
+			}
+			return unchanged;
+		}
+	}
+
+	private static void touchSummoners(Connection connection, List<SummonerScores> unchanged) throws SQLException {
+		if (unchanged.isEmpty()) {
+			return;
+		}
+
+		try (PreparedStatement statement = connection.prepareStatement(
+				"UPDATE summoners SET name_last_updated = ?, masteries_last_updated = ? WHERE platform = ? AND encrypted_puuid = ?")) {
+			for (SummonerScores scores : unchanged) {
+				statement.setTimestamp(1, Timestamp.from(scores.getRiotIdLookupTime()));
+				statement.setTimestamp(2, Timestamp.from(scores.getLookupTime()));
+				statement.setString(3, scores.getPlatform());
+				statement.setString(4, scores.getPuuid());
+				statement.addBatch();
+			}
+			statement.executeBatch();
+		}
+	}
+
+	private static void upsertSummoners(Connection connection, List<SummonerScores> batch) throws SQLException {
+		String sql = "INSERT INTO summoners (platform, encrypted_puuid, riot_id, revision_date, name_last_updated, masteries_last_updated, scores_digest) VALUES " +
+				String.join(", ", Collections.nCopies(batch.size(), "(?, ?, ?, ?, ?, ?, ?)")) +
+				" AS new ON DUPLICATE KEY UPDATE riot_id = new.riot_id, revision_date = GREATEST(summoners.revision_date, new.revision_date), " +
+				"name_last_updated = new.name_last_updated, masteries_last_updated = new.masteries_last_updated, scores_digest = new.scores_digest";
+		try (PreparedStatement statement = connection.prepareStatement(sql)) {
+			int parameter = 1;
+			for (SummonerScores scores : batch) {
+				statement.setString(parameter++, scores.getPlatform());
+				statement.setString(parameter++, scores.getPuuid());
+				statement.setString(parameter++, scores.getRiotId());
+				statement.setTimestamp(parameter++, Timestamp.from(scores.getRevisionDate()));
+				statement.setTimestamp(parameter++, Timestamp.from(scores.getRiotIdLookupTime()));
+				statement.setTimestamp(parameter++, Timestamp.from(scores.getLookupTime()));
+				statement.setLong(parameter++, scores.getScoresDigest());
+			}
+			statement.executeUpdate();
+		}
+	}
+
+	private static Map<SummonerEntity.Key, SavedSummoner> selectSummoners(Connection connection, List<SummonerScores> batch) throws SQLException {
+		String sql = "SELECT platform, encrypted_puuid, player_id, summoner_status FROM summoners WHERE (platform, encrypted_puuid) IN (" +
+				String.join(", ", Collections.nCopies(batch.size(), "(?, ?)")) + ")";
+		try (PreparedStatement statement = connection.prepareStatement(sql)) {
+			int parameter = 1;
+			for (SummonerScores scores : batch) {
+				statement.setString(parameter++, scores.getPlatform());
+				statement.setString(parameter++, scores.getPuuid());
+			}
+
+			Map<SummonerEntity.Key, SavedSummoner> summoners = new HashMap<>();
+			try (ResultSet results = statement.executeQuery()) {
+				while (results.next()) {
+					SummonerEntity.Key key = new SummonerEntity.Key(results.getString(1), results.getString(2));
+					summoners.put(key, new SavedSummoner(results.getLong(3), SummonerEntity.Status.values()[results.getInt(4)]));
+				}
+			}
+			return summoners;
+		}
+	}
+
+	/**
+	 * Reads the scores that are currently stored for each summoner, mapped by player ID and then by champion ID.
+	 * Summoners without any stored scores are not included.
+	 */
+	private static Map<Long, Map<Short, Integer>> selectScores(Connection connection, Collection<SavedSummoner> summoners) throws SQLException {
+		String sql = "SELECT player_id, champion_id, mastery_points FROM mastery_scores WHERE player_id IN (" +
+				String.join(", ", Collections.nCopies(summoners.size(), "?")) + ")";
+		try (PreparedStatement statement = connection.prepareStatement(sql)) {
+			int parameter = 1;
+			for (SavedSummoner summoner : summoners) {
+				statement.setLong(parameter++, summoner.playerId);
+			}
+
+			Map<Long, Map<Short, Integer>> scores = new HashMap<>();
+			try (ResultSet results = statement.executeQuery()) {
+				while (results.next()) {
+					scores.computeIfAbsent(results.getLong(1), playerId -> new HashMap<>()).put(results.getShort(2), results.getInt(3));
+				}
+			}
+			return scores;
+		}
+	}
+
+	private static void upsertScores(Connection connection, List<SummonerScores> batch, Map<SummonerEntity.Key, SavedSummoner> summoners) throws SQLException {
+		List<Object[]> rows = new ArrayList<>();
+		for (SummonerScores scores : batch) {
+			long playerId = summoners.get(scores.getKey()).playerId;
+			for (Map.Entry<Short, Integer> score : scores.getScores().entrySet()) {
+				rows.add(new Object[]{scores.getPlatform(), playerId, score.getKey(), score.getValue()});
+			}
+		}
+
+		for (int start = 0; start < rows.size(); start += MAX_ROWS_PER_STATEMENT) {
+			List<Object[]> chunk = rows.subList(start, Math.min(start + MAX_ROWS_PER_STATEMENT, rows.size()));
+			String sql = "INSERT INTO mastery_scores (platform, player_id, champion_id, mastery_points) VALUES " +
+					String.join(", ", Collections.nCopies(chunk.size(), "(?, ?, ?, ?)")) +
+					" AS new ON DUPLICATE KEY UPDATE mastery_points = new.mastery_points";
+			try (PreparedStatement statement = connection.prepareStatement(sql)) {
+				int parameter = 1;
+				for (Object[] row : chunk) {
+					statement.setString(parameter++, (String) row[0]);
+					statement.setLong(parameter++, (Long) row[1]);
+					statement.setShort(parameter++, (Short) row[2]);
+					statement.setInt(parameter++, (Integer) row[3]);
+				}
+				statement.executeUpdate();
+			}
+		}
+	}
+
+	/** The generated ID and status of a summoner that has been saved. */
+	private static class SavedSummoner {
+		private final long playerId;
+		private final SummonerEntity.Status status;
+
+		private SavedSummoner(long playerId, SummonerEntity.Status status) {
+			this.playerId = playerId;
+			this.status = status;
+		}
+	}
+}
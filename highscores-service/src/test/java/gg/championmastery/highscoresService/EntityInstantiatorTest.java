@@ -0,0 +1,68 @@
+package gg.championmastery.highscoresService;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EntityInstantiatorTest {
+
+	@Test
+	void ownerCanReclaimItsOwnClaim() {
+		TestInstantiator instantiator = new TestInstantiator();
+		assertTrue(instantiator.claim(1L));
+		assertTrue(instantiator.claim(1L));
+	}
+
+	@Test
+	void liveOwnerKeepsItsClaim() throws InterruptedException {
+		TestInstantiator instantiator = new TestInstantiator();
+		assertTrue(instantiator.claim(1L));
+		assertFalse(claimOnAnotherThread(instantiator, 1L));
+
+		instantiator.persistEntity(1L);
+		assertTrue(claimOnAnotherThread(instantiator, 1L));
+	}
+
+	@Test
+	void claimOfDeadOwnerIsTakenOver() throws InterruptedException {
+		TestInstantiator instantiator = new TestInstantiator();
+		assertTrue(claimOnAnotherThread(instantiator, 1L));
+		assertTrue(instantiator.claim(1L));
+	}
+
+	/** Claims an ID on a new thread, which has died by the time this returns. */
+	private static boolean claimOnAnotherThread(TestInstantiator instantiator, long id) throws InterruptedException {
+		AtomicBoolean claimed = new AtomicBoolean();
+		Thread thread = new Thread(() -> claimed.set(instantiator.claim(id)));
+		thread.start();
+		thread.join();
+		return claimed.get();
+	}
+
+	private static final class TestEntity implements HibernateEntity<Long> {
+		private final long id;
+
+		private TestEntity(long id) {
+			this.id = id;
+		}
+
+		@Override
+		public Long getIdentifier() {
+			return id;
+		}
+	}
+
+	private static final class TestInstantiator extends EntityInstantiator<TestEntity, Long> {
+		private TestInstantiator() {
+			super(TestEntity.class);
+		}
+
+		@Override
+		protected TestEntity instantiateEntity(Long id) {
+			return new TestEntity(id);
+		}
+	}
+}
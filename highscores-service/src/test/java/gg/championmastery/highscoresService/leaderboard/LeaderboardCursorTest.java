@@ -0,0 +1,60 @@
+package gg.championmastery.highscoresService.leaderboard;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LeaderboardCursorTest {
+
+	@Test
+	void roundTrips() {
+		LeaderboardCursor cursor = LeaderboardCursor.decode((short) -1, new LeaderboardCursor((short) -1, 123456789, 42L, 300).encode());
+		assertEquals(-1, cursor.getChampionId());
+		assertEquals(123456789, cursor.getPoints());
+		assertEquals(42L, cursor.getPlayerId());
+		assertEquals(300, cursor.getPosition());
+	}
+
+	@Test
+	void rejectsCursorForAnotherChampion() {
+		String token = new LeaderboardCursor((short) 1, 1000, 1L, 100).encode();
+		assertThrows(IllegalArgumentException.class, () -> LeaderboardCursor.decode((short) 2, token));
+	}
+
+	@Test
+	void rejectsMalformedTokens() {
+		String[] tokens = {
+				"",
+				"not base64!",
+				encode(1, (short) 1, 1000, 1L, 100, 0),
+				encode(2, (short) 1, 1000, 1L, 100, -1),
+				encode(1, (short) 1, -1, 1L, 100, -1),
+				encode(1, (short) 1, 1000, 1L, -1, -1),
+		};
+		for (String token : tokens) {
+			assertThrows(IllegalArgumentException.class, () -> LeaderboardCursor.decode((short) 1, token), token);
+		}
+	}
+
+	/**
+	 * Encodes a token by hand.
+	 *
+	 * @param extraByte A byte to append to the token, or -1 for none.
+	 */
+	private static String encode(int version, short championId, int points, long playerId, int position, int extraByte) {
+		ByteBuffer buffer = ByteBuffer.allocate(1 + Short.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES + (extraByte >= 0 ? 1 : 0))
+				.put((byte) version)
+				.putShort(championId)
+				.putInt(points)
+				.putLong(playerId)
+				.putInt(position);
+		if (extraByte >= 0) {
+			buffer.put((byte) extraByte);
+		}
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+	}
+}
@@ -0,0 +1,88 @@
+package gg.championmastery.highscoresService.leaderboard;
+
+import com.google.common.collect.BoundType;
+import com.google.common.collect.TreeMultiset;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScoreSketchTest {
+
+	/**
+	 * Checks that the buckets cover every non-negative {@code int} without gaps or overlaps, and that each bucket is at
+	 * most 1/128th as wide as the scores it contains.
+	 */
+	@Test
+	void bucketsAreContiguous() {
+		long expectedLower = 0;
+		for (int bucket = 0; bucket < ScoreSketch.BUCKET_COUNT; bucket++) {
+			long lower = ScoreSketch.getLowerBound(bucket);
+			long width = ScoreSketch.getWidth(bucket);
+			assertEquals(expectedLower, lower, "Lower bound of bucket " + bucket);
+			assertTrue(width == 1 || width * 128 <= lower, "Width of bucket " + bucket);
+			expectedLower = lower + width;
+		}
+		assertEquals(1L << 31, expectedLower);
+	}
+
+	@Test
+	void scoresAreInTheirBucket() {
+		Random random = new Random(1);
+		int[] edges = {0, 1, 127, 128, 129, 255, 256, 257, 1 << 20, (1 << 20) - 1, (1 << 30) - 1, 1 << 30, Integer.MAX_VALUE};
+		for (int points : edges) {
+			assertInBucket(points);
+		}
+		for (int i = 0; i < 100000; i++) {
+			// Spread scores over every power of two.
+			assertInBucket(random.nextInt(Integer.MAX_VALUE) >>> random.nextInt(31));
+		}
+	}
+
+	/**
+	 * Checks that the estimated number of higher scores is never off by more than the number of scores in the bucket
+	 * containing the points.
+	 */
+	@Test
+	void estimatesAreWithinOneBucket() {
+		Random random = new Random(2);
+		ScoreSketch sketch = new ScoreSketch();
+		TreeMultiset<Integer> reference = TreeMultiset.create();
+		for (int i = 0; i < 200000; i++) {
+			int points = (int) Math.min(Integer.MAX_VALUE, Math.round(Math.exp(random.nextDouble() * 16)));
+			if (random.nextInt(4) == 0 && !reference.isEmpty()) {
+				points = reference.firstEntry().getElement();
+				sketch.remove(points);
+				reference.remove(points);
+			} else {
+				sketch.add(points);
+				reference.add(points);
+			}
+
+			if (i % 1000 == 0) {
+				assertEquals(reference.size(), sketch.getTotal());
+				for (int probe : new int[]{points, points - 1, random.nextInt(10000000)}) {
+					if (probe < 0) {
+						continue;
+					}
+					int bucket = ScoreSketch.getBucket(probe);
+					int lower = (int) ScoreSketch.getLowerBound(bucket);
+					int upper = (int) (lower + ScoreSketch.getWidth(bucket) - 1);
+					int inBucket = reference.subMultiset(lower, BoundType.CLOSED, upper, BoundType.CLOSED).size();
+					int exact = reference.tailMultiset(probe, BoundType.OPEN).size();
+					double estimate = sketch.countAbove(probe);
+					assertTrue(Math.abs(estimate - exact) <= inBucket, String.format("Estimated %.1f scores above %d, but there are %d", estimate, probe, exact));
+				}
+			}
+		}
+	}
+
+	private static void assertInBucket(int points) {
+		int bucket = ScoreSketch.getBucket(points);
+		assertTrue(bucket >= 0 && bucket < ScoreSketch.BUCKET_COUNT, "Bucket of " + points);
+		long lower = ScoreSketch.getLowerBound(bucket);
+		assertTrue(lower <= points && points < lower + ScoreSketch.getWidth(bucket), "Bounds of the bucket of " + points);
+	}
+}
@@ -0,0 +1,86 @@
+package gg.championmastery.highscoresService.leaderboard;
+
+import com.google.common.collect.BoundType;
+import com.google.common.collect.TreeMultiset;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SortedScoreIndexTest {
+
+	/**
+	 * Applies random additions and removals (including removals of scores that aren't in the index, and scores that are
+	 * removed and added again while a merge is running), and checks every rank against a reference multiset.
+	 */
+	@Test
+	void matchesReferenceThroughBackgroundMerges() throws InterruptedException {
+		Random random = new Random(1);
+		TreeMultiset<Integer> reference = TreeMultiset.create();
+		SortedScoreIndex.Builder builder = new SortedScoreIndex.Builder();
+		// Plenty of ties, so that removed scores are often duplicated in the buffer.
+		for (int i = 200000; i > 0; i--) {
+			builder.add(i / 8);
+			reference.add(i / 8);
+		}
+		SortedScoreIndex index = builder.build();
+
+		boolean merged = false;
+		int previousPending = 0;
+		for (int i = 0; i < 300000; i++) {
+			int points = random.nextInt(30000);
+			if (random.nextBoolean()) {
+				index.add(points);
+				reference.add(points);
+			} else {
+				index.remove(points);
+				reference.remove(points);
+			}
+
+			// Each change alters the number of pending changes by at most one, so a larger drop means a merge was published.
+			int pending = index.getPendingChanges();
+			merged |= pending < previousPending - 1;
+			previousPending = pending;
+			if (i % 500 == 0) {
+				assertMatches(reference, index, random, points);
+			}
+		}
+		assertTrue(merged, "No merge was published");
+
+		// Check the final state once every merge has been published.
+		for (int i = 0; i < 100 && index.getPendingChanges() > 4096; i++) {
+			Thread.sleep(10);
+		}
+		assertMatches(reference, index, random, 0);
+	}
+
+	/**
+	 * Checks that a score that is removed from the buffer and added again is counted once.
+	 */
+	@Test
+	void readdedScoreIsCountedOnce() {
+		SortedScoreIndex.Builder builder = new SortedScoreIndex.Builder();
+		builder.add(30);
+		builder.add(20);
+		builder.add(10);
+		SortedScoreIndex index = builder.build();
+
+		index.remove(20);
+		index.add(20);
+		index.remove(40);
+
+		assertEquals(3, index.size());
+		assertEquals(1, index.countAbove(20));
+		assertEquals(2, index.countAbove(19));
+	}
+
+	private static void assertMatches(TreeMultiset<Integer> reference, SortedScoreIndex index, Random random, int changed) {
+		assertEquals(reference.size(), index.size());
+		int[] probes = {-1, 0, changed - 1, changed, changed + 1, random.nextInt(30000), random.nextInt(30000), Integer.MAX_VALUE};
+		for (int points : probes) {
+			assertEquals(reference.tailMultiset(points, BoundType.OPEN).size(), index.countAbove(points), "Scores above " + points);
+		}
+	}
+}
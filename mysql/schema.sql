@@ -14,7 +14,8 @@ CREATE TABLE mastery_scores (
 	/** Used for selecting mastery scores for a specific player. */
 	PRIMARY KEY (player_id, champion_id),
 
-	/** Used for selecting global top players for each champion. */
+	/** Used for selecting global top players for each champion. InnoDB appends the primary key to each entry, so ties
+	are ordered by player_id, which paginated leaderboards use as part of their cursors. */
 	INDEX IX_mastery_points (champion_id, mastery_points DESC),
 	INDEX IX_regional_mastery_points (platform, champion_id, mastery_points DESC)
 ) ENGINE = InnoDB;
@@ -32,6 +33,8 @@ CREATE TABLE summoners (
     /** The value of the `revisionDate` field from the Summoner-v4 API. */
 	revision_date          TIMESTAMP                                                     NOT NULL,
 	summoner_status        TINYINT UNSIGNED DEFAULT 0                                    NOT NULL,
+	/** A fingerprint of the summoner's saved scores, used to skip writes when a lookup didn't change any scores. */
+	scores_digest          BIGINT                                                        NULL,
 
 	CONSTRAINT UX_player_id UNIQUE (player_id),
     -- TODO is this still needed after changing primary key from summoner ID to PUUID?
@@ -42,10 +45,13 @@ CREATE TABLE summoners (
 
 	PRIMARY KEY (platform, encrypted_puuid),
 
-	/** Used for selecting summoners to automatically update their mastery scores. */
-	INDEX IX_masteries_last_updated (platform, masteries_last_updated),
+	/** Used for selecting summoners to automatically update their mastery scores. Ties are ordered by player_id, which
+	the refresh scheduler uses as part of its cursor. */
+	INDEX IX_masteries_last_updated (platform, masteries_last_updated, player_id),
 	/** Used for selecting summoners to automatically update their names. */
-	INDEX IX_name_last_updated (platform, name_last_updated)
+	INDEX IX_name_last_updated (platform, name_last_updated),
+	/** Used by the highscores service to resolve Riot IDs without calling the Riot API. */
+	INDEX IX_riot_id (platform, riot_id)
 ) ENGINE = InnoDB;
 
 CREATE TABLE platforms (
@@ -98,6 +104,7 @@ VALUES ('BR', 'BR1', 3),
 
 DELIMITER $$
 
+/* Transfers are detected when summoners are saved; this recomputes every status, and is only used for manual repairs. */
 CREATE PROCEDURE mark_transferred_summoners()
 BEGIN
 	UPDATE summoners
@@ -127,12 +134,6 @@ END $$
 DELIMITER ;
 
 
-/* Mark transferred summoners at regular intervals. */
-CREATE EVENT find_transferred_accounts
-	ON SCHEDULE AT CURRENT_TIMESTAMP + INTERVAL 6 HOUR
-	DO
-	CALL mark_transferred_summoners();
-
 /* Update rank thresholds at regular intervals. */
 CREATE EVENT update_rank_thresholds_table
     ON SCHEDULE AT CURRENT_TIMESTAMP + INTERVAL 1 HOUR
@@ -38,6 +38,11 @@ export default class Config {
 
 	/** The base URL of the highscores service (e.g. http://localhost:8181). */
 	public static readonly highscoresServiceUrl = process.env.HIGHSCORES_SERVICE_URL;
+	/**
+	 * Whether responses from the highscores service should be requested as CBOR instead of JSON, which is faster to
+	 * decode.
+	 */
+	public static readonly highscoresServiceCbor: boolean = process.env.HIGHSCORES_SERVICE_CBOR === "true";
 
 	/** The base URL of the static data service (e.g. http://localhost:8080). */
 	public static readonly publicDragonUrl = process.env.PUBLIC_DRAGON_URL;
@@ -4,39 +4,115 @@ import Config from "./Config";
 import http = require("http");
 import https = require("https");
 import VError = require("verror");
+import zlib = require("zlib");
+import {decode as decodeCbor} from "cbor-x";
 import {RankThreshold} from "./RankThresholds";
 
 const cacheHandler: CacheHandler = new CacheHandler();
 const httpModule = Config.highscoresServiceUrl.startsWith("https://") ? https : http;
 
+/** The formats that responses from the highscores service are accepted in, in order of preference. */
+const acceptHeader: string = Config.highscoresServiceCbor ? "application/cbor, text/json;q=0.5" : "text/json";
+
+/** The maximum number of responses kept in conditionalResponses. */
+const MAX_CONDITIONAL_RESPONSES: number = 500;
+/**
+ * Responses from leaderboard endpoints that included an ETag, keyed by URL. The Map's insertion order is kept as
+ * least recently used first, so the oldest entry can be evicted once there are more than MAX_CONDITIONAL_RESPONSES.
+ */
+const conditionalResponses: Map<string, {etag: string, contentType: string, body: Buffer}> = new Map();
+
+/**
+ * Marks a stored response as the most recently used.
+ * @param url The URL of the response.
+ */
+function touchConditionalResponse(url: string): void {
+	const stored = conditionalResponses.get(url);
+	conditionalResponses.delete(url);
+	conditionalResponses.set(url, stored);
+}
+
+/**
+ * Decodes the body of a successful response from the highscores service, which is CBOR or JSON depending on the
+ * format that was negotiated.
+ * @param contentType The Content-Type header of the response.
+ * @param body The body of the response.
+ * @return The decoded body.
+ */
+function decodeBody(contentType: string | undefined, body: Buffer): any {
+	if (contentType && contentType.startsWith("application/cbor")) {
+		return decodeCbor(body);
+	}
+	return JSON.parse(body.toString("utf8"));
+}
+
 /**
- * Makes an API request to the highscores service.
+ * Makes an API request to the highscores service. For conditional requests, if a previous response for the same URL
+ * included an ETag, the request is made conditional so that unchanged data doesn't need to be sent again.
  * @param path The path of the request (e.g. "highscoresSummary")
  * @param query key/value pairs to encode in the query string.
- * @return A Promise that will be resolved with the body of the response, or rejected with an Error.
+ * @param conditional Whether to keep the response for conditional requests. This should only be used for shared data
+ * such as leaderboards, not for data about individual players.
+ * @return A Promise that will be resolved with the decoded body of the response, or rejected with an Error.
  */
-function makeHighscoresServiceAPIRequest(path: string, query: {[key: string]: string | number} = {}): Promise<string> {
-	return new Promise<string>((resolve: Function, reject: Function) => {
+function makeHighscoresServiceAPIRequest(path: string, query: {[key: string]: string | number} = {}, conditional: boolean = false): Promise<any> {
+	return new Promise<any>((resolve: Function, reject: Function) => {
 		const queryString: string = Object.keys(query).map((key) =>
 			`${encodeURIComponent(key)}=${encodeURIComponent(query[key])}`
 		).join("&");
 		const url: string = `${Config.highscoresServiceUrl}/${path}/${queryString ? ("?" + queryString) : ""}`;
 
-		httpModule.get(url, (response: http.IncomingMessage) => {
-			let body: string = "";
-			response.on("data", (segment) => {
-				body += segment;
+		const headers: http.OutgoingHttpHeaders = {"Accept": acceptHeader, "Accept-Encoding": "gzip"};
+		const previousResponse = conditional ? conditionalResponses.get(url) : undefined;
+		if (previousResponse) {
+			headers["If-None-Match"] = previousResponse.etag;
+			touchConditionalResponse(url);
+		}
+
+		httpModule.get(url, {headers}, (response: http.IncomingMessage) => {
+			if (response.statusCode === 304 && previousResponse) {
+				response.resume();
+				try {
+					resolve(decodeBody(previousResponse.contentType, previousResponse.body));
+				} catch (ex) {
+					reject(new VError(ex, "%s", `Error decoding cached response from ${url}`));
+				}
+				return;
+			}
+
+			const stream: NodeJS.ReadableStream = response.headers["content-encoding"] === "gzip" ? response.pipe(zlib.createGunzip()) : response;
+			const segments: Buffer[] = [];
+			stream.on("data", (segment: Buffer) => {
+				segments.push(segment);
 			});
 
-			response.on("error", (err: Error) => {
+			stream.on("error", (err: Error) => {
 				reject(new VError(err, "%s", `Error receiving response from ${url}`));
 			});
 
-			response.on("end", () => {
+			stream.on("end", () => {
+				const body: Buffer = Buffer.concat(segments);
 				if (response.statusCode === 200) {
-					resolve(body);
+					const contentType: string = response.headers["content-type"];
+					let decoded: any;
+					try {
+						decoded = decodeBody(contentType, body);
+					} catch (ex) {
+						reject(new VError(ex, "%s", `Error decoding response from ${url}`));
+						return;
+					}
+					const etag = response.headers.etag;
+					if (conditional && etag) {
+						conditionalResponses.delete(url);
+						conditionalResponses.set(url, {etag, contentType, body});
+						if (conditionalResponses.size > MAX_CONDITIONAL_RESPONSES) {
+							conditionalResponses.delete(conditionalResponses.keys().next().value);
+						}
+					}
+					resolve(decoded);
 				} else {
-					reject(new APIError(body, response.statusCode, response.headers, url));
+					// Errors are always sent as plain text.
+					reject(new APIError(body.toString("utf8"), response.statusCode, response.headers, url));
 				}
 			});
 		}).on("error", (err: Error) => {
@@ -67,11 +143,10 @@ export async function getSummonerInfo(region: Region, riotId: string): Promise<S
 
 	// Make a request to the highscore service if the data wasn't in the cache.
 	try {
-		const body: string = await makeHighscoresServiceAPIRequest("summonerInfo", {
+		const response: SummonerInfo = await makeHighscoresServiceAPIRequest("summonerInfo", {
 			riotId: encodeURIComponent(riotId),
 			platform: region.platformId
 		});
-		const response: SummonerInfo = JSON.parse(body);
 		cacheHandler.store(cacheHandler.makePlayerKey(region, response.puuid), response, Config.cacheDurations.summoner);
 		return response;
 	} catch (ex) {
@@ -94,8 +169,7 @@ export async function getSummonerInfo(region: Region, riotId: string): Promise<S
  */
 export async function getHighscoresSummary(): Promise<{[championId: string]: Highscore[]}> {
 	try {
-		const body: string = await makeHighscoresServiceAPIRequest("highscoresSummary");
-		return JSON.parse(body);
+		return await makeHighscoresServiceAPIRequest("highscoresSummary", {}, true);
 	} catch (ex) {
 		throw new VError(ex, "%s", "Error retrieving highscores summary from highscores service");
 	}
@@ -108,8 +182,7 @@ export async function getHighscoresSummary(): Promise<{[championId: string]: Hig
  */
 export async function getChampionHighscores(championId: number): Promise<Highscore[]> {
 	try {
-		const body: string = await makeHighscoresServiceAPIRequest("championHighscores", {championId: championId});
-		return JSON.parse(body);
+		return await makeHighscoresServiceAPIRequest("championHighscores", {championId: championId}, true);
 	} catch (ex) {
 		throw new VError(ex, "%s", `Error retrieving champion highscores from highscores service for champion ${championId}`);
 	}
@@ -121,8 +194,7 @@ export async function getChampionHighscores(championId: number): Promise<Highsco
  */
 export async function getRankThresholds(): Promise<Map<number, RankThreshold[]>> {
 	try {
-		const body: string = await makeHighscoresServiceAPIRequest("rankThresholds");
-		const entries: RankThreshold[] = JSON.parse(body);
+		const entries: RankThreshold[] = await makeHighscoresServiceAPIRequest("rankThresholds", {}, true);
 		const results = new Map<number, RankThreshold[]>();
 		for (const threshold of entries) {
 			if (!results.has(threshold.championId)) {